@@ -0,0 +1,154 @@
+package LightBDD;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+
+/**
+ * Reads a combinational and-inverter graph in AIGER format, either ASCII
+ * ("aag") or binary ("aig"), into a MultiBDD.  The MultiBDD's inputs and
+ * outputs are the AIG's, in file order.  Latches are rejected, and the symbol
+ * table and comments are ignored.
+ * 
+ * See Armin Biere, "The AIGER And-Inverter Graph (AIG) Format," 2007:
+ * http://fmv.jku.at/aiger/FORMAT
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class AigerReader
+{
+    private final InputStream in;
+    private final Netlist netlist = new Netlist();
+    
+    private AigerReader(InputStream in)
+    {
+        this.in = new BufferedInputStream(in);
+    }
+    
+    public static MultiBDD read(InputStream in) throws IOException, ParseException
+    {
+        return new AigerReader(in).read();
+    }
+    
+    private MultiBDD read() throws IOException, ParseException
+    {
+        String[] header = readLine().trim().split("\\s+");
+        if (header.length < 6 || !(header[0].equals("aag") || header[0].equals("aig")))
+            throw new ParseException("Not an AIGER header", 0);
+        boolean binary = header[0].equals("aig");
+        int maxVar = parse(header[1]);
+        int numInputs = parse(header[2]);
+        int numLatches = parse(header[3]);
+        int numOutputs = parse(header[4]);
+        int numAnds = parse(header[5]);
+        if (numLatches != 0)
+            throw new ParseException("Latches are not supported", 0);
+        if (numInputs + numAnds > maxVar)
+            throw new ParseException("Header declares more variables than M", 0);
+        
+        // Signal v is AIG variable v; variable 0 is the constant false.
+        for (int v = 0; v <= maxVar; v++)
+            netlist.addSignal("v" + v);
+        netlist.setDriver(0, new Netlist.ConstantGate(false));
+        
+        for (int i = 0; i < numInputs; i++)
+        {
+            int literal = (binary ? 2 * (i + 1) : literal(readLine(), maxVar));
+            if ((literal & 1) != 0 || literal == 0)
+                throw new ParseException("Input " + i + " is not a positive variable", 0);
+            netlist.addInput(literal / 2);
+        }
+        int[] outputs = new int[numOutputs];
+        for (int i = 0; i < numOutputs; i++)
+            outputs[i] = literal(readLine(), maxVar);
+        
+        for (int i = 0; i < numAnds; i++)
+        {
+            int lhs, rhs0, rhs1;
+            if (binary)
+            {
+                lhs = 2 * (numInputs + i + 1);
+                rhs0 = lhs - readDelta();
+                rhs1 = rhs0 - readDelta();
+                if (rhs1 < 0 || rhs1 > rhs0 || rhs0 >= lhs)
+                    throw new ParseException("AND gate " + i + " has deltas out of range", 0);
+            }
+            else
+            {
+                String[] fields = readLine().trim().split("\\s+");
+                if (fields.length != 3)
+                    throw new ParseException("Malformed AND gate " + i, 0);
+                lhs = literal(fields[0], maxVar);
+                rhs0 = literal(fields[1], maxVar);
+                rhs1 = literal(fields[2], maxVar);
+            }
+            if ((lhs & 1) != 0 || netlist.isDriven(lhs / 2))
+                throw new ParseException("AND gate " + i + " redefines literal " + lhs, 0);
+            netlist.setDriver(lhs / 2, new Netlist.AndGate(rhs0 / 2, (rhs0 & 1) != 0, rhs1 / 2, (rhs1 & 1) != 0));
+        }
+        
+        for (int literal : outputs)
+            netlist.addOutput(literal / 2, (literal & 1) != 0);
+        return netlist.build();
+    }
+    
+    private int literal(String field, int maxVar) throws ParseException
+    {
+        int literal = parse(field.trim());
+        if (literal < 0 || literal / 2 > maxVar)
+            throw new ParseException("Literal " + literal + " is out of range", 0);
+        return literal;
+    }
+    
+    private int parse(String field) throws ParseException
+    {
+        try
+        {
+            return Integer.parseInt(field);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ParseException("Expected a number, got '" + field + "'", 0);
+        }
+    }
+    
+    /**
+     * Read one line of ASCII.  The binary format mixes ASCII lines with
+     * binary data, so we can't wrap the stream in a Reader.
+     */
+    private String readLine() throws IOException, ParseException
+    {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n')
+        {
+            if (c < 0)
+                throw new ParseException("Unexpected end of file", 0);
+            line.append((char)c);
+        }
+        return line.toString();
+    }
+    
+    /**
+     * Read one LEB128-style unsigned delta from the binary AND section.  An
+     * int takes at most five bytes.
+     */
+    private int readDelta() throws IOException, ParseException
+    {
+        int value = 0;
+        int shift = 0;
+        int c;
+        do
+        {
+            if (shift > 28)
+                throw new ParseException("Delta is longer than 5 bytes", 0);
+            c = in.read();
+            if (c < 0)
+                throw new ParseException("Unexpected end of file", 0);
+            value |= (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return value;
+    }
+}
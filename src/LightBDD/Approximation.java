@@ -0,0 +1,283 @@
+package LightBDD;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * A subset or superset of a function that fits in a node budget, and how
+ * much of the function it kept.  Built by BDD.underApprox() and
+ * BDD.overApprox() with one of the subsetting heuristics from Ravi and
+ * Somenzi, "High-Density Reachability Analysis," ICCAD 1995, as CUDD does:
+ *
+ * Heavy-branch subsetting walks down from the root along the child with
+ * more minterms, replacing the other (light) child by false one node at a
+ * time until the diagram is small enough.
+ *
+ * Short-path subsetting keeps only the edges that lie on a path to true of
+ * at most some length, taking the longest length that still fits.
+ *
+ * An over-approximation is the negation of an under-approximation of the
+ * negation.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class Approximation
+{
+    public enum Method { HEAVY_BRANCH, SHORT_PATH };
+
+    private final BDD result;
+    private final Method method;
+    private final boolean over;
+    private final BigInteger originalMinterms;
+    private final BigInteger minterms;
+
+    private Approximation(BDD result, Method method, boolean over, BigInteger originalMinterms)
+    {
+        this.result = result;
+        this.method = method;
+        this.over = over;
+        this.originalMinterms = originalMinterms;
+        this.minterms = result.freeze().satCount();
+    }
+
+    /**
+     * Whichever method keeps more of f.  f itself if it already fits.
+     */
+    static Approximation build(BDD f, int threshold, boolean over)
+    {
+        Approximation heavy = build(f, threshold, over, Method.HEAVY_BRANCH);
+        Approximation shortPath = build(f, threshold, over, Method.SHORT_PATH);
+        return (shortPath.getError().compareTo(heavy.getError()) < 0 ? shortPath : heavy);
+    }
+
+    static Approximation build(BDD f, int threshold, boolean over, Method method)
+    {
+        assert(threshold >= 1);
+        BDD g = (over ? new BDD(f, true) : f);
+        BDDTree tree = g.getTree();
+        BDDTree subset = (method == Method.HEAVY_BRANCH ? heavyBranch(tree, threshold) : shortPath(tree, threshold));
+        BDD result = new BDD(subset);
+        if (over)
+            result = new BDD(result, true);
+        return new Approximation(result, method, over, f.freeze().satCount());
+    }
+
+    /* Cut the light child of each node down the heavy path, top first. */
+    private static BDDTree heavyBranch(BDDTree tree, int threshold)
+    {
+        int size = tree.getNumNodes();
+        double[] density = densities(tree);
+        boolean[] cutLow = new boolean[size];
+        boolean[] cutHigh = new boolean[size];
+        BDDTree subset = rebuild(tree, cutLow, cutHigh);
+        int u = tree.getRootIndex();
+        while (numNodes(subset) > threshold)
+        {
+            Node node = tree.getNode(u);
+            if (node.isTerminal())
+                return constantFalse(tree);
+            boolean lowIsLight = (density[node.low] < density[node.high]);
+            if (density[lowIsLight ? node.low : node.high] > 0.0)
+            {
+                if (lowIsLight)
+                    cutLow[u] = true;
+                else
+                    cutHigh[u] = true;
+                subset = rebuild(tree, cutLow, cutHigh);
+            }
+            u = (lowIsLight ? node.high : node.low);
+        }
+        return subset;
+    }
+
+    /* Keep the edges on paths to true of length at most L, for the largest L that fits.
+     * Edges to false are never cut, since that changes nothing. */
+    private static BDDTree shortPath(BDDTree tree, int threshold)
+    {
+        int size = tree.getNumNodes();
+        int root = tree.getRootIndex();
+        int infinity = Integer.MAX_VALUE / 2;
+        // Shortest distance to true, children first
+        int[] toTrue = new int[size];
+        for (int u = 0; u < size; u++)
+        {
+            Node node = tree.getNode(u);
+            if (node.isTerminal())
+                toTrue[u] = (node.terminalValue ? 0 : infinity);
+            else
+                toTrue[u] = 1 + Math.min(toTrue[node.low], toTrue[node.high]);
+        }
+        // Shortest distance from the root, parents first
+        int[] fromRoot = new int[size];
+        Arrays.fill(fromRoot, infinity);
+        fromRoot[root] = 0;
+        for (int u = root; u >= 0; u--)
+        {
+            Node node = tree.getNode(u);
+            if (fromRoot[u] == infinity || node.isTerminal())
+                continue;
+            fromRoot[node.low] = Math.min(fromRoot[node.low], fromRoot[u] + 1);
+            fromRoot[node.high] = Math.min(fromRoot[node.high], fromRoot[u] + 1);
+        }
+        if (toTrue[root] >= infinity)
+            return constantFalse(tree);
+
+        BDDTree best = null;
+        boolean[] cutLow = new boolean[size];
+        boolean[] cutHigh = new boolean[size];
+        boolean anyCut = true;
+        for (int length = toTrue[root]; anyCut; length++)
+        {
+            anyCut = false;
+            for (int u = 0; u < size; u++)
+            {
+                Node node = tree.getNode(u);
+                if (node.isTerminal() || fromRoot[u] == infinity)
+                    continue;
+                cutLow[u] = (fromRoot[u] + 1 + toTrue[node.low] > length && toTrue[node.low] < infinity);
+                cutHigh[u] = (fromRoot[u] + 1 + toTrue[node.high] > length && toTrue[node.high] < infinity);
+                anyCut |= cutLow[u] | cutHigh[u];
+            }
+            BDDTree subset = rebuild(tree, cutLow, cutHigh);
+            if (numNodes(subset) > threshold)
+                break;
+            best = subset;
+        }
+        return (best == null ? constantFalse(tree) : best);
+    }
+
+    /**
+     * Fraction of each node's input space on which it's true.  Unlike a
+     * minterm count, this doesn't depend on which level the node is on.
+     */
+    private static double[] densities(BDDTree tree)
+    {
+        double[] density = new double[tree.getNumNodes()];
+        for (int u = 0; u < density.length; u++)
+        {
+            Node node = tree.getNode(u);
+            if (node.isTerminal())
+                density[u] = (node.terminalValue ? 1.0 : 0.0);
+            else
+                density[u] = (density[node.low] + density[node.high]) / 2;
+        }
+        return density;
+    }
+
+    /**
+     * Copy the function with each cut edge pointing at false instead.  Only
+     * what the root reaches through uncut edges is copied.
+     */
+    private static BDDTree rebuild(BDDTree src, boolean[] cutLow, boolean[] cutHigh)
+    {
+        BDDTree dest = new BDDTree(src.getNumInputs());
+        int[] order = src.postOrder(src.getRootIndex());
+        // Parents come after their children, so going backwards finds what the cuts leave reachable
+        boolean[] kept = new boolean[src.getNumNodes()];
+        kept[src.getRootIndex()] = true;
+        for (int k = order.length - 1; k >= 0; k--)
+        {
+            int i = order[k];
+            Node u = src.getNode(i);
+            if (!kept[i] || u.isTerminal())
+                continue;
+            kept[u.low] |= !cutLow[i];
+            kept[u.high] |= !cutHigh[i];
+        }
+        int[] copies = new int[src.getNumNodes()];
+        for (int i : order)
+        {
+            Node u = src.getNode(i);
+            if (!kept[i])
+                continue;
+            if (u.isTerminal())
+            {
+                copies[i] = (u.terminalValue ? 1 : 0);
+                continue;
+            }
+            int low = (cutLow[i] ? 0 : copies[u.low]);
+            int high = (cutHigh[i] ? 0 : copies[u.high]);
+            Node node = new Node(low, high, src.getInputIndex(i));
+            if (low == high)
+                copies[i] = low;
+            else
+                copies[i] = (dest.contains(node) ? dest.getNodeIndex(node) : dest.addNode(node));
+        }
+        dest.setRootIndex(copies[src.getRootIndex()]);
+        return dest;
+    }
+
+    private static BDDTree constantFalse(BDDTree tree)
+    {
+        BDDTree dest = new BDDTree(tree.getNumInputs());
+        dest.setRootIndex(0);
+        return dest;
+    }
+
+    /* rebuild() only keeps what the root reaches, so this is the tree's size,
+     * except that constant true keeps false below it. */
+    private static int numNodes(BDDTree tree)
+    {
+        return (tree.getRootIndex() == 1 ? 1 : tree.getNumNodes());
+    }
+
+    /**
+     * The approximating function.
+     */
+    public BDD getResult()
+    {
+        return result;
+    }
+
+    public Method getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * True for a superset of the function, false for a subset.
+     */
+    public boolean isOverApproximation()
+    {
+        return over;
+    }
+
+    /**
+     * Number of input strings for which the original function is true.
+     */
+    public BigInteger getOriginalMinterms()
+    {
+        return originalMinterms;
+    }
+
+    /**
+     * Number of input strings for which the approximation is true.
+     */
+    public BigInteger getMinterms()
+    {
+        return minterms;
+    }
+
+    /**
+     * Number of input strings on which the approximation is wrong.
+     */
+    public BigInteger getError()
+    {
+        return minterms.subtract(originalMinterms).abs();
+    }
+
+    /**
+     * The smaller minterm count over the larger: 1.0 for an exact result,
+     * and the fraction of the function kept by an under-approximation.
+     */
+    public double getAccuracy()
+    {
+        BigInteger larger = minterms.max(originalMinterms);
+        if (larger.signum() == 0)
+            return 1.0;
+        return new BigDecimal(minterms.min(originalMinterms))
+                .divide(new BigDecimal(larger), MathContext.DECIMAL64).doubleValue();
+    }
+}
@@ -0,0 +1,12 @@
+package LightBDD;
+
+/**
+ * Interface for the operators you might want to pass into the MTBDD apply
+ * constructor.  MTBDD.Arithmetic has the common ones.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public interface ArithmeticOperator
+{
+    public double operate(double x, double y);
+}
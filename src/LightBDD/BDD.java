@@ -5,7 +5,20 @@
  */
 package LightBDD;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Reduced Ordered Binary Decision diagram.
@@ -20,6 +33,9 @@ public class BDD extends Executable implements Graph
 {   
     /* If you add fields, don't forget to update the copy constructor! */
     private BDDTree tree;
+    /* Only set while a constructor's kernel is running, so not copied. */
+    private OperationRecord record;
+    private Budget budget;
     
     /**
      *  Manual constructor
@@ -59,30 +75,69 @@ public class BDD extends Executable implements Graph
     public BDD(Executable f, int output)
     {
         this.tree = new BDDTree(f.getNumInputs());
-        buildThisFromFunction(f, output, new boolean[f.getNumInputs()], 0);
+        buildThisFromFunction(f, output);
     }
     
     public BDD(BooleanFunction f)
     {
         assert(f.getNumOutputs() == 1);
         this.tree = new BDDTree(f.getNumInputs());
-        buildThisFromFunction(f, 0, new boolean[f.getNumInputs()], 0);
+        buildThisFromFunction(f, 0);
     }
     
-    private int buildThisFromFunction(Executable f, int output, boolean[] inputString, int inputIndex)
+    /**
+     * Shannon-expands f over every input, bottom-up.  Rather than recursing
+     * once per input, this walks the decision tree with the input string
+     * itself as the stack: a false bit means we're in a low branch, a true
+     * bit means the low child is done and its result is in lowChild.
+     */
+    private int buildThisFromFunction(Executable f, int output)
     {
-        if (inputIndex == f.getNumInputs())
-            return (f.execute(inputString)[output] ? 1 : 0);
-        else
+        int n = f.getNumInputs();
+        boolean[] inputString = new boolean[n];
+        int[] lowChild = new int[n];
+        int inputIndex = 0;
+        while (true)
         {
-            inputString[inputIndex] = false;
-            int lowChild = buildThisFromFunction(f, output, inputString, inputIndex + 1);
-            inputString[inputIndex] = true;
-            int highChild = buildThisFromFunction(f, output, inputString, inputIndex + 1);
-            return mk(new Node(lowChild, highChild, inputIndex));
+            while (inputIndex < n)
+                inputString[inputIndex++] = false;
+            int result = (f.execute(inputString)[output] ? 1 : 0);
+            
+            // Climb until we find a low branch whose sibling hasn't been built.
+            while (inputIndex > 0 && inputString[inputIndex - 1])
+            {
+                inputIndex--;
+                result = mk(new Node(lowChild[inputIndex], result, inputIndex));
+            }
+            if (inputIndex == 0)
+                return result;
+            lowChild[inputIndex - 1] = result;
+            inputString[inputIndex - 1] = true;
         }
     }
     
+    /**
+     * The constant function with the given number of (ignored) inputs.
+     */
+    public static BDD constant(int numInputs, boolean value)
+    {
+        BDDTree tree = new BDDTree(numInputs);
+        if (!value)
+            tree.setRootIndex(0);
+        return new BDD(tree);
+    }
+    
+    /**
+     * The function that returns its inputth input.
+     */
+    public static BDD variable(int numInputs, int input)
+    {
+        assert(input < numInputs);
+        BDDTree tree = new BDDTree(numInputs);
+        tree.addNode(new Node(0, 1, input));
+        return new BDD(tree);
+    }
+    
     public enum Function { TRUE, FALSE, NOT, NAND, AND, OR, XOR, SHUNT, TEST1, TEST2, TEST3, TEST4, TEST5, XOR_POSTCAT2, XOR_PRECAT2 };
     /**
      *  Constructor for pre-defined functions
@@ -189,6 +244,149 @@ public class BDD extends Executable implements Graph
                 break;
         }
     }
+
+    /**
+     * True when at most k of the numInputs inputs are true.  Like the other
+     * generators below, this builds the reduced diagram directly, one level
+     * at a time, rather than enumerating every input string; it has
+     * O(numInputs * k) nodes.
+     */
+    public static BDD atMost(int numInputs, int k)
+    {
+        return linear(ones(numInputs), Long.MIN_VALUE, k);
+    }
+
+    /**
+     * True when at least k of the numInputs inputs are true.
+     */
+    public static BDD atLeast(int numInputs, int k)
+    {
+        return linear(ones(numInputs), k, Long.MAX_VALUE);
+    }
+
+    /**
+     * True when exactly k of the numInputs inputs are true.
+     */
+    public static BDD exactly(int numInputs, int k)
+    {
+        return linear(ones(numInputs), k, k);
+    }
+
+    /**
+     * True when the sum of weights[i] over the true inputs i is at least
+     * bound.  Has one input per weight.  The size depends on how many
+     * distinct partial sums are still undecided at each level, so small or
+     * repetitive weights make for small diagrams.
+     */
+    public static BDD threshold(int[] weights, long bound)
+    {
+        return linear(weights, bound, Long.MAX_VALUE);
+    }
+
+    /**
+     * x < y on two unsigned width-bit vectors, interleaved most significant
+     * bit first: bit j of x is input 2j and bit j of y is input 2j+1, bit 0
+     * being the most significant.  Three nodes per bit.
+     */
+    public static BDD lessThan(int width)
+    {
+        return comparison(width, false);
+    }
+
+    /**
+     * x <= y, with the same inputs as lessThan().
+     */
+    public static BDD lessOrEqual(int width)
+    {
+        return comparison(width, true);
+    }
+
+    private static int[] ones(int n)
+    {
+        int[] weights = new int[n];
+        Arrays.fill(weights, 1);
+        return weights;
+    }
+
+    /**
+     * True when low <= sum(weights[i] * x_i) <= high.  Goes down once to
+     * find the partial sums at each level that don't yet decide the result,
+     * then builds their nodes bottom-up.  Two equal sums share a node, and
+     * mk() merges any other equivalent ones, so the result is reduced.
+     */
+    private static BDD linear(int[] weights, long low, long high)
+    {
+        int n = weights.length;
+        // Most and least the inputs from level i on can still add
+        long[] maxRest = new long[n + 1];
+        long[] minRest = new long[n + 1];
+        for (int i = n - 1; i >= 0; i--)
+        {
+            maxRest[i] = maxRest[i + 1] + Math.max(0, weights[i]);
+            minRest[i] = minRest[i + 1] + Math.min(0, weights[i]);
+        }
+        ArrayList<HashMap<Long, Integer>> open = new ArrayList<HashMap<Long, Integer>>();
+        for (int i = 0; i <= n; i++)
+            open.add(new HashMap<Long, Integer>());
+        if (decided(0, 0, low, high, maxRest, minRest) < 0)
+            open.get(0).put(0L, -1);
+        for (int i = 0; i < n; i++)
+        {
+            for (long sum : open.get(i).keySet())
+            {
+                if (decided(sum, i + 1, low, high, maxRest, minRest) < 0)
+                    open.get(i + 1).put(sum, -1);
+                if (decided(sum + weights[i], i + 1, low, high, maxRest, minRest) < 0)
+                    open.get(i + 1).put(sum + weights[i], -1);
+            }
+        }
+
+        BDD f = new BDD(new BDDTree(n));
+        for (int i = n - 1; i >= 0; i--)
+        {
+            HashMap<Long, Integer> below = open.get(i + 1);
+            for (Map.Entry<Long, Integer> e : open.get(i).entrySet())
+            {
+                long sum = e.getKey();
+                int lowChild = decided(sum, i + 1, low, high, maxRest, minRest);
+                if (lowChild < 0)
+                    lowChild = below.get(sum);
+                int highChild = decided(sum + weights[i], i + 1, low, high, maxRest, minRest);
+                if (highChild < 0)
+                    highChild = below.get(sum + weights[i]);
+                e.setValue(f.mk(new Node(lowChild, highChild, i)));
+            }
+        }
+        int root = decided(0, 0, low, high, maxRest, minRest);
+        f.tree.setRootIndex(root >= 0 ? root : open.get(0).get(0L));
+        return f;
+    }
+
+    /* The terminal a partial sum at a level is bound to reach, or -1 if the
+     * remaining inputs can still go either way. */
+    private static int decided(long sum, int level, long low, long high, long[] maxRest, long[] minRest)
+    {
+        if (sum + maxRest[level] < low || sum + minRest[level] > high)
+            return 0;
+        if (sum + minRest[level] >= low && sum + maxRest[level] <= high)
+            return 1;
+        return -1;
+    }
+
+    private static BDD comparison(int width, boolean orEqual)
+    {
+        BDD f = new BDD(new BDDTree(2 * width));
+        // Whether x < y (or <=) on the bits below, given the bits above are equal
+        int rest = (orEqual ? 1 : 0);
+        for (int j = width - 1; j >= 0; j--)
+        {
+            int xIsZero = f.mk(new Node(rest, 1, 2 * j + 1));
+            int xIsOne = f.mk(new Node(0, rest, 2 * j + 1));
+            rest = f.mk(new Node(xIsZero, xIsOne, 2 * j));
+        }
+        f.tree.setRootIndex(rest);
+        return f;
+    }
        
     /**
      * Build a BDD by *applying* the specified boolean operator to two preexisting
@@ -197,9 +395,150 @@ public class BDD extends Executable implements Graph
      */
     public BDD(BooleanOperator op, BDD x, BDD y)
     {
+        this(op, x, y, null);
+    }
+    
+    private BDD(BooleanOperator op, BDD x, BDD y, Budget budget)
+    {
+        this.budget = budget;
         this.tree = new BDDTree(x.tree.getNumInputs());
-        HashMap<Integer[], Integer> dynamicProgrammingMemory = new HashMap();
-        apply(dynamicProgrammingMemory, op, x.tree, y.tree, x.tree.getRootIndex(), y.tree.getRootIndex());
+        this.record = OperationRecord.start(BDDStats.Operation.APPLY);
+        try
+        {
+            apply(new LongIntMap(), op, x.tree, y.tree, x.tree.getRootIndex(), y.tree.getRootIndex());
+            finishRecord();
+        }
+        finally
+        {
+            abortRecord();
+            this.budget = null;
+        }
+    }
+    
+    /**
+     * If-then-else: the function that is g where f is true and h where f is
+     * false.  All three must have the same inputs.
+     */
+    public static BDD ite(BDD f, BDD g, BDD h)
+    {
+        return new BDD(Operator.OR, new BDD(Operator.AND, f, g), new BDD(Operator.DIFF, h, f));
+    }
+
+    /**
+     * The conjunction of all the operands, which must have the same inputs.
+     * Rather than folding left to right, the two smallest operands are
+     * combined first, again and again, so the big intermediate results are
+     * put off until the end.  Stops as soon as a result is false.
+     */
+    public static BDD andAll(Collection<BDD> operands)
+    {
+        return combineAll(Operator.AND, operands, false);
+    }
+
+    /**
+     * Like andAll(Collection), but if parallel is true, each round combines
+     * disjoint pairs of operands on separate threads.
+     */
+    public static BDD andAll(Collection<BDD> operands, boolean parallel)
+    {
+        return combineAll(Operator.AND, operands, parallel);
+    }
+
+    /**
+     * The disjunction of all the operands, combined smallest first like
+     * andAll().  Stops as soon as a result is true.
+     */
+    public static BDD orAll(Collection<BDD> operands)
+    {
+        return combineAll(Operator.OR, operands, false);
+    }
+
+    public static BDD orAll(Collection<BDD> operands, boolean parallel)
+    {
+        return combineAll(Operator.OR, operands, parallel);
+    }
+
+    private static BDD combineAll(Operator op, Collection<BDD> operands, boolean parallel)
+    {
+        if (operands.isEmpty())
+            throw new IllegalArgumentException("Need at least one operand to tell how many inputs there are");
+        // false for AND, true for OR
+        boolean absorbing = (op == Operator.OR);
+        int numInputs = operands.iterator().next().getNumInputs();
+        // Node tables can hold garbage below the root, but they're a cheap upper bound.
+        PriorityQueue<BDD> queue = new PriorityQueue<BDD>(Math.max(1, operands.size()), new Comparator<BDD>()
+        {
+            @Override
+            public int compare(BDD x, BDD y)
+            {
+                return Integer.compare(x.tree.getNumNodes(), y.tree.getNumNodes());
+            }
+        });
+        for (BDD f : operands)
+        {
+            assert(f.getNumInputs() == numInputs);
+            if (!f.isConstant())
+                queue.add(f);
+            else if (f.tree.getRootNode().terminalValue == absorbing)
+                return constant(numInputs, absorbing);
+        }
+        while (queue.size() > 1)
+        {
+            ArrayList<BDD[]> pairs = new ArrayList<BDD[]>();
+            do
+                pairs.add(new BDD[] { queue.poll(), queue.poll() });
+            while (parallel && queue.size() > 1);
+            List<BDD> results;
+            if (pairs.size() > 1)
+                results = applyInParallel(op, pairs);
+            else
+                results = Collections.singletonList(new BDD(op, pairs.get(0)[0], pairs.get(0)[1]));
+            for (BDD result : results)
+            {
+                if (!result.isConstant())
+                    queue.add(result);
+                else if (result.tree.getRootNode().terminalValue == absorbing)
+                    return constant(numInputs, absorbing);
+            }
+        }
+        return (queue.isEmpty() ? constant(numInputs, !absorbing) : new BDD(queue.poll()));
+    }
+
+    /* One apply per pair, on the common fork-join pool. */
+    private static List<BDD> applyInParallel(final Operator op, List<BDD[]> pairs)
+    {
+        ArrayList<Callable<BDD>> tasks = new ArrayList<Callable<BDD>>(pairs.size());
+        for (final BDD[] pair : pairs)
+        {
+            tasks.add(new Callable<BDD>()
+            {
+                @Override
+                public BDD call()
+                {
+                    return new BDD(op, pair[0], pair[1]);
+                }
+            });
+        }
+        ArrayList<BDD> results = new ArrayList<BDD>(pairs.size());
+        try
+        {
+            for (Future<BDD> result : ForkJoinPool.commonPool().invokeAll(tasks))
+                results.add(result.get());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while combining operands", e);
+        }
+        catch (ExecutionException e)
+        { // apply() throws nothing checked
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
     }
     
     /**
@@ -208,9 +547,178 @@ public class BDD extends Executable implements Graph
      */
     public BDD(BDD x, int inputToFix, boolean value)
     {
-        this.tree = new BDDTree(x.tree);
-        int newRoot = restrict(x.tree, x.tree.getRootIndex(), inputToFix, value, new HashMap<Integer, Integer>());
-        tree.setRootIndex(newRoot);
+        this(x, inputToFix, value, null);
+    }
+    
+    private BDD(BDD x, int inputToFix, boolean value, Budget budget)
+    {
+        this(x, new int[] { inputToFix }, new boolean[] { value }, budget);
+    }
+    
+    /**
+     *  Build a BDD by restricting several inputs of a pre-existing BDD at
+     *  once.  This is a single pass over x, and only the nodes reachable in
+     *  the result are built, so it's much cheaper than restricting the inputs
+     *  one at a time.
+     * 
+     *  @param inputsToFix Inputs to fix, in any order.
+     *  @param values values[i] is the value inputsToFix[i] is fixed to.
+     */
+    public BDD(BDD x, int[] inputsToFix, boolean[] values)
+    {
+        this(x, inputsToFix, values, null);
+    }
+    
+    private BDD(BDD x, int[] inputsToFix, boolean[] values, Budget budget)
+    {
+        assert(inputsToFix.length == values.length);
+        this.budget = budget;
+        this.tree = new BDDTree(x.tree.getNumInputs());
+        this.record = OperationRecord.start(BDDStats.Operation.RESTRICT);
+        try
+        {
+            byte[] cube = new byte[x.tree.getNumInputs()];
+            Arrays.fill(cube, FREE);
+            for (int i = 0; i < inputsToFix.length; i++)
+                cube[inputsToFix[i]] = (byte)(values[i] ? 1 : 0);
+            int newRoot = restrict(x.tree, x.tree.getRootIndex(), cube);
+            tree.setRootIndex(newRoot);
+            finishRecord();
+        }
+        finally
+        {
+            abortRecord();
+            this.budget = null;
+        }
+    }
+    
+    /**
+     * Generalized cofactor of this by care (Coudert and Madre's constrain).
+     * The result agrees with this wherever care is true and is usually
+     * smaller.  Unlike restrict(BDD), constrain distributes over apply:
+     * (f op g).constrain(c) == f.constrain(c) op g.constrain(c).
+     */
+    public BDD constrain(BDD care)
+    {
+        return new BDD(this, care, true);
+    }
+    
+    /**
+     * Coudert and Madre's restrict: like constrain(), the result agrees with
+     * this wherever care is true, but it also quantifies away inputs that
+     * only care depends on, so it never depends on inputs this doesn't.
+     * This is generally the better choice for shrinking a function to the
+     * region it is queried on.
+     */
+    public BDD restrict(BDD care)
+    {
+        return new BDD(this, care, false);
+    }
+    
+    private BDD(BDD f, BDD care, boolean constrain)
+    {
+        assert(f.getNumInputs() == care.getNumInputs());
+        /* Both operands are imported into one scratch tree so that the
+         * kernel can test them for equality and OR parts of care together.
+         * The scratch tree is compacted at the end. */
+        this.tree = new BDDTree(f.tree.getNumInputs());
+        this.record = OperationRecord.start(BDDStats.Operation.COFACTOR);
+        try
+        {
+            int fRoot = importNode(f.tree, f.tree.getRootIndex());
+            int careRoot = importNode(care.tree, care.tree.getRootIndex());
+            compact(cofactor(fRoot, careRoot, constrain));
+            finishRecord();
+        }
+        finally
+        {
+            abortRecord();
+        }
+    }
+
+    /**
+     * Existential quantification: the function that is true wherever this is
+     * true for some value of the given inputs.
+     */
+    public BDD exists(int[] inputs)
+    {
+        return new BDD(this, constant(getNumInputs(), true), inputs);
+    }
+
+    /**
+     * The relational product, exists(inputs, x & y), in one pass, so the
+     * conjunction is never built in full.  This is the step image
+     * computation is made of; see Burch, Clarke and Long, "Symbolic Model
+     * Checking with Partitioned Transition Relations," 1991.
+     */
+    public static BDD andExists(BDD x, BDD y, int[] inputs)
+    {
+        return new BDD(x, y, inputs);
+    }
+
+    private BDD(BDD x, BDD y, int[] inputs)
+    {
+        assert(x.getNumInputs() == y.getNumInputs());
+        this.tree = new BDDTree(x.tree.getNumInputs());
+        boolean[] quantified = new boolean[x.tree.getNumInputs()];
+        for (int i : inputs)
+            quantified[i] = true;
+        int xRoot = importNode(x.tree, x.tree.getRootIndex());
+        int yRoot = importNode(y.tree, y.tree.getRootIndex());
+        compact(andExistsLoop(xRoot, yRoot, quantified));
+    }
+
+    /**
+     * The same function with every input i renamed to permutation[i].  A
+     * renaming that keeps the order of the inputs the function depends on is
+     * just a new level map on a copy of the tree.  Any other renaming is
+     * rebuilt in one bottom-up pass, each node becoming
+     * ite(permutation[var], high, low), with the memo tables shared by the
+     * whole pass.
+     */
+    public BDD replace(int[] permutation)
+    {
+        return new BDD(this, permutation);
+    }
+    
+    private BDD(BDD x, int[] permutation)
+    {
+        int n = x.getNumInputs();
+        assert(permutation.length == n);
+        int[] counts = x.tree.getNodesPerLevel();
+        int last = -1;
+        boolean keepsOrder = true;
+        for (int i = 0; i < n; i++)
+        {
+            if (counts[i] == 0)
+                continue;
+            assert(permutation[i] >= 0 && permutation[i] < n);
+            if (permutation[i] <= last)
+                keepsOrder = false;
+            last = permutation[i];
+        }
+        if (keepsOrder)
+        {
+            this.tree = new BDDTree(x.tree);
+            tree.renameInputs(permutation);
+            return;
+        }
+        
+        BDDTree xTree = x.tree;
+        this.tree = new BDDTree(n);
+        LongIntMap andMemo = new LongIntMap();
+        LongIntMap diffMemo = new LongIntMap();
+        LongIntMap orMemo = new LongIntMap();
+        int[] result = newCopies(xTree);
+        for (int i : xTree.postOrder(xTree.getRootIndex(), result))
+        {
+            Node u = xTree.getNode(i);
+            int v = mk(new Node(0, 1, permutation[xTree.getInputIndex(i)]));
+            int high = applyLoop(andMemo, Operator.AND, tree, tree, v, result[u.high]);
+            int low = applyLoop(diffMemo, Operator.DIFF, tree, tree, result[u.low], v);
+            result[i] = applyLoop(orMemo, Operator.OR, tree, tree, high, low);
+        }
+        compact(result[xTree.getRootIndex()]);
     }
     
     /**
@@ -238,22 +746,135 @@ public class BDD extends Executable implements Graph
      *          have a good ponder of Shannon's Expansion).
      */
     public BDD(int var, BDD f1, BDD f2, boolean autoConcatonate)
+    {
+        this(var, f1, f2, autoConcatonate, null);
+    }
+    
+    BDD(int var, BDD f1, BDD f2, boolean autoConcatonate, Budget budget)
     {
         assert(var < f1.getNumInputs());
-        f1 = new BDD(f1);
-        f2 = new BDD(f2);
-        if (autoConcatonate)
+        this.budget = budget;
+        this.record = OperationRecord.start(BDDStats.Operation.COMPOSE);
+        try
         {
-            int oldF1NumInputs = f1.tree.getNumInputs();
-            f1.tree.preConcatonateInputs(f2.tree.getNumInputs());
-            var += f2.tree.getNumInputs(); // The varth input of f1 has moved
-            f2.tree.postConcatonateInputs(oldF1NumInputs);
+            f1 = new BDD(f1);
+            f2 = new BDD(f2);
+            if (autoConcatonate)
+            {
+                int oldF1NumInputs = f1.tree.getNumInputs();
+                f1.tree.preConcatonateInputs(f2.tree.getNumInputs());
+                var += f2.tree.getNumInputs(); // The varth input of f1 has moved
+                f2.tree.postConcatonateInputs(oldF1NumInputs);
+            }
+            
+            buildThisFromComposition(var, f1, f2);
+            
+            if (autoConcatonate)
+                this.tree.collapseInput(var);
+            finishRecord();
+        }
+        finally
+        {
+            abortRecord();
+            this.budget = null;
+        }
+    }
+    
+    /**
+     * Apply, giving up if the operation exceeds the given limits.
+     * 
+     * @throws BDDLimitExceededException The operands are unchanged and no
+     *          partial result is kept.
+     */
+    public static BDD apply(BooleanOperator op, BDD x, BDD y, BDDLimits limits) throws BDDLimitExceededException
+    {
+        try
+        {
+            return new BDD(op, x, y, limits.begin());
+        }
+        catch (Budget.Exceeded e)
+        {
+            throw e.toChecked(limits);
+        }
+    }
+    
+    /**
+     * Restrict, giving up if the operation exceeds the given limits.
+     * 
+     * @throws BDDLimitExceededException The operand is unchanged and no
+     *          partial result is kept.
+     */
+    public static BDD restrict(BDD x, int inputToFix, boolean value, BDDLimits limits) throws BDDLimitExceededException
+    {
+        try
+        {
+            return new BDD(x, inputToFix, value, limits.begin());
+        }
+        catch (Budget.Exceeded e)
+        {
+            throw e.toChecked(limits);
+        }
+    }
+    
+    /**
+     * Multi-input restrict, giving up if the operation exceeds the given
+     * limits.
+     * 
+     * @throws BDDLimitExceededException The operand is unchanged and no
+     *          partial result is kept.
+     */
+    public static BDD restrict(BDD x, int[] inputsToFix, boolean[] values, BDDLimits limits) throws BDDLimitExceededException
+    {
+        try
+        {
+            return new BDD(x, inputsToFix, values, limits.begin());
+        }
+        catch (Budget.Exceeded e)
+        {
+            throw e.toChecked(limits);
+        }
+    }
+    
+    /**
+     * Elementary composition, giving up if the operation exceeds the given
+     * limits.  The node budget covers the intermediate diagrams as well as the
+     * result.
+     * 
+     * @throws BDDLimitExceededException The operands are unchanged and no
+     *          partial result is kept.
+     */
+    public static BDD compose(int var, BDD f1, BDD f2, BDDLimits limits) throws BDDLimitExceededException
+    {
+        try
+        {
+            return new BDD(var, f1, f2, true, limits.begin());
+        }
+        catch (Budget.Exceeded e)
+        {
+            throw e.toChecked(limits);
+        }
+    }
+    
+    private void finishRecord()
+    {
+        if (record != null)
+        {
+            record.finish(tree);
+            record = null;
+        }
+    }
+    
+    /**
+     * Called from a finally block after finishRecord(), so it only does
+     * anything if the kernel threw.
+     */
+    private void abortRecord()
+    {
+        if (record != null)
+        {
+            record.abort(tree);
+            record = null;
         }
-        
-        buildThisFromComposition(var, f1, f2);
-        
-        if (autoConcatonate)
-            this.tree.collapseInput(var);
     }
     
     private void buildThisFromCompositionFast(int var, BDD f1, BDD f2)
@@ -282,23 +903,19 @@ public class BDD extends Executable implements Graph
         // Special case: If f2 is a constant, just restrict.
         if (f2.isConstant())
         {
-            BDD f1_restricted = new BDD(f1, var, f2.tree.getRootNode().terminalValue);
-            this.tree = new BDDTree(f1_restricted.tree);
+            BDD f1_restricted = new BDD(f1, var, f2.tree.getRootNode().terminalValue, budget);
+            this.tree = f1_restricted.tree;
             return;
         }           
         
-        final BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
-        final BooleanOperator or = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x|y); }};
-        
-        BDD f1_restrictedHigh = new BDD(f1, var, true);
-        BDD f1_restrictedLow = new BDD(f1, var, false);
-        BDD x = new BDD(and, f2, f1_restrictedHigh);
-        BDD f2_not = new BDD(f2, true);
-        BDD y = new BDD(and, f2_not, f1_restrictedLow);
+        BDD f1_restrictedHigh = new BDD(f1, var, true, budget);
+        BDD f1_restrictedLow = new BDD(f1, var, false, budget);
+        BDD x = new BDD(Operator.AND, f2, f1_restrictedHigh, budget);
+        // !f2 & f1|var=0 as one apply, so the negation is under the budget too
+        BDD y = new BDD(Operator.DIFF, f1_restrictedLow, f2, budget);
         
         this.tree = new BDDTree(x.tree.getNumInputs());
-        HashMap<Integer[], Integer> dynamicProgrammingMemory = new HashMap();
-        apply(dynamicProgrammingMemory, or, x.tree, y.tree, x.tree.getRootIndex(), y.tree.getRootIndex());
+        apply(new LongIntMap(), Operator.OR, x.tree, y.tree, x.tree.getRootIndex(), y.tree.getRootIndex());
     }
    
     @Override
@@ -344,6 +961,454 @@ public class BDD extends Executable implements Graph
         return (this.tree.getRootNode().isTerminal());
     }
     
+    /**
+     * Drop any nodes left in the tree that the root doesn't reach, and
+     * renumber the rest.  setRootIndex() can only trim the end of the tree.
+     */
+    public void compact()
+    {
+        compact(tree.getRootIndex());
+    }
+
+    /**
+     * Orders for relayout().  Both keep children before their parents, which
+     * the forward passes over a tree rely on.
+     *
+     * DEPTH_FIRST is post-order from the root, low child first, so a node's
+     * high child is usually right below it.  LEVEL groups the nodes of each
+     * input together, bottom input first, for passes that go level by level.
+     */
+    public enum Layout { DEPTH_FIRST, LEVEL };
+
+    /**
+     * Renumber the node table in the given order, dropping anything the
+     * root doesn't reach.  Kernels number nodes in the order they happen to
+     * be made, which leaves parents and children far apart in big trees.
+     */
+    public void relayout(Layout layout)
+    {
+        relayout(layout == Layout.LEVEL ? levelOrder() : depthFirstOrder(null));
+    }
+
+    /**
+     * Renumber the node table so the paths sample takes most often are
+     * contiguous: a post-order that visits each node's less-taken child
+     * first, so the more-taken one lands right below its parent, and
+     * execute() steps through consecutive entries.
+     */
+    public void relayout(Iterable<boolean[]> sample)
+    {
+        int size = tree.getNumNodes();
+        long[] highTaken = new long[size];
+        long[] lowTaken = new long[size];
+        for (boolean[] input : sample)
+        {
+            int u = tree.getRootIndex();
+            Node node = tree.getNode(u);
+            while (!node.isTerminal())
+            {
+                if (input[tree.getInputIndex(u)])
+                {
+                    highTaken[u]++;
+                    u = node.high;
+                }
+                else
+                {
+                    lowTaken[u]++;
+                    u = node.low;
+                }
+                node = tree.getNode(u);
+            }
+        }
+        boolean[] highIsHot = new boolean[size];
+        for (int u = 0; u < size; u++)
+            highIsHot[u] = (highTaken[u] >= lowTaken[u]);
+        relayout(depthFirstOrder(highIsHot));
+    }
+
+    /**
+     * Relayout depth first if the tree is in poor shape: more than a
+     * quarter of it unreachable, or parents on average more than twice as
+     * far from their children as a depth-first layout would put them.
+     *
+     * @return True if the tree was relaid out.
+     */
+    public boolean relayoutIfScattered()
+    {
+        int[] order = depthFirstOrder(null);
+        int reachable = order.length + 2;
+        boolean scattered = (reachable < 0.75 * tree.getNumNodes());
+        if (!scattered && order.length > 0)
+        {
+            int[] position = new int[tree.getNumNodes()];
+            for (int i = 0; i < order.length; i++)
+                position[order[i]] = i;
+            long gap = 0;
+            long ideal = 0;
+            for (int u : order)
+            {
+                Node node = tree.getNode(u);
+                for (int child : new int[] { node.low, node.high })
+                {
+                    if (tree.getNode(child).isTerminal())
+                        continue;
+                    gap += u - child;
+                    ideal += position[u] - position[child];
+                }
+            }
+            scattered = (gap > 2 * ideal);
+        }
+        if (scattered)
+            relayout(order);
+        return scattered;
+    }
+
+    /**
+     * The non-terminal nodes the root reaches, in post-order.  At each node
+     * the cold child is visited first; by default that's the low one.
+     */
+    private int[] depthFirstOrder(boolean[] highIsHot)
+    {
+        int size = tree.getNumNodes();
+        boolean[] placed = new boolean[size];
+        int[] order = new int[size];
+        int count = 0;
+        IntStack work = new IntStack();
+        work.push(tree.getRootIndex());
+        while (!work.isEmpty())
+        {
+            int u = work.peek();
+            Node node = tree.getNode(u);
+            if (placed[u] || node.isTerminal())
+            {
+                work.pop();
+                continue;
+            }
+            boolean hotHigh = (highIsHot == null || highIsHot[u]);
+            int cold = (hotHigh ? node.low : node.high);
+            int hot = (hotHigh ? node.high : node.low);
+            if (!placed[cold] && !tree.getNode(cold).isTerminal())
+                work.push(cold);
+            else if (!placed[hot] && !tree.getNode(hot).isTerminal())
+                work.push(hot);
+            else
+            {
+                placed[u] = true;
+                order[count++] = u;
+                work.pop();
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * The non-terminal nodes the root reaches, bottom input first.  Nodes on
+     * one input can't be each other's children, so within an input they
+     * keep their current order.
+     */
+    private int[] levelOrder()
+    {
+        int[] reached = depthFirstOrder(null);
+        int n = getNumInputs();
+        int[] start = new int[n + 1];
+        for (int u : reached)
+            start[n - 1 - tree.getInputIndex(u) + 1]++;
+        for (int l = 0; l < n; l++)
+            start[l + 1] += start[l];
+        Arrays.sort(reached);
+        int[] order = new int[reached.length];
+        for (int u : reached)
+            order[start[n - 1 - tree.getInputIndex(u)]++] = u;
+        return order;
+    }
+
+    /**
+     * Rebuild this.tree from the nodes in order, which must hold every
+     * non-terminal node the root reaches, children first.
+     */
+    private void relayout(int[] order)
+    {
+        BDDTree old = this.tree;
+        int oldRoot = old.getRootIndex();
+        this.tree = new BDDTree(old.getNumInputs());
+        int[] index = newCopies(old);
+        for (int u : order)
+        {
+            Node node = old.getNode(u);
+            index[u] = tree.addNode(new Node(index[node.low], index[node.high], old.getInputIndex(u)));
+        }
+        tree.setRootIndex(index[oldRoot]);
+    }
+    
+    /**
+     * An immutable snapshot of this function that can be handed to other
+     * threads in place of a deep copy.
+     */
+    public FrozenBDD freeze()
+    {
+        return new FrozenBDD(this);
+    }
+
+    /**
+     * A subset of this function with at most threshold nodes (terminals
+     * included), by whichever of heavy-branch and short-path subsetting
+     * keeps more minterms.  The result is this function if it already fits.
+     */
+    public Approximation underApprox(int threshold)
+    {
+        return Approximation.build(this, threshold, false);
+    }
+
+    public Approximation underApprox(int threshold, Approximation.Method method)
+    {
+        return Approximation.build(this, threshold, false, method);
+    }
+
+    /**
+     * A superset of this function with at most threshold nodes, the
+     * negation of an under-approximation of the negation.
+     */
+    public Approximation overApprox(int threshold)
+    {
+        return Approximation.build(this, threshold, true);
+    }
+
+    public Approximation overApprox(int threshold, Approximation.Method method)
+    {
+        return Approximation.build(this, threshold, true, method);
+    }
+
+    /**
+     * Node count, nodes per input, support and longest path, from one pass
+     * over the nodes the root reaches.
+     */
+    public BDDProfile profile()
+    {
+        return new BDDProfile(Collections.singletonList(this));
+    }
+
+    /**
+     * An irredundant sum-of-products cover of this function: no cube can be
+     * dropped and no literal removed from a cube without changing the
+     * function.  Computed by the Minato-Morreale recursion, which never
+     * enumerates minterms.
+     */
+    public List<Cube> isop()
+    {
+        ArrayList<Cube> cubes = new ArrayList<Cube>();
+        for (Iterator<Cube> i = isopIterator(); i.hasNext(); )
+            cubes.add(i.next());
+        return cubes;
+    }
+
+    /**
+     * The cubes of isop() one at a time, for covers too large to hold as a
+     * list.
+     */
+    public Iterator<Cube> isopIterator()
+    {
+        return new CubeIterator(isopCover());
+    }
+
+    /**
+     * The cubes of isop() as a ZDD over 2n inputs, where input 2i is the
+     * literal "input i is true" and 2i+1 is "input i is false".  Covers with
+     * many cubes are usually far smaller as a ZDD than as a list.
+     *
+     * See Minato, "Fast Generation of Prime-Irredundant Covers from Binary
+     * Decision Diagrams," IEICE Trans. Fundamentals, 1993.
+     */
+    public ZDD isopCover()
+    {
+        int n = getNumInputs();
+        BDD scratch = new BDD(new BDDTree(n));
+        int root = scratch.importNode(tree, tree.getRootIndex());
+        BDDTree cover = new BDDTree(2 * n);
+        cover.setRootIndex(scratch.isopLoop(root, root, cover));
+        return new ZDD(cover);
+    }
+
+    private static final int ISOP_EXPAND = 0;   // Not looked at yet
+    private static final int ISOP_HIGH = 1;     // Have the negative cofactor's cover
+    private static final int ISOP_SHARED = 2;   // Have both cofactors' covers
+    private static final int ISOP_MK = 3;       // Have the cover shared by both
+
+    /**
+     * isop(L, U) finds a cover c and its function f with L <= f <= U:
+     *   (c0, f0) = isop(L0 & !U1, U0)
+     *   (c1, f1) = isop(L1 & !U0, U1)
+     *   (cs, fs) = isop((L0 & !f0) | (L1 & !f1), U0 & U1)
+     *   c = !x c0 + x c1 + cs,  f = ite(x, f1, f0) | fs
+     * The intervals live in this.tree and the covers are built in cover.
+     * Results are (c, f) pairs; a cofactor pair stays on the results stack
+     * until the frame that needs it is done.
+     */
+    private int isopLoop(int lower, int upper, BDDTree cover)
+    {
+        LongIntMap coverMemo = new LongIntMap();
+        LongIntMap functionMemo = new LongIntMap();
+        LongIntMap andMemo = new LongIntMap();
+        LongIntMap diffMemo = new LongIntMap();
+        LongIntMap orMemo = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(lower, upper, ISOP_EXPAND);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int u = work.pop();
+            int l = work.pop();
+            if (l == 0 || u == 1)
+            { // An empty cover, or the one cube with no literals
+                results.push(l == 0 ? 0 : 1);
+                results.push(l == 0 ? 0 : 1);
+                continue;
+            }
+            int x = Math.min(tree.getInputIndex(l), tree.getInputIndex(u));
+            int l0 = isopCofactor(l, x, false), l1 = isopCofactor(l, x, true);
+            int u0 = isopCofactor(u, x, false), u1 = isopCofactor(u, x, true);
+            if (stage == ISOP_EXPAND)
+            {
+                long key = LongIntMap.pack(l, u);
+                int cached = coverMemo.get(key);
+                if (cached >= 0)
+                {
+                    results.push(cached);
+                    results.push(functionMemo.get(key));
+                    continue;
+                }
+                work.push(l, u, ISOP_HIGH);
+                work.push(applyLoop(diffMemo, Operator.DIFF, tree, tree, l0, u1), u0, ISOP_EXPAND);
+            }
+            else if (stage == ISOP_HIGH)
+            {
+                work.push(l, u, ISOP_SHARED);
+                work.push(applyLoop(diffMemo, Operator.DIFF, tree, tree, l1, u0), u1, ISOP_EXPAND);
+            }
+            else if (stage == ISOP_SHARED)
+            {
+                int f1 = results.pop(), c1 = results.pop();
+                int f0 = results.pop(), c0 = results.pop();
+                int rest0 = applyLoop(diffMemo, Operator.DIFF, tree, tree, l0, f0);
+                int rest1 = applyLoop(diffMemo, Operator.DIFF, tree, tree, l1, f1);
+                int sharedLower = applyLoop(orMemo, Operator.OR, tree, tree, rest0, rest1);
+                int sharedUpper = applyLoop(andMemo, Operator.AND, tree, tree, u0, u1);
+                results.push(c0);
+                results.push(f0);
+                results.push(c1);
+                results.push(f1);
+                work.push(l, u, ISOP_MK);
+                work.push(sharedLower, sharedUpper, ISOP_EXPAND);
+            }
+            else
+            {
+                int fs = results.pop(), cs = results.pop();
+                int f1 = results.pop(), c1 = results.pop();
+                int f0 = results.pop(), c0 = results.pop();
+                int f = applyLoop(orMemo, Operator.OR, tree, tree, mk(new Node(f0, f1, x)), fs);
+                int c = ZDD.mk(cover, ZDD.mk(cover, cs, c0, 2 * x + 1), c1, 2 * x);
+                long key = LongIntMap.pack(l, u);
+                coverMemo.put(key, c);
+                functionMemo.put(key, f);
+                results.push(c);
+                results.push(f);
+            }
+        }
+        results.pop();
+        return results.pop();
+    }
+
+    private static final int AND_EXISTS_EXPAND = 0;     // Not looked at yet
+    private static final int AND_EXISTS_LOW = 1;        // Have the low result of a quantified input
+    private static final int AND_EXISTS_OR = 2;         // Have both results of a quantified input
+    private static final int AND_EXISTS_MK = 3;         // Have both results of a kept input
+
+    /**
+     * exists(quantified, x & y) on operands in this.tree.  On a quantified
+     * input the two cofactors' results are ORed instead of joined by a node,
+     * and if the low one is already true the high one isn't needed.
+     */
+    private int andExistsLoop(int xRoot, int yRoot, boolean[] quantified)
+    {
+        LongIntMap memo = new LongIntMap();
+        LongIntMap orMemo = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(xRoot, yRoot, AND_EXISTS_EXPAND);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int yi = work.pop();
+            int xi = work.pop();
+            if (xi > yi)
+            {
+                int t = xi;
+                xi = yi;
+                yi = t;
+            }
+            long key = LongIntMap.pack(xi, yi);
+            if (stage == AND_EXISTS_EXPAND)
+            {
+                if (xi == 0 || yi == 1)
+                { // Either false & y, or true & true, since xi <= yi
+                    results.push(xi);
+                    continue;
+                }
+                int cached = memo.get(key);
+                if (cached >= 0)
+                {
+                    results.push(cached);
+                    continue;
+                }
+                Node x = tree.getNode(xi);
+                Node y = tree.getNode(yi);
+                int xVar = tree.getInputIndex(xi);
+                int yVar = tree.getInputIndex(yi);
+                int var = Math.min(xVar, yVar);
+                work.push(xi, yi, (quantified[var] ? AND_EXISTS_LOW : AND_EXISTS_MK));
+                if (!quantified[var])
+                    work.push((xVar == var ? x.high : xi), (yVar == var ? y.high : yi), AND_EXISTS_EXPAND);
+                work.push((xVar == var ? x.low : xi), (yVar == var ? y.low : yi), AND_EXISTS_EXPAND);
+            }
+            else if (stage == AND_EXISTS_LOW)
+            {
+                if (results.peek() == 1)
+                {
+                    memo.put(key, 1);
+                    continue;
+                }
+                Node x = tree.getNode(xi);
+                Node y = tree.getNode(yi);
+                int xVar = tree.getInputIndex(xi);
+                int yVar = tree.getInputIndex(yi);
+                int var = Math.min(xVar, yVar);
+                work.push(xi, yi, AND_EXISTS_OR);
+                work.push((xVar == var ? x.high : xi), (yVar == var ? y.high : yi), AND_EXISTS_EXPAND);
+            }
+            else
+            {
+                int high = results.pop();
+                int low = results.pop();
+                int output;
+                if (stage == AND_EXISTS_OR)
+                    output = applyLoop(orMemo, Operator.OR, tree, tree, low, high);
+                else
+                    output = mk(new Node(low, high, Math.min(tree.getInputIndex(xi), tree.getInputIndex(yi))));
+                memo.put(key, output);
+                results.push(output);
+            }
+        }
+        return results.pop();
+    }
+
+    private int isopCofactor(int u, int x, boolean value)
+    {
+        if (tree.getInputIndex(u) != x)
+            return u;
+        Node node = tree.getNode(u);
+        return (value ? node.high : node.low);
+    }
+
     public void preConcatonateInputs(int numInputsToAdd)
     {
         this.tree.preConcatonateInputs(numInputsToAdd);
@@ -366,11 +1431,12 @@ public class BDD extends Executable implements Graph
     public boolean[] execute(boolean[] input)
     {
         assert(input.length == this.tree.getNumInputs());
-        Node currentNode = tree.getNode(tree.getRootIndex());
-        for (int i = 0; i < input.length; i++)
+        int current = tree.getRootIndex();
+        Node currentNode = tree.getNode(current);
+        while (!currentNode.isTerminal())
         {
-            if (currentNode.inputIndex == i)
-                currentNode = (input[i] ? tree.getNode(currentNode.high) : tree.getNode(currentNode.low));
+            current = (input[tree.getInputIndex(current)] ? currentNode.high : currentNode.low);
+            currentNode = tree.getNode(current);
         }
         return new boolean[] { currentNode.terminalValue };
     }
@@ -391,57 +1457,343 @@ public class BDD extends Executable implements Graph
      * Build a new BDD by applying a boolean operator to two existing ones.
      * See Anderson (1997) for an explanation of this algorithm.
      */
-    private void apply(HashMap dynamicProgrammingMemory, BooleanOperator op, BDDTree xTree, BDDTree yTree, int xIndex, int yIndex)
+    private void apply(LongIntMap dynamicProgrammingMemory, BooleanOperator op, BDDTree xTree, BDDTree yTree, int xIndex, int yIndex)
     {
         int newRoot = applyLoop(dynamicProgrammingMemory, op, xTree, yTree, xIndex, yIndex);
         tree.setRootIndex(newRoot); // Required in the case that the new tree returns false for all inputs (without this line it returns all trues!)
     }
-    private int applyLoop(HashMap dynamicProgrammingMemory, BooleanOperator op, BDDTree xTree, BDDTree yTree, int xIndex, int yIndex)
+    
+    /**
+     * Anderson's recursive apply, run off an explicit stack.  Each work item
+     * is a triple (xIndex, yIndex, expanded).  An unexpanded pair either
+     * resolves immediately (terminals, memo hit) or is pushed back as expanded
+     * above its high and low sub-pairs; by the time it's popped again, their
+     * results are the top two entries of the result stack.
+     * 
+     * The operator's truth table lets a pair resolve before both sides are
+     * terminal: once one operand is constant (or both are the same node),
+     * the result is either a constant or the other operand, which is copied
+     * over as is.  For commutative operators on a single tree, pairs are
+     * ordered so (x, y) and (y, x) share a memo entry.
+     */
+    private int applyLoop(LongIntMap dynamicProgrammingMemory, BooleanOperator op, BDDTree xTree, BDDTree yTree, int xIndex, int yIndex)
     {
-        Integer[] key = new Integer[] {xIndex,yIndex};
-        Node x = xTree.getNode(xIndex);
-        Node y = yTree.getNode(yIndex);
-        int output;
-        if (dynamicProgrammingMemory.containsKey(key))
-            return (Integer) dynamicProgrammingMemory.get(key);
-        else if (x.isTerminal() && y.isTerminal())
-            output = (op.operate(x.terminalValue, y.terminalValue) ? 1 : 0);
-        else if (x.inputIndex == y.inputIndex)
-            output = mk(new Node(applyLoop(dynamicProgrammingMemory, op, xTree, yTree, x.low, y.low), applyLoop(dynamicProgrammingMemory, op, xTree, yTree, x.high, y.high), x.inputIndex));
-        else if (x.inputIndex < y.inputIndex)
-            output = mk(new Node(applyLoop(dynamicProgrammingMemory, op, xTree, yTree, x.low, yIndex), applyLoop(dynamicProgrammingMemory, op, xTree, yTree, x.high, yIndex), x.inputIndex));
-        else //(x.inputIndex > y.inputIndex)
-            output = mk(new Node(applyLoop(dynamicProgrammingMemory, op, xTree, yTree, xIndex, y.low), applyLoop(dynamicProgrammingMemory, op, xTree, yTree, xIndex, y.high), y.inputIndex));
-        dynamicProgrammingMemory.put(key, output);
-        return output;
+        int table = Operator.truthTable(op);
+        boolean ordered = (xTree == yTree && Operator.isCommutative(table));
+        int[] xCopies = null; // Nodes already copied into this.tree, for the identity shortcuts
+        int[] yCopies = null;
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(xIndex, yIndex, 0);
+        while (!work.isEmpty())
+        {
+            boolean expanded = (work.pop() != 0);
+            int yi = work.pop();
+            int xi = work.pop();
+            if (ordered && xi > yi)
+            {
+                int t = xi;
+                xi = yi;
+                yi = t;
+            }
+            Node x = xTree.getNode(xi);
+            Node y = yTree.getNode(yi);
+            int xVar = (x.isTerminal() ? Integer.MAX_VALUE : xTree.getInputIndex(xi));
+            int yVar = (y.isTerminal() ? Integer.MAX_VALUE : yTree.getInputIndex(yi));
+            int var = Math.min(xVar, yVar);
+            
+            if (expanded)
+            {
+                int high = results.pop();
+                int low = results.pop();
+                int output = mk(new Node(low, high, var));
+                dynamicProgrammingMemory.put(LongIntMap.pack(xi, yi), output);
+                results.push(output);
+                continue;
+            }
+            
+            if (x.isTerminal() && y.isTerminal())
+            {
+                results.push(op.operate(x.terminalValue, y.terminalValue) ? 1 : 0);
+                continue;
+            }
+            
+            // Short circuits.  1 (negation) isn't one, since it needs new nodes anyway.
+            int rest = -1;
+            if (x.isTerminal())
+                rest = Operator.fixFirst(table, x.terminalValue);
+            else if (y.isTerminal())
+                rest = Operator.fixSecond(table, y.terminalValue);
+            else if (xTree == yTree && xi == yi)
+                rest = Operator.diagonal(table);
+            if (rest == 0 || rest == 3)
+            {
+                results.push(rest & 1);
+                continue;
+            }
+            if (rest == 2)
+            {
+                if (x.isTerminal())
+                {
+                    if (yCopies == null)
+                        yCopies = newCopies(yTree);
+                    results.push(importNode(yTree, yi, yCopies));
+                }
+                else
+                {
+                    if (xCopies == null)
+                        xCopies = newCopies(xTree);
+                    results.push(importNode(xTree, xi, xCopies));
+                }
+                continue;
+            }
+            
+            int cached = dynamicProgrammingMemory.get(LongIntMap.pack(xi, yi));
+            if (record != null)
+                record.cacheLookup(cached >= 0);
+            if (cached >= 0)
+            {
+                results.push(cached);
+                continue;
+            }
+            
+            work.push(xi, yi, 1);
+            work.push((xVar == var ? x.high : xi), (yVar == var ? y.high : yi), 0);
+            work.push((xVar == var ? x.low : xi), (yVar == var ? y.low : yi), 0);
+        }
+        return results.pop();
     }
     
     
+    /** Marks an input that restrict() leaves alone. */
+    private static final byte FREE = -1;
+    
     /**
-     * Build a new BDD by restricting one of the inputs of a pre-existing one.
+     * Build a new BDD by restricting some of the inputs of a pre-existing
+     * one.  The result is built from scratch in this.tree, so x is only read.
+     * 
+     * @param cube cube[i] is 0 or 1 if input i is fixed to false or true, or
+     *          FREE if it is left alone.
      */
-    private int restrict(BDDTree xTree, int currentIndex, int inputToFix, boolean value, HashMap<Integer, Integer> dpMemory)
+    private int restrict(BDDTree xTree, int rootIndex, byte[] cube)
     {
-        /* We search for all nodes with Node.inputIndex = inputIndex and replace
-         * them with their low- or high-child depending on the parity of value.
-         * From Anderson (1997). */
-        if (dpMemory.containsKey(currentIndex))
-            return dpMemory.get(currentIndex);
-        
-        Node u = xTree.getNode(currentIndex);
-        int returnValue = 0;
-        
-        if (u.inputIndex > inputToFix)
-            returnValue = currentIndex;
-        else if (u.inputIndex < inputToFix)
-            returnValue = mk(new Node(restrict(xTree, u.low, inputToFix, value, dpMemory), restrict(xTree, u.high, inputToFix, value, dpMemory), u.inputIndex));
-        else if (!value)
-            returnValue = restrict(xTree, u.low, inputToFix, value, dpMemory);
-        else
-            returnValue = restrict(xTree, u.high, inputToFix, value, dpMemory);
-        
-        dpMemory.put(currentIndex, returnValue);
-        return returnValue;
+        /* We search for all nodes whose input is fixed and replace them with
+         * their low- or high-child depending on the value it's fixed to; every
+         * other node is rebuilt from its restricted children.  From Anderson
+         * (1997), generalized to any number of inputs.
+         * 
+         * Work items are (nodeIndex, stage) pairs: stage 0 hasn't been looked
+         * at, stage 1 is waiting on both children's results, and stage 2 is a
+         * fixed node waiting on the one child that replaces it. */
+        int[] dpMemory = new int[xTree.getNumNodes()];
+        Arrays.fill(dpMemory, -1);
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(rootIndex);
+        work.push(0);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int currentIndex = work.pop();
+            Node u = xTree.getNode(currentIndex);
+            
+            if (stage == 1)
+            {
+                int high = results.pop();
+                int low = results.pop();
+                dpMemory[currentIndex] = mk(new Node(low, high, xTree.getInputIndex(currentIndex)));
+                results.push(dpMemory[currentIndex]);
+                continue;
+            }
+            if (stage == 2)
+            {
+                dpMemory[currentIndex] = results.peek();
+                continue;
+            }
+            
+            if (u.isTerminal())
+            {
+                results.push(u.terminalValue ? 1 : 0);
+                continue;
+            }
+            if (record != null)
+                record.cacheLookup(dpMemory[currentIndex] >= 0);
+            if (dpMemory[currentIndex] >= 0)
+                results.push(dpMemory[currentIndex]);
+            else if (cube[xTree.getInputIndex(currentIndex)] == FREE)
+            {
+                work.push(currentIndex);
+                work.push(1);
+                work.push(u.high);
+                work.push(0);
+                work.push(u.low);
+                work.push(0);
+            }
+            else
+            {
+                work.push(currentIndex);
+                work.push(2);
+                work.push(cube[xTree.getInputIndex(currentIndex)] == 1 ? u.high : u.low);
+                work.push(0);
+            }
+        }
+        return results.pop();
+    }
+    
+    /**
+     * Generalized cofactor of f by c, both in this.tree.  See Coudert and
+     * Madre, "A Unified Framework for the Formal Verification of Sequential
+     * Circuits," ICCAD 1990.
+     * 
+     * Work items are (f, c, stage) triples, with the same stages as
+     * restrict(): 1 waits on both children, 2 waits on the one sub-problem
+     * that (f, c) reduces to.  Results are memoised in their own table.
+     * 
+     * @param constrain If true, computes constrain(f, c); otherwise restrict(f, c).
+     */
+    private int cofactor(int fRoot, int cRoot, boolean constrain)
+    {
+        LongIntMap dpMemory = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(fRoot, cRoot, 0);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int c = work.pop();
+            int f = work.pop();
+            
+            if (stage == 2)
+            {
+                dpMemory.put(LongIntMap.pack(f, c), results.peek());
+                continue;
+            }
+            
+            Node fNode = tree.getNode(f);
+            Node cNode = tree.getNode(c);
+            int fVar = (fNode.isTerminal() ? Integer.MAX_VALUE : tree.getInputIndex(f));
+            int cVar = (cNode.isTerminal() ? Integer.MAX_VALUE : tree.getInputIndex(c));
+            int var = Math.min(fVar, cVar);
+            
+            if (stage == 1)
+            {
+                int high = results.pop();
+                int low = results.pop();
+                int output = mk(new Node(low, high, var));
+                dpMemory.put(LongIntMap.pack(f, c), output);
+                results.push(output);
+                continue;
+            }
+            
+            // Terminal cases.  Outside the care set anything goes, so pick false.
+            if (c == 0)
+            {
+                results.push(0);
+                continue;
+            }
+            if (c == 1 || fNode.isTerminal())
+            {
+                results.push(f);
+                continue;
+            }
+            if (f == c)
+            {
+                results.push(1);
+                continue;
+            }
+            int cached = dpMemory.get(LongIntMap.pack(f, c));
+            if (record != null)
+                record.cacheLookup(cached >= 0);
+            if (cached >= 0)
+            {
+                results.push(cached);
+                continue;
+            }
+            
+            if (!constrain && cVar < fVar)
+            { // f doesn't depend on c's top input, so neither should the result
+                int cQuantified = applyLoop(new LongIntMap(), Operator.OR, tree, tree, cNode.low, cNode.high);
+                work.push(f, c, 2);
+                work.push(f, cQuantified, 0);
+                continue;
+            }
+            
+            int fLow = (fVar == var ? fNode.low : f);
+            int fHigh = (fVar == var ? fNode.high : f);
+            int cLow = (cVar == var ? cNode.low : c);
+            int cHigh = (cVar == var ? cNode.high : c);
+            if (cLow == 0)
+            {
+                work.push(f, c, 2);
+                work.push(fHigh, cHigh, 0);
+            }
+            else if (cHigh == 0)
+            {
+                work.push(f, c, 2);
+                work.push(fLow, cLow, 0);
+            }
+            else
+            {
+                work.push(f, c, 1);
+                work.push(fHigh, cHigh, 0);
+                work.push(fLow, cLow, 0);
+            }
+        }
+        return results.pop();
+    }
+    
+    /**
+     * Copy the subgraph of src rooted at srcRoot into this.tree.
+     * 
+     * @return The index of the copy of srcRoot.
+     */
+    private int importNode(BDDTree src, int srcRoot)
+    {
+        return importNode(src, srcRoot, newCopies(src));
+    }
+    
+    /**
+     * Copy the subgraph of src rooted at srcRoot into this.tree, reusing any
+     * nodes already copied by earlier calls with the same copies array.  If
+     * src is this.tree, there's nothing to copy.
+     */
+    private int importNode(BDDTree src, int srcRoot, int[] copies)
+    {
+        if (src == this.tree)
+            return srcRoot;
+        for (int i : src.postOrder(srcRoot, copies))
+        {
+            Node u = src.getNode(i);
+            copies[i] = mk(new Node(copies[u.low], copies[u.high], src.getInputIndex(i)));
+        }
+        return copies[srcRoot];
+    }
+    
+    /**
+     * A map from nodes of src to their copies in this.tree, with only the
+     * terminals filled in.
+     */
+    private int[] newCopies(BDDTree src)
+    {
+        int[] copies = new int[src.getNumNodes()];
+        Arrays.fill(copies, -1);
+        for (int i = 0; i < Math.min(2, copies.length); i++)
+        {
+            if (src.getNode(i).isTerminal())
+                copies[i] = (src.getNode(i).terminalValue ? 1 : 0);
+        }
+        return copies;
+    }
+    
+    /**
+     * Replace this.tree by a fresh tree holding only the nodes reachable from
+     * root, with root last.
+     */
+    private void compact(int root)
+    {
+        BDDTree scratch = this.tree;
+        this.tree = new BDDTree(scratch.getNumInputs());
+        tree.setRootIndex(importNode(scratch, root));
     }
     
     /**
@@ -452,10 +1804,16 @@ public class BDD extends Executable implements Graph
     {
         if (node.high == node.low)
             return node.low;
-        else if (tree.contains(node))
+        if (budget != null)
+            budget.step();
+        boolean exists = tree.contains(node);
+        if (record != null)
+            record.uniqueLookup(exists);
+        if (exists)
             return tree.getNodeIndex(node);
-        else
-            return tree.addNode(node);
+        if (budget != null)
+            budget.nodeCreated();
+        return tree.addNode(node);
     }
     
     @Override
@@ -478,32 +1836,48 @@ public class BDD extends Executable implements Graph
     
     private String dotBody(String prefix)
     {
-        String dot = "True [shape=box];\nFalse [shape=box];\n";
+        StringBuilder dot = new StringBuilder("True [shape=box];\nFalse [shape=box];\n");
         int r = tree.getRootIndex();
         boolean[] visited = new boolean[r+1];
-        for (int i = 0; i < r+1; i++)
-            visited[i] = false;
-        return dot + toDotDFS(r, prefix, tree.getNode(r), null, false, visited);
+        toDotDFS(r, prefix, visited, dot);
+        return dot.toString();
     }
     
-    private String toDotDFS(int i, String prefix, Node currentNode, String parentName, boolean lowEdge, boolean[] visited)
+    /**
+     * Emits one edge per (parent, child) pair, descending into each node's
+     * children only the first time it's reached.  Work items are
+     * (nodeIndex, parentIndex, lowEdge) triples, with parentIndex -1 for the
+     * root; the low child is pushed last so it's emitted first.
+     */
+    private void toDotDFS(int root, String prefix, boolean[] visited, StringBuilder dot)
     {
-        String currentName = prefix + "Node" + i + "_Var" + currentNode.inputIndex;
-        if (currentNode.isTerminal())
-            return parentName + "->" + (currentNode.terminalValue ? "True" : "False") + (lowEdge ? "[style=dashed];\n" : ";\n");
-        else
+        IntStack work = new IntStack();
+        work.push(root, -1, 0);
+        while (!work.isEmpty())
         {
-            String output = "";
+            boolean lowEdge = (work.pop() != 0);
+            int parent = work.pop();
+            int i = work.pop();
+            Node currentNode = tree.getNode(i);
+            String parentName = (parent < 0 ? null : dotName(prefix, parent));
+            if (currentNode.isTerminal())
+            {
+                dot.append(parentName).append("->").append(currentNode.terminalValue ? "True" : "False").append(lowEdge ? "[style=dashed];\n" : ";\n");
+                continue;
+            }
             if (parentName != null)
-                output += parentName + "->" + currentName + (lowEdge ? "[style=dashed];\n" : ";\n");
+                dot.append(parentName).append("->").append(dotName(prefix, i)).append(lowEdge ? "[style=dashed];\n" : ";\n");
             if (!visited[i])
             { // Only visit this nodes children if we haven't been down this route already
-                output += toDotDFS(currentNode.low, prefix, tree.getNode(currentNode.low), currentName, true, visited);
-                output += toDotDFS(currentNode.high, prefix, tree.getNode(currentNode.high), currentName, false, visited);
+                visited[i] = true;
+                work.push(currentNode.high, i, 0);
+                work.push(currentNode.low, i, 1);
             }
-            visited[i] = true;
-            return output;
         }
-            
+    }
+    
+    private String dotName(String prefix, int i)
+    {
+        return prefix + "Node" + i + "_Var" + tree.getInputIndex(i);
     }
 }
@@ -0,0 +1,46 @@
+package LightBDD;
+
+/**
+ * Thrown when an operation started under a BDDLimits exceeds one of them.  The
+ * operands are left untouched and the partial result is dropped, so the
+ * caller can carry on (e.g. with a different variable order or a looser
+ * limit).
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class BDDLimitExceededException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+    
+    public enum Reason { NODE_BUDGET, DEADLINE };
+    
+    private final Reason reason;
+    private final BDDLimits limits;
+    private final long nodesCreated;
+    
+    public BDDLimitExceededException(Reason reason, BDDLimits limits, long nodesCreated)
+    {
+        super(reason + " exceeded after " + nodesCreated + " nodes (" + limits + ")");
+        this.reason = reason;
+        this.limits = limits;
+        this.nodesCreated = nodesCreated;
+    }
+    
+    public Reason getReason()
+    {
+        return reason;
+    }
+    
+    public BDDLimits getLimits()
+    {
+        return limits;
+    }
+    
+    /**
+     * Nodes the operation had created when it was stopped.
+     */
+    public long getNodesCreated()
+    {
+        return nodesCreated;
+    }
+}
@@ -0,0 +1,68 @@
+package LightBDD;
+
+/**
+ * Resource limits for a single apply, restrict or compose.  Pass one to the
+ * static BDD.apply(), BDD.restrict(), BDD.compose() or MultiBDD.compose()
+ * and the operation will give up with a BDDLimitExceededException rather
+ * than run away with the heap or the clock.
+ * 
+ * The node budget counts every node the operation creates, including those in
+ * intermediate diagrams (a composition builds several), so it bounds the
+ * memory the operation can allocate.  The timeout is measured from the moment
+ * the operation starts.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public final class BDDLimits
+{
+    public static final BDDLimits NONE = new BDDLimits(Long.MAX_VALUE, 0);
+    
+    private final long maxNodes;
+    private final long timeoutMillis;
+    
+    /**
+     * @param maxNodes Largest number of nodes the operation may create.
+     * @param timeoutMillis Wall-clock time the operation may take.  Zero or
+     *          less means no deadline.
+     */
+    public BDDLimits(long maxNodes, long timeoutMillis)
+    {
+        assert(maxNodes >= 0);
+        this.maxNodes = maxNodes;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    public long getMaxNodes()
+    {
+        return maxNodes;
+    }
+    
+    public long getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+    
+    public BDDLimits withMaxNodes(long maxNodes)
+    {
+        return new BDDLimits(maxNodes, timeoutMillis);
+    }
+    
+    public BDDLimits withTimeoutMillis(long timeoutMillis)
+    {
+        return new BDDLimits(maxNodes, timeoutMillis);
+    }
+    
+    /**
+     * Start the clock for one operation.
+     */
+    Budget begin()
+    {
+        return new Budget(maxNodes, (timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000L : 0));
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "BDDLimits[maxNodes=" + maxNodes + ", timeoutMillis=" + timeoutMillis + "]";
+    }
+}
@@ -0,0 +1,46 @@
+package LightBDD;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event emitted once per apply, restrict, compose or
+ * generalized cofactor.  Enable it with, e.g., -XX:StartFlightRecording and a
+ * settings file that turns on "LightBDD.Operation".
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+@Name("LightBDD.Operation")
+@Label("BDD Operation")
+@Category("LightBDD")
+@Description("A single apply, restrict, compose or generalized cofactor on a BDD")
+final class BDDOperationEvent extends Event
+{
+    @Label("Operation")
+    String operation;
+    
+    @Label("Inputs")
+    int numInputs;
+    
+    @Label("Result Nodes")
+    int resultNodes;
+    
+    @Label("Aborted")
+    @Description("The operation threw, e.g. because it exceeded its BDDLimits")
+    boolean aborted;
+    
+    @Label("Cache Lookups")
+    long cacheLookups;
+    
+    @Label("Cache Hits")
+    long cacheHits;
+    
+    @Label("Unique Table Lookups")
+    long uniqueLookups;
+    
+    @Label("Unique Table Hits")
+    long uniqueHits;
+}
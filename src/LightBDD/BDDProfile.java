@@ -0,0 +1,238 @@
+package LightBDD;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Structural figures for a BDD or MultiBDD, gathered in one pass over the
+ * nodes its roots reach: node count, nodes per input, support, longest
+ * path, and how many nodes the outputs of a MultiBDD have in common.
+ * Unlike BDDTree.getNumNodes(), nothing left below the root by earlier
+ * operations is counted.
+ *
+ * A MultiBDD keeps a separate tree per output, so its outputs are profiled
+ * as if they were stored in one shared diagram: a node is shared if two or
+ * more outputs reach an identical subgraph.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class BDDProfile
+{
+    private final int numInputs;
+    private final int numOutputs;
+    private final int numNodes;
+    private final int[] nodesPerLevel;
+    private final BitSet support;
+    private final int longestPath;
+    private final int numSharedNodes;
+
+    BDDProfile(List<BDD> outputs)
+    {
+        assert(!outputs.isEmpty());
+        this.numInputs = outputs.get(0).getNumInputs();
+        this.numOutputs = outputs.size();
+
+        // Hash-cons every output into one forest, so equal subgraphs coincide.
+        BDDTree forest = new BDDTree(numInputs);
+        int[] roots = new int[numOutputs];
+        for (int k = 0; k < numOutputs; k++)
+        {
+            assert(outputs.get(k).getNumInputs() == numInputs);
+            roots[k] = importInto(forest, outputs.get(k).getTree());
+        }
+
+        // owner[u] is the first output to reach u, or -2 once a second one does.
+        int size = forest.getNumNodes();
+        int[] owner = new int[size];
+        Arrays.fill(owner, -1);
+        int shared = 0;
+        int[] visited = new int[size];
+        Arrays.fill(visited, -1);
+        IntStack work = new IntStack();
+        for (int k = 0; k < numOutputs; k++)
+        {
+            work.push(roots[k]);
+            while (!work.isEmpty())
+            {
+                int u = work.pop();
+                if (visited[u] == k)
+                    continue;
+                visited[u] = k;
+                if (owner[u] == -1)
+                    owner[u] = k;
+                else if (owner[u] >= 0)
+                {
+                    owner[u] = -2;
+                    if (u > 1) // Every output ends in the terminals; they aren't sharing
+                        shared++;
+                }
+                Node node = forest.getNode(u);
+                if (!node.isTerminal())
+                {
+                    work.push(node.low);
+                    work.push(node.high);
+                }
+            }
+        }
+
+        // Children come before their parents, so one forward pass suffices.
+        int[] depth = new int[size];
+        int[] widths = new int[numInputs];
+        BitSet vars = new BitSet(numInputs);
+        int count = 0;
+        int longest = 0;
+        for (int u = 0; u < size; u++)
+        {
+            if (owner[u] == -1)
+                continue;
+            count++;
+            Node node = forest.getNode(u);
+            if (node.isTerminal())
+                continue;
+            int input = forest.getInputIndex(u);
+            widths[input]++;
+            vars.set(input);
+            depth[u] = 1 + Math.max(depth[node.low], depth[node.high]);
+            longest = Math.max(longest, depth[u]);
+        }
+        this.numNodes = count;
+        this.nodesPerLevel = widths;
+        this.support = vars;
+        this.longestPath = longest;
+        this.numSharedNodes = shared;
+    }
+
+    /**
+     * Copy the nodes src's root reaches into forest, returning the new root.
+     */
+    private static int importInto(BDDTree forest, BDDTree src)
+    {
+        int[] copies = new int[src.getNumNodes()];
+        for (int i : src.postOrder(src.getRootIndex()))
+        {
+            Node u = src.getNode(i);
+            if (u.isTerminal())
+                copies[i] = (u.terminalValue ? 1 : 0);
+            else
+            {
+                Node node = new Node(copies[u.low], copies[u.high], src.getInputIndex(i));
+                copies[i] = (forest.contains(node) ? forest.getNodeIndex(node) : forest.addNode(node));
+            }
+        }
+        return copies[src.getRootIndex()];
+    }
+
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    public int getNumOutputs()
+    {
+        return numOutputs;
+    }
+
+    /**
+     * Number of nodes reachable from the roots, including the terminals they
+     * reach.  Nodes shared between outputs are counted once.
+     */
+    public int getNumNodes()
+    {
+        return numNodes;
+    }
+
+    /**
+     * Number of reachable non-terminal nodes labelled with each input.
+     */
+    public int[] getNodesPerLevel()
+    {
+        return nodesPerLevel.clone();
+    }
+
+    /**
+     * The inputs the function actually depends on.
+     */
+    public BitSet getSupport()
+    {
+        return (BitSet)support.clone();
+    }
+
+    /**
+     * Most decisions made on any path from a root to a terminal.
+     */
+    public int getLongestPath()
+    {
+        return longestPath;
+    }
+
+    /**
+     * Number of non-terminal nodes reachable from more than one output.
+     * Always 0 for a single BDD.
+     */
+    public int getNumSharedNodes()
+    {
+        return numSharedNodes;
+    }
+
+    /**
+     * An upper bound on the number of nodes apply(op, x, y) would build,
+     * where this is x's profile, without building anything.  On each input
+     * v, apply makes at most one node per pair of operand nodes whose top
+     * input is v, and no diagram has more than 2^k nodes on v, where k is
+     * the number of support inputs before it.  Each input contributes the
+     * smaller of the two.
+     */
+    public long estimateApplySize(BooleanOperator op, BDDProfile y)
+    {
+        assert(y.numInputs == numInputs);
+        int table = Operator.truthTable(op);
+        if (table == 0 || table == 15)
+            return 1;
+        if (table == 12 || table == 3) // x or !x
+            return numNodes;
+        if (table == 10 || table == 5) // y or !y
+            return y.numNodes;
+
+        // Nodes at or below each input, terminals included.
+        long xBelow = numNodes - sum(nodesPerLevel);
+        long yBelow = y.numNodes - sum(y.nodesPerLevel);
+        long[] xAtOrBelow = new long[numInputs];
+        long[] yAtOrBelow = new long[numInputs];
+        for (int v = numInputs - 1; v >= 0; v--)
+        {
+            xAtOrBelow[v] = (xBelow += nodesPerLevel[v]);
+            yAtOrBelow[v] = (yBelow += y.nodesPerLevel[v]);
+        }
+        long estimate = 2;
+        int supportAbove = 0;
+        for (int v = 0; v < numInputs; v++)
+        {
+            long xStrictlyBelow = (v + 1 < numInputs ? xAtOrBelow[v + 1] : numNodes - sum(nodesPerLevel));
+            long pairs = nodesPerLevel[v] * yAtOrBelow[v] + y.nodesPerLevel[v] * xStrictlyBelow;
+            if (pairs == 0)
+                continue;
+            if (supportAbove < 62)
+                pairs = Math.min(pairs, 1L << supportAbove);
+            estimate += pairs;
+            supportAbove++;
+        }
+        return Math.min(estimate, (long)numNodes * y.numNodes);
+    }
+
+    private static int sum(int[] counts)
+    {
+        int total = 0;
+        for (int c : counts)
+            total += c;
+        return total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BDDProfile[inputs=" + numInputs + ", outputs=" + numOutputs + ", nodes=" + numNodes
+                + ", support=" + support + ", longestPath=" + longestPath + ", shared=" + numSharedNodes
+                + ", perLevel=" + Arrays.toString(nodesPerLevel) + "]";
+    }
+}
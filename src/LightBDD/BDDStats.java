@@ -0,0 +1,193 @@
+package LightBDD;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Engine-wide counters describing what BDD operations cost: calls and time
+ * per operation, computed-cache lookups and hits, unique-table lookups and
+ * hits, and the largest node table built so far.
+ * 
+ * Collection is off by default.  Turn it on with setEnabled(true), run the
+ * workload, then read the counters from getGlobal().  The same figures are
+ * published per operation as "LightBDD.Operation" JDK Flight Recorder events
+ * whenever that event is enabled in a recording, whether or not these
+ * counters are.
+ * 
+ * Figures that belong to a single diagram (nodes per level, unique-table load
+ * and probe lengths) are read straight off its BDDTree.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public final class BDDStats
+{
+    public enum Operation { APPLY, RESTRICT, COMPOSE, COFACTOR };
+    
+    private static volatile boolean enabled = false;
+    private static final BDDStats global = new BDDStats();
+    
+    private final int numOps = Operation.values().length;
+    private final AtomicLongArray calls = new AtomicLongArray(numOps);
+    private final AtomicLongArray aborted = new AtomicLongArray(numOps);
+    private final AtomicLongArray nanos = new AtomicLongArray(numOps);
+    private final AtomicLongArray cacheLookups = new AtomicLongArray(numOps);
+    private final AtomicLongArray cacheHits = new AtomicLongArray(numOps);
+    private final AtomicLong uniqueLookups = new AtomicLong();
+    private final AtomicLong uniqueHits = new AtomicLong();
+    private final AtomicLong nodesCreated = new AtomicLong();
+    private final AtomicLong peakNodes = new AtomicLong();
+    
+    private BDDStats()
+    {
+        
+    }
+    
+    public static BDDStats getGlobal()
+    {
+        return global;
+    }
+    
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+    
+    public static void setEnabled(boolean value)
+    {
+        enabled = value;
+    }
+    
+    /**
+     * Number of calls to op that completed.  Those that threw are counted by
+     * getAborted() instead.
+     */
+    public long getCalls(Operation op)
+    {
+        return calls.get(op.ordinal());
+    }
+    
+    /**
+     * Number of calls to op whose kernel threw, e.g. because it exceeded its
+     * BDDLimits.  Their lookups still count towards the cache and unique
+     * table figures, but not towards the times or the peak.
+     */
+    public long getAborted(Operation op)
+    {
+        return aborted.get(op.ordinal());
+    }
+    
+    /**
+     * Wall-clock time spent in op, summed over all calls.  Nested operations
+     * (the applies and restricts a composition runs) are counted under their
+     * own operation as well as inside the enclosing one.
+     */
+    public long getTotalNanos(Operation op)
+    {
+        return nanos.get(op.ordinal());
+    }
+    
+    public double getMeanNanos(Operation op)
+    {
+        long n = getCalls(op);
+        return (n == 0 ? 0.0 : (double)getTotalNanos(op) / n);
+    }
+    
+    public long getCacheLookups(Operation op)
+    {
+        return cacheLookups.get(op.ordinal());
+    }
+    
+    public long getCacheHits(Operation op)
+    {
+        return cacheHits.get(op.ordinal());
+    }
+    
+    public double getCacheHitRate(Operation op)
+    {
+        long n = getCacheLookups(op);
+        return (n == 0 ? 0.0 : (double)getCacheHits(op) / n);
+    }
+    
+    /**
+     * Number of times mk() consulted a unique table.
+     */
+    public long getUniqueLookups()
+    {
+        return uniqueLookups.get();
+    }
+    
+    /**
+     * Number of unique table lookups that found an existing node.
+     */
+    public long getUniqueHits()
+    {
+        return uniqueHits.get();
+    }
+    
+    public long getNodesCreated()
+    {
+        return nodesCreated.get();
+    }
+    
+    /**
+     * Largest node table any recorded operation has produced.
+     */
+    public long getPeakNodes()
+    {
+        return peakNodes.get();
+    }
+    
+    public void reset()
+    {
+        for (int i = 0; i < numOps; i++)
+        {
+            calls.set(i, 0);
+            aborted.set(i, 0);
+            nanos.set(i, 0);
+            cacheLookups.set(i, 0);
+            cacheHits.set(i, 0);
+        }
+        uniqueLookups.set(0);
+        uniqueHits.set(0);
+        nodesCreated.set(0);
+        peakNodes.set(0);
+    }
+    
+    void record(OperationRecord r, long elapsedNanos, int resultNodes)
+    {
+        int i = r.operation.ordinal();
+        calls.incrementAndGet(i);
+        nanos.addAndGet(i, elapsedNanos);
+        cacheLookups.addAndGet(i, r.cacheLookups);
+        cacheHits.addAndGet(i, r.cacheHits);
+        uniqueLookups.addAndGet(r.uniqueLookups);
+        uniqueHits.addAndGet(r.uniqueHits);
+        nodesCreated.addAndGet(r.uniqueLookups - r.uniqueHits);
+        long peak = peakNodes.get();
+        while (resultNodes > peak && !peakNodes.compareAndSet(peak, resultNodes))
+            peak = peakNodes.get();
+    }
+    
+    void recordAborted(OperationRecord r)
+    {
+        int i = r.operation.ordinal();
+        aborted.incrementAndGet(i);
+        cacheLookups.addAndGet(i, r.cacheLookups);
+        cacheHits.addAndGet(i, r.cacheHits);
+        uniqueLookups.addAndGet(r.uniqueLookups);
+        uniqueHits.addAndGet(r.uniqueHits);
+        nodesCreated.addAndGet(r.uniqueLookups - r.uniqueHits);
+    }
+    
+    @Override
+    public String toString()
+    {
+        String output = "";
+        for (Operation op : Operation.values())
+            output += op + ": calls=" + getCalls(op) + " aborted=" + getAborted(op) + " meanNanos=" + (long)getMeanNanos(op)
+                    + " cacheLookups=" + getCacheLookups(op) + " cacheHitRate=" + getCacheHitRate(op) + "\n";
+        output += "unique: lookups=" + getUniqueLookups() + " hits=" + getUniqueHits()
+                + " nodesCreated=" + getNodesCreated() + " peakNodes=" + getPeakNodes() + "\n";
+        return output;
+    }
+}
@@ -1,5 +1,6 @@
 package LightBDD;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.ArrayList;
 
@@ -10,6 +11,14 @@ import java.util.ArrayList;
  * Implicitly, the root is the last node in the ArrayList, because the BDD tree
  * is always built from the bottom-up.
  * 
+ * Nodes don't store their input directly.  A stored Node's inputIndex is a
+ * level, and the input of level l is levelToInput[l] + inputShift (or just
+ * l + inputShift while levelToInput is null).  Renaming inputs then only
+ * touches the level map, and shifting them all only touches inputShift, so
+ * neither has to rehash any nodes.  Use getInputIndex() to read a node's
+ * input.  Nodes passed in to addNode(), contains() and getNodeIndex() carry
+ * an input, which is translated to a level on the way in.
+ * 
  * @author Eric 'Siggy' Scott
  */
 public class BDDTree
@@ -18,6 +27,11 @@ public class BDDTree
     private ArrayList<Node> nodes;
     private HashMap<Node, Integer> nodesHash;
     private int numInputs;
+    private int[] levelToInput; // null for the identity
+    private int inputShift;
+    private int numLevels;      // One more than the highest level in use
+    private int[] inputToLevel; // Inverse of the level map, built on demand
+    private static final int DEAD_LEVEL = Integer.MIN_VALUE; // The level of a collapsed input
     
     /**
      * Empty constructor
@@ -56,6 +70,9 @@ public class BDDTree
     {
         int sz = t1.nodes.size();
         this.numInputs = t1.numInputs;
+        this.levelToInput = (t1.levelToInput == null ? null : t1.levelToInput.clone());
+        this.inputShift = t1.inputShift;
+        this.numLevels = t1.numLevels;
         this.nodes = new ArrayList(sz);
         this.nodesHash = new HashMap(sz);
         for (int i = 0; i < sz; i++)
@@ -72,8 +89,18 @@ public class BDDTree
      */
     public BDDTree BuildNegation()
     {
+        if (getRootNode().isTerminal())
+        { // The other terminal may be missing, so swapping children isn't enough.
+            BDDTree constant = new BDDTree(numInputs);
+            if (getRootNode().terminalValue)
+                constant.setRootIndex(0);
+            return constant;
+        }
         BDDTree negation = new BDDTree();
         negation.numInputs = this.numInputs;
+        negation.levelToInput = (this.levelToInput == null ? null : this.levelToInput.clone());
+        negation.inputShift = this.inputShift;
+        negation.numLevels = this.numLevels;
         negation.nodes = new ArrayList(nodes.size());
         negation.nodesHash = new HashMap(nodes.size());
         
@@ -100,6 +127,73 @@ public class BDDTree
         return this.numInputs;
     }
     
+    /**
+     * The input the node at index tests, or numInputs for a terminal.
+     */
+    public int getInputIndex(int index)
+    {
+        Node n = nodes.get(index);
+        return (n.isTerminal() ? numInputs : inputOfLevel(n.inputIndex));
+    }
+    
+    private int inputOfLevel(int level)
+    {
+        return (levelToInput == null ? level : levelToInput[level]) + inputShift;
+    }
+    
+    /**
+     * The level that holds input, adding one if no node tests it yet.
+     */
+    private int levelOfInput(int input)
+    {
+        if (levelToInput == null)
+        {
+            if (input >= inputShift)
+                return input - inputShift;
+            materializeLevels(); // input was pre-concatonated, so it has no level yet
+        }
+        if (inputToLevel == null)
+        {
+            inputToLevel = new int[numInputs];
+            Arrays.fill(inputToLevel, -1);
+            for (int l = 0; l < numLevels; l++)
+            {
+                if (levelToInput[l] != DEAD_LEVEL)
+                    inputToLevel[inputOfLevel(l)] = l;
+            }
+        }
+        if (inputToLevel[input] < 0)
+        {
+            if (numLevels == levelToInput.length)
+                levelToInput = Arrays.copyOf(levelToInput, 2 * numLevels + 1);
+            levelToInput[numLevels] = input - inputShift;
+            inputToLevel[input] = numLevels++;
+        }
+        return inputToLevel[input];
+    }
+    
+    /**
+     * The node as it is stored: with its input replaced by a level.
+     */
+    private Node stored(Node n)
+    {
+        if (n.isTerminal() || (levelToInput == null && inputShift == 0))
+            return n;
+        return new Node(n.low, n.high, levelOfInput(n.inputIndex));
+    }
+    
+    /**
+     * Start using an explicit level map, if we aren't already.
+     */
+    private void materializeLevels()
+    {
+        if (levelToInput != null)
+            return;
+        levelToInput = new int[numLevels];
+        for (int l = 0; l < numLevels; l++)
+            levelToInput[l] = l;
+    }
+    
     /**
      * Increase the number of input variables by adding inputs to the beginning
      * of the input string.  The new inputs will have no effect on the output
@@ -107,9 +201,9 @@ public class BDDTree
      */
     public void preConcatonateInputs(int numInputsToAdd)
     {
-        for (int i = 0; i < nodes.size(); i++)
-            modifyNodeInputIndex(i, numInputsToAdd);
+        this.inputShift += numInputsToAdd;
         this.numInputs += numInputsToAdd;
+        this.inputToLevel = null;
     }
     
     /**
@@ -119,43 +213,97 @@ public class BDDTree
      */
     public void postConcatonateInputs(int numInputsToAdd)
     {
-        modifyNodeInputIndex(0, numInputsToAdd);
-        if (nodes.size() > 1) // In the case of an all-false-output function, the true node will not exist.
-            modifyNodeInputIndex(1, numInputsToAdd);
         this.numInputs += numInputsToAdd;
+        this.inputToLevel = null;
     }
     
-    private void modifyNodeInputIndex(int nodeIndex, int difference)
+    /**
+     * Rename every input i to permutation[i].  The renaming must keep the
+     * order of the inputs that nodes test, or the tree would no longer be
+     * ordered; see BDD.replace() for the general case.
+     */
+    public void renameInputs(int[] permutation)
     {
-        assert(nodeIndex < nodes.size());
-        assert(nodes.size() > 0);
-        Node n = nodes.get(nodeIndex);
-        nodesHash.remove(n);
-        n.inputIndex += difference;
-        nodesHash.put(n, nodeIndex);
+        assert(permutation.length == numInputs);
+        materializeLevels();
+        for (int l = 0; l < numLevels; l++)
+        {
+            if (levelToInput[l] != DEAD_LEVEL)
+                levelToInput[l] = permutation[inputOfLevel(l)];
+        }
+        this.inputShift = 0;
+        this.inputToLevel = null;
     }
     
     /**
      *  Test whether this is equal to the reference BDD.  Runs a DFS-based
      *  rooted directed acyclic graph isomorphism algorithm, which
      *  is linear in the number of nodes.
+     * 
+     *  Isomorphic nodes are visited together and given the same label once
+     *  both their subgraphs have matched.  The labels and the DFS stack are
+     *  local, so concurrent calls don't interfere.
      */
-    private int nextLabel;
-    private HashMap<Integer, Integer> visitedNodeLabels;
-    private HashMap<Integer, Integer> refVisitedNodeLabels;
     @Override
     public boolean equals(Object referenceTree)
     {
         if (! (referenceTree instanceof BDDTree))
             return false;
-        visitedNodeLabels = new HashMap();
-        refVisitedNodeLabels = new HashMap();
-        visitedNodeLabels.put(0, 0);
-        visitedNodeLabels.put(1, 1);
-        refVisitedNodeLabels.put(0, 0);
-        refVisitedNodeLabels.put(1, 1);
-        nextLabel = 2;
-        return equalsDFS((BDDTree)referenceTree, this.getRootIndex(), ((BDDTree)referenceTree).getRootIndex());
+        BDDTree reference = (BDDTree)referenceTree;
+        int[] visitedNodeLabels = new int[this.nodes.size()]; // 0 means unvisited
+        int[] refVisitedNodeLabels = new int[reference.nodes.size()];
+        int nextLabel = 1;
+        
+        // Work items are (thisNodeIndex, refNodeIndex, childrenMatched) triples.
+        IntStack work = new IntStack();
+        work.push(this.getRootIndex(), reference.getRootIndex(), 0);
+        while (!work.isEmpty())
+        {
+            boolean childrenMatched = (work.pop() != 0);
+            int refNodeIndex = work.pop();
+            int thisNodeIndex = work.pop();
+            if (childrenMatched)
+            { // Both children are isomorphic, so the parent is too!
+                visitedNodeLabels[thisNodeIndex] = nextLabel;
+                refVisitedNodeLabels[refNodeIndex] = nextLabel;
+                nextLabel++;
+                continue;
+            }
+            
+            // Special case at terminals
+            boolean thisTerminal = (thisNodeIndex == 0 || thisNodeIndex == 1);
+            boolean refTerminal = (refNodeIndex == 0 || refNodeIndex == 1);
+            if (thisTerminal && refTerminal)
+            {
+                if (this.getNode(thisNodeIndex).terminalValue != reference.getNode(refNodeIndex).terminalValue)
+                    return false;
+                continue;
+            }
+            if (thisTerminal || refTerminal)
+                return false;
+            // Isomorphic nodes are visited together, so if their visted status is mismatched, they are not isomorphic. 
+            int label = visitedNodeLabels[thisNodeIndex];
+            int refLabel = refVisitedNodeLabels[refNodeIndex];
+            if ((label == 0) != (refLabel == 0))
+                return false;
+            // If the local and refernce nodes have both been visited, are they isomorphic?
+            if (label != 0)
+            {
+                if (label != refLabel)
+                    return false;
+                continue;
+            }
+            
+            // If we haven't yet visited these nodes, see if the subgraphs are isomorphic.
+            Node thisNode = this.getNode(thisNodeIndex);
+            Node refNode = reference.getNode(refNodeIndex);
+            if (this.getInputIndex(thisNodeIndex) != reference.getInputIndex(refNodeIndex))
+                return false;
+            work.push(thisNodeIndex, refNodeIndex, 1);
+            work.push(thisNode.high, refNode.high, 0);
+            work.push(thisNode.low, refNode.low, 0);
+        }
+        return true;
     }
 
     @Override
@@ -167,63 +315,26 @@ public class BDDTree
         return hash;
     }
     
-    private boolean equalsDFS(BDDTree referenceTree, int thisNodeIndex, int refNodeIndex)
-    {   
-        // Special case at terminals
-        if ((thisNodeIndex == 0 || thisNodeIndex == 1) && (refNodeIndex == 0 || refNodeIndex == 1))
-            return (this.getNode(thisNodeIndex).terminalValue == referenceTree.getNode(refNodeIndex).terminalValue);
-        // Isomorphic nodes are visited together, so if their visted status is mismatched, they are not isomorphic. 
-        if (visitedNodeLabels.containsKey(thisNodeIndex) != refVisitedNodeLabels.containsKey(refNodeIndex))
-            return false;
-        // If the local and refernce nodes have both been visited, are they isomorphic?
-        if (visitedNodeLabels.containsKey(thisNodeIndex))
-        {
-            if (visitedNodeLabels.get(thisNodeIndex) == refVisitedNodeLabels.get(refNodeIndex))
-                return true;
-            else
-                return false;
-        }
-              
-        
-        // If we haven't yet visited these nodes, see if the subgraphs are isomorphic.
-        Node thisNode = this.getNode(thisNodeIndex);
-        Node refNode = referenceTree.getNode(refNodeIndex);
-        
-        if (thisNode.inputIndex != refNode.inputIndex)
-            return false;
-        
-        boolean lowResult = equalsDFS(referenceTree, thisNode.low, refNode.low);
-        if (!lowResult)
-            return false;
-        
-        boolean highResult = equalsDFS(referenceTree, thisNode.high, refNode.high);
-        if (!highResult)
-            return false;
-        
-        // Both children are isomorphic, so the parent is too!
-        visitedNodeLabels.put(thisNodeIndex, nextLabel);
-        refVisitedNodeLabels.put(refNodeIndex, nextLabel);
-        nextLabel++;
-        return true;
-        
-    }
-    
     /**
      * Obliterate an input variable.  Only use this if there are no nodes for
-     * this variable, i.e. if the function doesn't depend on it!
+     * this variable, i.e. if the function doesn't depend on it!  Costs one
+     * pass over the levels, not the nodes.
      */
     public void collapseInput(int var)
     {
         // FIXME Should *really* check to make sure there are no nodes for this input.  This has been a problem before.
-        this.numInputs--;
-        modifyNodeInputIndex(0, -1);
-        if (nodes.size() > 1) // In the case of an all-false-output function, the true node will not exist.
-            modifyNodeInputIndex(1, -1);
-        for (int i = 2; i < nodes.size(); i++)
+        materializeLevels();
+        for (int l = 0; l < numLevels; l++)
         {
-            if (nodes.get(i).inputIndex > var)
-                modifyNodeInputIndex(i, -1);
+            if (levelToInput[l] == DEAD_LEVEL)
+                continue;
+            if (inputOfLevel(l) == var)
+                levelToInput[l] = DEAD_LEVEL; // Any nodes left on it were unreachable
+            else if (inputOfLevel(l) > var)
+                levelToInput[l]--;
         }
+        this.numInputs--;
+        this.inputToLevel = null;
     }
     
     public Node getNode(int index)
@@ -233,7 +344,7 @@ public class BDDTree
     
     public int getNodeIndex(Node n)
     {
-        return nodesHash.get(n);
+        return nodesHash.get(stored(n));
     }
     
     public Node getRootNode()
@@ -246,6 +357,68 @@ public class BDDTree
         return nodes.size() - 1;
     }
     
+    /**
+     * Number of entries in the node table, including the terminals and any
+     * nodes left below the root by earlier operations.
+     */
+    public int getNumNodes()
+    {
+        return nodes.size();
+    }
+    
+    /**
+     * Number of non-terminal nodes labelled with each input variable.
+     */
+    public int[] getNodesPerLevel()
+    {
+        int[] counts = new int[numInputs];
+        for (Node n : nodes)
+        {
+            if (!n.isTerminal())
+                counts[inputOfLevel(n.inputIndex)]++;
+        }
+        return counts;
+    }
+    
+    /**
+     * Ratio of entries to buckets in the unique table.  HashMap doesn't expose
+     * its bucket array, so the bucket count is the one it would have grown to
+     * for this many entries at its default load factor.
+     */
+    public double getUniqueTableLoad()
+    {
+        return (double)nodesHash.size() / uniqueTableBuckets();
+    }
+    
+    /**
+     * Average number of entries compared when looking up a node that is in
+     * the unique table, i.e. the mean position of an entry within its bucket's
+     * chain.  Bucket indices are derived the same way HashMap derives them.
+     */
+    public double getMeanProbeLength()
+    {
+        if (nodesHash.isEmpty())
+            return 0.0;
+        int buckets = uniqueTableBuckets();
+        int[] chainLengths = new int[buckets];
+        long totalProbes = 0;
+        for (Node n : nodesHash.keySet())
+        {
+            int h = n.hashCode();
+            int bucket = (h ^ (h >>> 16)) & (buckets - 1);
+            totalProbes += ++chainLengths[bucket];
+        }
+        return (double)totalProbes / nodesHash.size();
+    }
+    
+    private int uniqueTableBuckets()
+    {
+        int buckets = 16;
+        while (nodesHash.size() > 0.75 * buckets)
+            buckets <<= 1;
+        return buckets;
+    }
+    
     public void setRootIndex(int r)
     {
         int oldRoot = this.getRootIndex();
@@ -267,6 +440,9 @@ public class BDDTree
     
     public int addNode(Node n)
     {
+        n = stored(n);
+        if (!n.isTerminal())
+            numLevels = Math.max(numLevels, n.inputIndex + 1);
         nodes.add(n);
         int index = nodes.size() - 1;
         nodesHash.put(n, index);
@@ -284,6 +460,48 @@ public class BDDTree
     
     public boolean contains(Node n)
     {
-        return nodesHash.containsKey(n);
+        return nodesHash.containsKey(stored(n));
+    }
+    
+    /**
+     * The nodes root reaches, terminals included, each once and children
+     * before parents (low before high).  This is the order to copy a diagram
+     * in.
+     */
+    int[] postOrder(int root)
+    {
+        return postOrder(root, null);
+    }
+    
+    /**
+     * As postOrder(root), but leaving out the nodes whose entry in done is
+     * non-negative, and not looking below them.  A caller filling in a copies
+     * array across several calls passes it here to skip what's been copied.
+     */
+    int[] postOrder(int root, int[] done)
+    {
+        boolean[] placed = new boolean[getNumNodes()];
+        int[] order = new int[getNumNodes()];
+        int count = 0;
+        IntStack work = new IntStack();
+        work.push(root);
+        while (!work.isEmpty())
+        {
+            int i = work.peek();
+            Node u = getNode(i);
+            if (placed[i] || (done != null && done[i] >= 0))
+                work.pop();
+            else if (!u.isTerminal() && !placed[u.low] && (done == null || done[u.low] < 0))
+                work.push(u.low);
+            else if (!u.isTerminal() && !placed[u.high] && (done == null || done[u.high] < 0))
+                work.push(u.high);
+            else
+            {
+                placed[i] = true;
+                order[count++] = i;
+                work.pop();
+            }
+        }
+        return Arrays.copyOf(order, count);
     }
 }
@@ -0,0 +1,290 @@
+package LightBDD;
+
+import java.util.ArrayList;
+
+/**
+ * A symbolic unsigned integer: a fixed-width vector of BDDs over some set of
+ * inputs, bit 0 being the least significant.  Arithmetic is modulo
+ * 2^width, and is built straight out of apply and ite on the bits, so a
+ * whole word-level operation costs a handful of applies per bit rather than
+ * one composition per gate.
+ *
+ * BitVectors are immutable.  The bits are held as a MultiBDD, whose output k
+ * is bit k; BDDs are copied on the way in and out, since they're mutable.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class BitVector extends Executable
+{
+    /**
+     * How variables() lays out the bits of several vectors over the inputs.
+     * Both put the most significant bits first.  Interleaving keeps the
+     * bits the same operation looks at next to each other, which is what
+     * makes adders and comparisons linear in the width; blocked layouts give
+     * each vector its own stretch of inputs, and can be exponential for them.
+     */
+    public enum Order { INTERLEAVED, BLOCKED };
+
+    private final MultiBDD bits;
+
+    /**
+     * The vector whose bit k is output k of bits.
+     */
+    public BitVector(MultiBDD bits)
+    {
+        assert(bits.getNumOutputs() > 0);
+        ArrayList<BDD> copies = new ArrayList<BDD>(bits.getNumOutputs());
+        for (BDD b : bits.bdds)
+            copies.add(new BDD(b));
+        this.bits = new MultiBDD(copies);
+    }
+
+    private BitVector(BDD[] bits)
+    {
+        ArrayList<BDD> list = new ArrayList<BDD>(bits.length);
+        for (BDD b : bits)
+            list.add(b);
+        this.bits = new MultiBDD(list);
+    }
+
+    /**
+     * numVectors free vectors of the given width, over numVectors * width
+     * inputs.  With INTERLEAVED, bit j of vector v is input
+     * (width - 1 - j) * numVectors + v, so two interleaved vectors have the
+     * layout of BDD.lessThan().  With BLOCKED, it's v * width + width - 1 - j.
+     */
+    public static BitVector[] variables(int numVectors, int width, Order order)
+    {
+        int numInputs = numVectors * width;
+        BitVector[] vectors = new BitVector[numVectors];
+        for (int v = 0; v < numVectors; v++)
+        {
+            int[] inputs = new int[width];
+            for (int j = 0; j < width; j++)
+                inputs[j] = (order == Order.INTERLEAVED ? (width - 1 - j) * numVectors + v : v * width + width - 1 - j);
+            vectors[v] = variable(numInputs, inputs);
+        }
+        return vectors;
+    }
+
+    /**
+     * The vector whose bit j is input inputs[j].
+     */
+    public static BitVector variable(int numInputs, int[] inputs)
+    {
+        BDD[] bits = new BDD[inputs.length];
+        for (int j = 0; j < inputs.length; j++)
+            bits[j] = BDD.variable(numInputs, inputs[j]);
+        return new BitVector(bits);
+    }
+
+    /**
+     * The low width bits of value, ignoring all numInputs inputs.
+     */
+    public static BitVector constant(int numInputs, int width, long value)
+    {
+        BDD[] bits = new BDD[width];
+        for (int j = 0; j < width; j++)
+            bits[j] = BDD.constant(numInputs, j < 64 && ((value >>> j) & 1) != 0);
+        return new BitVector(bits);
+    }
+
+    public int getWidth()
+    {
+        return bits.getNumOutputs();
+    }
+
+    /**
+     * A copy of bit j.
+     */
+    public BDD getBit(int j)
+    {
+        return new BDD(bit(j));
+    }
+
+    /* Bit j itself, for building new vectors.  Never handed out. */
+    private BDD bit(int j)
+    {
+        return bits.bdds.get(j);
+    }
+
+    /**
+     * A copy of the bits as a function with one output per bit, least
+     * significant first.
+     */
+    public MultiBDD toMultiBDD()
+    {
+        ArrayList<BDD> copies = new ArrayList<BDD>(getWidth());
+        for (BDD b : bits.bdds)
+            copies.add(new BDD(b));
+        return new MultiBDD(copies);
+    }
+
+    /**
+     * The value of the vector on one input string.  Only the low 64 bits.
+     */
+    public long getValue(boolean[] input)
+    {
+        long value = 0;
+        for (int j = Math.min(getWidth(), 64) - 1; j >= 0; j--)
+            value = (value << 1) | (bit(j).execute(input)[0] ? 1 : 0);
+        return value;
+    }
+
+    /**
+     * this + y, by ripple carry.
+     */
+    public BitVector add(BitVector y)
+    {
+        return add(y, false);
+    }
+
+    /**
+     * this - y, as this + ~y + 1.
+     */
+    public BitVector sub(BitVector y)
+    {
+        return add(y, true);
+    }
+
+    /**
+     * One full adder per bit.  Subtracting inverts y and carries one in.
+     */
+    private BitVector add(BitVector y, boolean subtract)
+    {
+        checkWidth(y);
+        int width = getWidth();
+        BDD[] sum = new BDD[width];
+        BDD carry = BDD.constant(getNumInputs(), subtract);
+        for (int j = 0; j < width; j++)
+        {
+            BDD x = bit(j);
+            BDD yj = (subtract ? new BDD(y.bit(j), true) : y.bit(j));
+            BDD half = new BDD(Operator.XOR, x, yj);
+            sum[j] = new BDD(Operator.XOR, half, carry);
+            if (j < width - 1)
+                carry = BDD.ite(half, carry, x);
+        }
+        return new BitVector(sum);
+    }
+
+    /**
+     * -this, modulo 2^width.
+     */
+    public BitVector negate()
+    {
+        return constant(getNumInputs(), getWidth(), 0).sub(this);
+    }
+
+    /**
+     * this * c, by shift-and-add over the set bits of c.
+     */
+    public BitVector multiply(long c)
+    {
+        BitVector product = constant(getNumInputs(), getWidth(), 0);
+        for (int k = 0; k < getWidth() && k < 64; k++)
+        {
+            if (((c >>> k) & 1) != 0)
+                product = product.add(shiftLeft(k));
+        }
+        return product;
+    }
+
+    /**
+     * Logical shift towards the most significant bit, filling with zeroes.
+     */
+    public BitVector shiftLeft(int k)
+    {
+        BDD[] shifted = new BDD[getWidth()];
+        for (int j = 0; j < shifted.length; j++)
+            shifted[j] = (j >= k ? bit(j - k) : BDD.constant(getNumInputs(), false));
+        return new BitVector(shifted);
+    }
+
+    /**
+     * Logical shift towards the least significant bit, filling with zeroes.
+     */
+    public BitVector shiftRight(int k)
+    {
+        BDD[] shifted = new BDD[getWidth()];
+        for (int j = 0; j < shifted.length; j++)
+            shifted[j] = (j + k < shifted.length ? bit(j + k) : BDD.constant(getNumInputs(), false));
+        return new BitVector(shifted);
+    }
+
+    /**
+     * Unsigned this < y.  Goes from the least significant bit up: where
+     * the bits differ, y's bit decides, and where they're equal the bits
+     * below do.
+     */
+    public BDD lessThan(BitVector y)
+    {
+        return compare(y, false);
+    }
+
+    /**
+     * Unsigned this <= y.
+     */
+    public BDD lessOrEqual(BitVector y)
+    {
+        return compare(y, true);
+    }
+
+    private BDD compare(BitVector y, boolean orEqual)
+    {
+        checkWidth(y);
+        BDD result = BDD.constant(getNumInputs(), orEqual);
+        for (int j = 0; j < getWidth(); j++)
+            result = BDD.ite(new BDD(Operator.XOR, bit(j), y.bit(j)), y.bit(j), result);
+        return result;
+    }
+
+    /**
+     * this == y.
+     */
+    public BDD equal(BitVector y)
+    {
+        checkWidth(y);
+        ArrayList<BDD> same = new ArrayList<BDD>(getWidth());
+        for (int j = 0; j < getWidth(); j++)
+            same.add(new BDD(Operator.XNOR, bit(j), y.bit(j)));
+        return BDD.andAll(same);
+    }
+
+    /**
+     * The multiplexer: whenTrue where condition holds, whenFalse elsewhere.
+     */
+    public static BitVector ite(BDD condition, BitVector whenTrue, BitVector whenFalse)
+    {
+        whenTrue.checkWidth(whenFalse);
+        BDD[] bits = new BDD[whenTrue.getWidth()];
+        for (int j = 0; j < bits.length; j++)
+            bits[j] = BDD.ite(condition, whenTrue.bit(j), whenFalse.bit(j));
+        return new BitVector(bits);
+    }
+
+    private void checkWidth(BitVector y)
+    {
+        if (y.getWidth() != getWidth())
+            throw new IllegalArgumentException("Vectors of width " + getWidth() + " and " + y.getWidth() + " don't match");
+        assert(y.getNumInputs() == getNumInputs());
+    }
+
+    @Override
+    public boolean[] execute(boolean[] input)
+    {
+        return bits.execute(input);
+    }
+
+    @Override
+    public int getNumInputs()
+    {
+        return bits.getNumInputs();
+    }
+
+    @Override
+    public int getNumOutputs()
+    {
+        return bits.getNumOutputs();
+    }
+}
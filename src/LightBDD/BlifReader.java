@@ -0,0 +1,163 @@
+package LightBDD;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reads a combinational circuit in Berkeley Logic Interchange Format into a
+ * MultiBDD, one ".names" gate at a time.  The MultiBDD's inputs are the
+ * model's ".inputs" and its outputs are the model's ".outputs", in the order
+ * they're declared.
+ * 
+ * Only the first model is read, and only .model, .inputs, .outputs, .names
+ * and .end are supported; latches and subcircuits are rejected.
+ * 
+ * See "Berkeley Logic Interchange Format (BLIF)," University of California,
+ * Berkeley, 1992.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class BlifReader
+{
+    private final BufferedReader in;
+    private final Netlist netlist = new Netlist();
+    private final HashMap<String, Integer> signals = new HashMap<String, Integer>();
+    private final ArrayList<String> outputNames = new ArrayList<String>();
+    private int lineNumber = 0;
+    
+    private BlifReader(Reader in)
+    {
+        this.in = new BufferedReader(in);
+    }
+    
+    public static MultiBDD read(Reader in) throws IOException, ParseException
+    {
+        return new BlifReader(in).read();
+    }
+    
+    private MultiBDD read() throws IOException, ParseException
+    {
+        String[] tokens = nextLine();
+        while (tokens != null)
+        {
+            String command = tokens[0];
+            if (command.equals(".model"))
+                tokens = nextLine();
+            else if (command.equals(".inputs"))
+            {
+                for (int i = 1; i < tokens.length; i++)
+                {
+                    int signal = signal(tokens[i]);
+                    if (netlist.isDriven(signal))
+                        throw error("'" + tokens[i] + "' is defined twice");
+                    netlist.addInput(signal);
+                }
+                tokens = nextLine();
+            }
+            else if (command.equals(".outputs"))
+            {
+                for (int i = 1; i < tokens.length; i++)
+                    outputNames.add(tokens[i]);
+                tokens = nextLine();
+            }
+            else if (command.equals(".names"))
+                tokens = readNames(tokens);
+            else if (command.equals(".end"))
+                break;
+            else if (command.startsWith("."))
+                throw error("Unsupported construct " + command);
+            else
+                throw error("Cover row outside of a .names block");
+        }
+        
+        for (String name : outputNames)
+            netlist.addOutput(signal(name), false);
+        return netlist.build();
+    }
+    
+    /**
+     * Read a .names header and the cover rows that follow it.
+     * 
+     * @return The first line after the cover.
+     */
+    private String[] readNames(String[] header) throws IOException, ParseException
+    {
+        if (header.length < 2)
+            throw error(".names needs an output");
+        int numFanins = header.length - 2;
+        int[] fanins = new int[numFanins];
+        for (int i = 0; i < numFanins; i++)
+            fanins[i] = signal(header[i + 1]);
+        int output = signal(header[header.length - 1]);
+        if (netlist.isDriven(output))
+            throw error("'" + header[header.length - 1] + "' is defined twice");
+        
+        ArrayList<String> cubes = new ArrayList<String>();
+        Boolean onSet = null;
+        String[] tokens = nextLine();
+        while (tokens != null && !tokens[0].startsWith("."))
+        {
+            String cube = (numFanins == 0 ? "" : tokens[0]);
+            String value = tokens[tokens.length - 1];
+            if (tokens.length != (numFanins == 0 ? 1 : 2) || cube.length() != numFanins || !cube.matches("[01-]*") || !value.matches("[01]"))
+                throw error("Malformed cover row");
+            boolean rowOnSet = value.equals("1");
+            if (onSet != null && onSet != rowOnSet)
+                throw error("Cover mixes on-set and off-set rows");
+            onSet = rowOnSet;
+            cubes.add(cube);
+            tokens = nextLine();
+        }
+        // A .names with no rows is the constant 0.
+        netlist.setDriver(output, new Netlist.CoverGate(fanins, cubes, (onSet == null ? true : onSet)));
+        return tokens;
+    }
+    
+    private int signal(String name)
+    {
+        Integer signal = signals.get(name);
+        if (signal == null)
+        {
+            signal = netlist.addSignal(name);
+            signals.put(name, signal);
+        }
+        return signal;
+    }
+    
+    /**
+     * Next non-empty logical line split into tokens, with comments stripped
+     * and '\' continuations joined, or null at end of input.
+     */
+    private String[] nextLine() throws IOException
+    {
+        String logical = "";
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (line.endsWith("\\"))
+            {
+                logical += line.substring(0, line.length() - 1) + " ";
+                continue;
+            }
+            logical += line;
+            if (!logical.trim().isEmpty())
+                return logical.trim().split("\\s+");
+            logical = "";
+        }
+        return (logical.trim().isEmpty() ? null : logical.trim().split("\\s+"));
+    }
+    
+    private ParseException error(String message)
+    {
+        return new ParseException("Line " + lineNumber + ": " + message, lineNumber);
+    }
+}
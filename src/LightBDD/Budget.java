@@ -0,0 +1,77 @@
+package LightBDD;
+
+/**
+ * The running tally for one operation started under a BDDLimits.  Kernels
+ * report to it from mk(), and it throws Budget.Exceeded from deep inside
+ * them when a limit is hit.  The public entry points turn that into a
+ * BDDLimitExceededException.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+final class Budget
+{
+    /* Reading the clock on every step would dominate small operations. */
+    private static final int STEPS_PER_CLOCK_CHECK = 1024;
+    
+    private final long maxNodes;
+    private final long deadline;
+    private long nodesCreated;
+    private int stepsUntilClockCheck = STEPS_PER_CLOCK_CHECK;
+    
+    Budget(long maxNodes, long deadline)
+    {
+        this.maxNodes = maxNodes;
+        this.deadline = deadline;
+    }
+    
+    /**
+     * Called once per mk().
+     */
+    void step()
+    {
+        if (--stepsUntilClockCheck == 0)
+        {
+            stepsUntilClockCheck = STEPS_PER_CLOCK_CHECK;
+            if (deadline != 0 && System.nanoTime() - deadline > 0)
+                throw new Exceeded(BDDLimitExceededException.Reason.DEADLINE, nodesCreated);
+        }
+    }
+    
+    /**
+     * Called whenever a node is added to a node table.
+     */
+    void nodeCreated()
+    {
+        if (++nodesCreated > maxNodes)
+            throw new Exceeded(BDDLimitExceededException.Reason.NODE_BUDGET, nodesCreated);
+    }
+    
+    long getNodesCreated()
+    {
+        return nodesCreated;
+    }
+    
+    /**
+     * Unchecked carrier so that the kernels don't need throws clauses.  Never
+     * escapes the package.
+     */
+    static final class Exceeded extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+        
+        final BDDLimitExceededException.Reason reason;
+        final long nodesCreated;
+        
+        Exceeded(BDDLimitExceededException.Reason reason, long nodesCreated)
+        {
+            super(null, null, false, false);
+            this.reason = reason;
+            this.nodesCreated = nodesCreated;
+        }
+        
+        BDDLimitExceededException toChecked(BDDLimits limits)
+        {
+            return new BDDLimitExceededException(reason, limits, nodesCreated);
+        }
+    }
+}
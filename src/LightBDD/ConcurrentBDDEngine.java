@@ -0,0 +1,760 @@
+package LightBDD;
+
+import java.lang.ref.Cleaner;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A node store that many threads can build BDDs in at once.
+ * 
+ * Each BDD object owns a private BDDTree, so BDDs can't share nodes, and a
+ * BDDTree's unique table is an unsynchronized HashMap.  An engine instead
+ * keeps every node of every function in one NodeStore (on the heap, or in a
+ * memory-mapped file), with its unique table alongside, and functions are
+ * plain int handles into it.  The design follows Sylvan (van Dijk and
+ * van de Pol, "Sylvan: Multi-core Decision Diagrams," TACAS 2015):
+ * 
+ * - The unique table is open-addressed, and new nodes are published by a
+ *   compare-and-set on an empty bucket.  Two threads creating the same node
+ *   race for the bucket, and the loser adopts the winner's node.  Every
+ *   function therefore has exactly one handle, no matter which thread built
+ *   it, and handles can be compared with ==.
+ * - The computed cache is lossy and direct-mapped.  Each entry is guarded by
+ *   a sequence number, so a reader never sees half of a concurrent write.
+ * - Kernels keep their work stacks in local int arrays and share nothing
+ *   else, so apply, restrict and compose can run on any number of threads.
+ * 
+ * Handles 0 and 1 are the constants false and true.  All functions in an
+ * engine have the same inputs.
+ * 
+ * Nodes are reclaimed by gc(), which keeps only what is reachable from a
+ * live Handle (see protect()).  Operations hold a read lock and gc() takes
+ * the write lock, so it waits for running operations to finish.  Any int
+ * handle that isn't protected is invalid once gc() returns, so call it when
+ * no other thread is between getting a result and protecting it.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class ConcurrentBDDEngine
+{
+    private static final int TERMINAL_VAR = Integer.MAX_VALUE;
+    private static final int FREE_VAR = -1; // A free slot; its low child is the next free slot
+    private static final int RESTRICT_OP = 16; // Apply ops are their 4-bit truth tables
+    
+    private final int numInputs;
+    
+    /* Node store.  Written once, before the node is published in buckets. */
+    private final NodeStore store;
+    private final AtomicInteger nextNode = new AtomicInteger(2);
+    /* Slots freed by the last non-compacting gc(), chained through the store
+     * in order.  Nothing is pushed back until the next gc(), so popping with
+     * a compare-and-set on the head can't suffer ABA. */
+    private final AtomicInteger freeHead = new AtomicInteger(-1);
+    private final AtomicInteger numFree = new AtomicInteger();
+    
+    /* Root table: the node each Handle refers to, or -1 for a free slot. */
+    private static final Cleaner cleaner = Cleaner.create();
+    private final Object rootLock = new Object();
+    private int[] roots = new int[16];
+    private final IntStack freeRoots = new IntStack();
+    private int numRoots = 0;
+    private int numHandles = 0;
+    private final ReentrantReadWriteLock gcLock = new ReentrantReadWriteLock();
+    
+    /* Unique table: node index, or 0 for an empty bucket.  At least two
+     * buckets per slot, which gc() relies on for scratch space. */
+    private final IntTable buckets;
+    private final long bucketMask;
+    
+    /* Computed cache: sequence number (odd while being written), key, and
+     * (op << 32 | result) for each entry. */
+    private final AtomicLongArray cacheSeq;
+    private final AtomicLongArray cacheKey;
+    private final AtomicLongArray cacheValue;
+    private final int cacheMask;
+    
+    /**
+     * @param numInputs Number of inputs of the functions in this engine.
+     * @param nodeCapacity Most nodes the engine can hold.
+     * @param cacheSize Number of computed-cache entries; rounded up to a
+     *          power of two.
+     */
+    public ConcurrentBDDEngine(int numInputs, int nodeCapacity, int cacheSize)
+    {
+        this(numInputs, new HeapNodeStore(nodeCapacity), cacheSize);
+    }
+    
+    /**
+     * An engine that keeps its nodes in the given store, e.g. a
+     * MappedNodeStore for more nodes than fit on the heap.  The unique table
+     * goes wherever the store's newTable() puts it, and gc() needs no other
+     * space in proportion to the store, so only the computed cache (of a
+     * fixed size) and the Handles stay on the heap.
+     * 
+     * @param numInputs Number of inputs of the functions in this engine.
+     * @param store Where to keep the nodes; its contents are overwritten.
+     * @param cacheSize Number of computed-cache entries; rounded up to a
+     *          power of two.
+     */
+    public ConcurrentBDDEngine(int numInputs, NodeStore store, int cacheSize)
+    {
+        this.numInputs = numInputs;
+        this.store = store;
+        int nodeCapacity = store.capacity();
+        for (int i = 0; i < 2; i++)
+            store.set(i, TERMINAL_VAR, -1, -1);
+        
+        // Load stays under 1/2
+        long numBuckets = Long.highestOneBit(Math.max(nodeCapacity, 8) - 1) << 2;
+        this.buckets = store.newTable(numBuckets);
+        this.bucketMask = numBuckets - 1;
+        
+        int numEntries = Integer.highestOneBit(Math.max(cacheSize, 2) - 1) << 1;
+        this.cacheSeq = new AtomicLongArray(numEntries);
+        this.cacheKey = new AtomicLongArray(numEntries);
+        this.cacheValue = new AtomicLongArray(numEntries);
+        this.cacheMask = numEntries - 1;
+    }
+    
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+    
+    /**
+     * Number of node slots in use, including the terminals and any slots
+     * lost to insertion races since the last gc().
+     */
+    public int getNumNodes()
+    {
+        return highWater() - numFree.get();
+    }
+    
+    private int highWater()
+    {
+        return Math.min(nextNode.get(), store.capacity());
+    }
+    
+    public int getNodeCapacity()
+    {
+        return store.capacity();
+    }
+    
+    public int constant(boolean value)
+    {
+        return (value ? 1 : 0);
+    }
+    
+    /**
+     * The function that returns its inputth input.
+     */
+    public int variable(int input)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            assert(input < numInputs);
+            return mk(input, 0, 1);
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    public int not(int f)
+    {
+        return apply(Operator.XOR, f, 1);
+    }
+    
+    /**
+     * Apply a boolean operator to two functions.  Safe to call concurrently.
+     */
+    public int apply(BooleanOperator op, int f, int g)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            int opCode = Operator.truthTable(op);
+            boolean commutative = Operator.isCommutative(opCode);
+            IntStack work = new IntStack();
+            IntStack results = new IntStack();
+            work.push(f, g, 0);
+            while (!work.isEmpty())
+            {
+                boolean expanded = (work.pop() != 0);
+                int y = work.pop();
+                int x = work.pop();
+                if (commutative && x > y)
+                {
+                    int t = x;
+                    x = y;
+                    y = t;
+                }
+                int v = Math.min(var(x), var(y));
+                if (expanded)
+                {
+                    int h = results.pop();
+                    int l = results.pop();
+                    int output = mk(v, l, h);
+                    cachePut(opCode, x, y, output);
+                    results.push(output);
+                    continue;
+                }
+                if (x <= 1 && y <= 1)
+                {
+                    results.push((opCode >> (2 * x + y)) & 1);
+                    continue;
+                }
+                int rest = -1;
+                if (x <= 1)
+                    rest = Operator.fixFirst(opCode, x == 1);
+                else if (y <= 1)
+                    rest = Operator.fixSecond(opCode, y == 1);
+                else if (x == y)
+                    rest = Operator.diagonal(opCode);
+                if (rest == 0 || rest == 3)
+                {
+                    results.push(rest & 1);
+                    continue;
+                }
+                if (rest == 2)
+                { // Nodes are shared, so the other operand is the result as is
+                    results.push(x <= 1 ? y : x);
+                    continue;
+                }
+                int cached = cacheGet(opCode, x, y);
+                if (cached >= 0)
+                {
+                    results.push(cached);
+                    continue;
+                }
+                work.push(x, y, 1);
+                work.push((var(x) == v ? high(x) : x), (var(y) == v ? high(y) : y), 0);
+                work.push((var(x) == v ? low(x) : x), (var(y) == v ? low(y) : y), 0);
+            }
+            return results.pop();
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Fix one input of f.  Safe to call concurrently.
+     */
+    public int restrict(int f, int input, boolean value)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            int opCode = RESTRICT_OP + (input << 1) + (value ? 1 : 0);
+            IntStack work = new IntStack();
+            IntStack results = new IntStack();
+            work.push(f);
+            work.push(0);
+            while (!work.isEmpty())
+            {
+                boolean expanded = (work.pop() != 0);
+                int u = work.pop();
+                if (expanded)
+                {
+                    int h = results.pop();
+                    int l = results.pop();
+                    int output = mk(var(u), l, h);
+                    cachePut(opCode, u, 0, output);
+                    results.push(output);
+                    continue;
+                }
+                if (var(u) > input)
+                {
+                    results.push(u);
+                    continue;
+                }
+                if (var(u) == input)
+                { // The child is below input, so it's its own restriction
+                    results.push(value ? high(u) : low(u));
+                    continue;
+                }
+                int cached = cacheGet(opCode, u, 0);
+                if (cached >= 0)
+                {
+                    results.push(cached);
+                    continue;
+                }
+                work.push(u);
+                work.push(1);
+                work.push(high(u));
+                work.push(0);
+                work.push(low(u));
+                work.push(0);
+            }
+            return results.pop();
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * If-then-else: g where f is true, h where f is false.
+     */
+    public int ite(int f, int g, int h)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            return apply(Operator.OR, apply(Operator.AND, f, g), apply(Operator.DIFF, h, f));
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Substitute g for input in f.  Since the engine's functions share their
+     * inputs, no inputs are added or removed.
+     */
+    public int compose(int f, int input, int g)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            return ite(g, restrict(f, input, true), restrict(f, input, false));
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    public boolean evaluate(int f, boolean[] input)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            assert(input.length == numInputs);
+            while (f > 1)
+                f = (input[var(f)] ? high(f) : low(f));
+            return (f == 1);
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Copy a BDD into this engine.
+     * 
+     * @return The handle of the copy.
+     */
+    public int importBDD(BDD x)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            BDDTree src = x.getTree();
+            assert(src.getNumInputs() == numInputs || src.getRootNode().isTerminal());
+            int[] copies = new int[src.getNumNodes()];
+            for (int i : src.postOrder(src.getRootIndex()))
+            {
+                Node n = src.getNode(i);
+                if (n.isTerminal())
+                    copies[i] = (n.terminalValue ? 1 : 0);
+                else
+                    copies[i] = mk(src.getInputIndex(i), copies[n.low], copies[n.high]);
+            }
+            return copies[src.getRootIndex()];
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Copy a function out of this engine into a stand-alone BDD.
+     */
+    public BDD exportBDD(int f)
+    {
+        gcLock.readLock().lock();
+        try
+        {
+            BDDTree tree = new BDDTree(numInputs);
+            if (f <= 1)
+            {
+                tree.setRootIndex(f);
+                return new BDD(tree);
+            }
+            LongIntMap copies = new LongIntMap();
+            IntStack work = new IntStack();
+            work.push(f);
+            while (!work.isEmpty())
+            {
+                int u = work.peek();
+                int l = (low(u) <= 1 ? low(u) : copies.get(low(u)));
+                int h = (high(u) <= 1 ? high(u) : copies.get(high(u)));
+                if (copies.get(u) >= 0)
+                    work.pop();
+                else if (l < 0)
+                    work.push(low(u));
+                else if (h < 0)
+                    work.push(high(u));
+                else
+                {
+                    copies.put(u, tree.addNode(new Node(l, h, var(u))));
+                    work.pop();
+                }
+            }
+            return new BDD(tree);
+        }
+        finally
+        {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    int var(int u)
+    {
+        return store.var(u);
+    }
+    
+    int low(int u)
+    {
+        return store.low(u);
+    }
+    
+    int high(int u)
+    {
+        return store.high(u);
+    }
+    
+    /**
+     * Find or create the node (v, l, h).  Lock-free; see the class comment.
+     */
+    int mk(int v, int l, int h)
+    {
+        if (l == h)
+            return l;
+        long i = hash(v, l, h) & bucketMask;
+        int slot = -1;
+        for (long probes = 0; probes <= bucketMask; probes++)
+        {
+            int b = buckets.get(i);
+            if (b == 0)
+            {
+                if (slot < 0)
+                {
+                    slot = allocate();
+                    store.set(slot, v, l, h);
+                }
+                if (buckets.compareAndSet(i, 0, slot))
+                    return slot;
+                b = buckets.get(i); // Lost the race; see whether the winner is our node
+            }
+            if (store.var(b) == v && store.low(b) == l && store.high(b) == h)
+                return b; // If we'd allocated a slot, it's wasted
+            i = (i + 1) & bucketMask;
+        }
+        throw new IllegalStateException("Node store is full (" + store.capacity() + " nodes); protect what you need and call gc()");
+    }
+    
+    private int allocate()
+    {
+        for (int head = freeHead.get(); head >= 0; head = freeHead.get())
+        {
+            if (freeHead.compareAndSet(head, store.low(head)))
+            {
+                numFree.decrementAndGet();
+                return head;
+            }
+        }
+        int slot = nextNode.getAndIncrement();
+        if (slot >= store.capacity())
+            throw new IllegalStateException("Node store is full (" + store.capacity() + " nodes); protect what you need and call gc()");
+        return slot;
+    }
+    
+    /**
+     * A reference to a function that survives gc().  Every open Handle counts
+     * as one reference to its node.  Closing it drops the reference, and so
+     * does the garbage collector once the Handle is unreachable.
+     */
+    public static final class Handle implements AutoCloseable
+    {
+        private final ConcurrentBDDEngine engine;
+        private final int slot;
+        private final Cleaner.Cleanable cleanable;
+        
+        private Handle(ConcurrentBDDEngine engine, int slot)
+        {
+            this.engine = engine;
+            this.slot = slot;
+            this.cleanable = cleaner.register(this, new Release(engine, slot));
+        }
+        
+        /**
+         * The function's current int handle.  gc() may change it when it
+         * compacts, so don't hold on to it across a gc().
+         */
+        public int get()
+        {
+            synchronized (engine.rootLock)
+            {
+                return engine.roots[slot];
+            }
+        }
+        
+        @Override
+        public void close()
+        {
+            cleanable.clean();
+        }
+    }
+    
+    /* Mustn't refer to its Handle, or the Handle would never become unreachable. */
+    private static final class Release implements Runnable
+    {
+        private final ConcurrentBDDEngine engine;
+        private final int slot;
+        
+        Release(ConcurrentBDDEngine engine, int slot)
+        {
+            this.engine = engine;
+            this.slot = slot;
+        }
+        
+        @Override
+        public void run()
+        {
+            synchronized (engine.rootLock)
+            {
+                engine.roots[slot] = -1;
+                engine.freeRoots.push(slot);
+                engine.numHandles--;
+            }
+        }
+    }
+    
+    /**
+     * Keep f alive across gc() for as long as the returned Handle is open
+     * and reachable.
+     */
+    public Handle protect(int f)
+    {
+        int slot;
+        synchronized (rootLock)
+        {
+            if (!freeRoots.isEmpty())
+                slot = freeRoots.pop();
+            else
+            {
+                if (numRoots == roots.length)
+                    roots = Arrays.copyOf(roots, 2 * roots.length);
+                slot = numRoots++;
+            }
+            roots[slot] = f;
+            numHandles++;
+        }
+        return new Handle(this, slot);
+    }
+    
+    /**
+     * Number of Handles not yet closed or collected.
+     */
+    public int getNumHandles()
+    {
+        synchronized (rootLock)
+        {
+            return numHandles;
+        }
+    }
+    
+    /**
+     * Free every node that isn't reachable from an open Handle, without
+     * moving the rest.  Freed slots are reused by later operations.
+     * 
+     * @return The number of nodes freed.
+     */
+    public int gc()
+    {
+        return gc(false);
+    }
+    
+    /**
+     * Free every node that isn't reachable from an open Handle.
+     * 
+     * @param compact If true, move the surviving nodes to the bottom of the
+     *          store and renumber them, rather than keeping a free list.  They
+     *          are laid out level by level, top input first, so the walks
+     *          apply makes go mostly forward through the store.  Open
+     *          Handles follow their nodes.
+     * @return The number of nodes freed.
+     */
+    public int gc(boolean compact)
+    {
+        gcLock.writeLock().lock();
+        try
+        {
+            synchronized (rootLock)
+            {
+                int n = highWater();
+                int before = getNumNodes();
+                
+                /* Every cached result may name a dead node, and every bucket is
+                 * rebuilt below.  Until then the unique table is scratch space:
+                 * bucket u is nonzero if node u is live, and, when compacting,
+                 * bucket n + u is its new index.  It has at least 2n buckets. */
+                for (int i = 0; i <= cacheMask; i++)
+                    cacheSeq.set(i, 0);
+                buckets.clear();
+                buckets.set(0, 1);
+                buckets.set(1, 1);
+                IntStack work = new IntStack();
+                for (int i = 0; i < numRoots; i++)
+                {
+                    if (roots[i] >= 0)
+                        work.push(roots[i]);
+                }
+                while (!work.isEmpty())
+                {
+                    int u = work.pop();
+                    if (buckets.get(u) != 0)
+                        continue;
+                    buckets.set(u, 1);
+                    work.push(store.low(u));
+                    work.push(store.high(u));
+                }
+                
+                if (compact)
+                {
+                    // Counting sort of the survivors by level
+                    int[] levelStart = new int[numInputs + 1];
+                    for (int u = 2; u < n; u++)
+                    {
+                        if (buckets.get(u) != 0)
+                            levelStart[store.var(u) + 1]++;
+                    }
+                    levelStart[0] = 2;
+                    for (int v = 1; v <= numInputs; v++)
+                        levelStart[v] += levelStart[v - 1];
+                    int next = levelStart[numInputs];
+                    buckets.set(n + 1, 1);
+                    for (int u = 2; u < n; u++)
+                    {
+                        if (buckets.get(u) != 0)
+                            buckets.set(n + u, levelStart[store.var(u)]++);
+                    }
+                    /* Move each survivor to its new slot.  If a survivor that
+                     * hasn't moved yet is in the way, carry it along to its own
+                     * new slot next; bucket u stays marked until u has moved. */
+                    for (int u = 2; u < n; u++)
+                    {
+                        if (buckets.get(u) == 0)
+                            continue;
+                        int v = store.var(u);
+                        int l = store.low(u);
+                        int h = store.high(u);
+                        buckets.set(u, 0);
+                        int to = buckets.get(n + u);
+                        while (to >= 2 && buckets.get(to) != 0)
+                        {
+                            int nv = store.var(to);
+                            int nl = store.low(to);
+                            int nh = store.high(to);
+                            buckets.set(to, 0);
+                            store.set(to, v, buckets.get(n + l), buckets.get(n + h));
+                            v = nv;
+                            l = nl;
+                            h = nh;
+                            to = buckets.get(n + to);
+                        }
+                        store.set(to, v, buckets.get(n + l), buckets.get(n + h));
+                    }
+                    for (int i = 0; i < numRoots; i++)
+                    {
+                        if (roots[i] >= 0)
+                            roots[i] = buckets.get(n + roots[i]);
+                    }
+                    freeHead.set(-1);
+                    numFree.set(0);
+                    n = next;
+                }
+                else
+                {
+                    int head = -1;
+                    int count = 0;
+                    for (int u = n - 1; u >= 2; u--)
+                    {
+                        if (buckets.get(u) == 0)
+                        {
+                            store.set(u, FREE_VAR, head, -1);
+                            head = u;
+                            count++;
+                        }
+                    }
+                    freeHead.set(head);
+                    numFree.set(count);
+                }
+                nextNode.set(n);
+                
+                buckets.clear();
+                for (int u = 2; u < n; u++)
+                {
+                    int v = store.var(u);
+                    if (v == FREE_VAR)
+                        continue;
+                    long i = hash(v, store.low(u), store.high(u)) & bucketMask;
+                    while (buckets.get(i) != 0)
+                        i = (i + 1) & bucketMask;
+                    buckets.set(i, u);
+                }
+                return before - getNumNodes();
+            }
+        }
+        finally
+        {
+            gcLock.writeLock().unlock();
+        }
+    }
+    
+    private static long hash(int v, int l, int h)
+    {
+        long x = ((long)v * 0x9E3779B97F4A7C15L) ^ ((long)l << 32 | (h & 0xFFFFFFFFL));
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return x;
+    }
+    
+    private int cacheGet(int op, int x, int y)
+    {
+        long key = LongIntMap.pack(x, y);
+        int i = (int)(hash(op, x, y) & cacheMask);
+        long seq = cacheSeq.get(i);
+        if ((seq & 1) != 0)
+            return -1;
+        long k = cacheKey.get(i);
+        long value = cacheValue.get(i);
+        if (cacheSeq.get(i) != seq || k != key || (int)(value >>> 32) != op || seq == 0)
+            return -1;
+        return (int)value;
+    }
+    
+    private void cachePut(int op, int x, int y, int result)
+    {
+        int i = (int)(hash(op, x, y) & cacheMask);
+        long seq = cacheSeq.get(i);
+        if ((seq & 1) != 0 || !cacheSeq.compareAndSet(i, seq, seq + 1))
+            return; // Someone else is writing this entry; it's only a cache
+        cacheKey.set(i, LongIntMap.pack(x, y));
+        cacheValue.set(i, ((long)op << 32) | result);
+        cacheSeq.set(i, seq + 2);
+    }
+}
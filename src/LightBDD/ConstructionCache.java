@@ -0,0 +1,411 @@
+package LightBDD;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * An opt-in, on-disk cache of the diagrams built from BooleanFunctions, so
+ * that a function only has its 2^n inputs enumerated once per version rather
+ * than once per process.
+ *
+ * An entry is keyed by a caller-supplied version string (bump it, or use a
+ * hash of the function's code, whenever the function changes) together with
+ * the function's name and its numbers of inputs and outputs.  Entries are
+ * files in one directory, so any number of processes can share it: each
+ * entry is written to a temporary file and renamed into place.  When the
+ * directory grows past its size limit, the least recently used entries are
+ * deleted, recency being the file's modification time, which a hit updates.
+ * Temporary files left by a process that died mid-store go at the same
+ * time, once they're ten minutes old.
+ *
+ * Each output is stored as its reachable nodes in post-order, each node
+ * being its input and the distances back to its children, as LEB128
+ * varints.  Children always come shortly before their parents, so most
+ * nodes take three or four bytes.
+ *
+ * A cache that can't be read or written is just a miss: the function is
+ * built as if there were no cache.  Not thread-safe; give each thread its
+ * own instance on the same directory.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public class ConstructionCache
+{
+    private static final int MAGIC = 0x4c424443; // "LBDC"
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".bdd";
+    private static final String TEMP_PREFIX = "entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /* A temporary file this old was left by a process that died mid-store. */
+    private static final long STALE_TEMP_MILLIS = 10 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxBytes;
+    private long lastStamp;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param directory Where the entries live.  Created if need be.
+     * @param maxBytes Size the entries are evicted down to after each store.
+     */
+    public ConstructionCache(Path directory, long maxBytes) throws IOException
+    {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes must be positive, but was " + maxBytes);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * The diagrams of all of f's outputs, loaded from the cache if this
+     * version of f is in it, and otherwise built and stored.
+     */
+    public MultiBDD get(BooleanFunction f, String version)
+    {
+        String key = key(f, version);
+        Path file = directory.resolve(fileName(key));
+        MultiBDD cached = load(file, key);
+        if (cached != null && cached.getNumInputs() == f.getNumInputs() && cached.getNumOutputs() == f.getNumOutputs())
+        {
+            hits++;
+            touch(file);
+            return cached;
+        }
+        misses++;
+        MultiBDD built = new MultiBDD(f);
+        store(file, key, built);
+        return built;
+    }
+
+    /**
+     * Like get(), for a function with one output.
+     */
+    public BDD getBDD(BooleanFunction f, String version)
+    {
+        assert(f.getNumOutputs() == 1);
+        return get(f, version).bdds.get(0);
+    }
+
+    /**
+     * Number of get() calls this instance answered from disk.
+     */
+    public int getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Number of get() calls this instance had to build.
+     */
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Total size of the entries on disk, in bytes.
+     */
+    public long getSize() throws IOException
+    {
+        long size = 0;
+        for (Path file : entries())
+            size += Files.size(file);
+        return size;
+    }
+
+    /**
+     * Delete every entry.
+     */
+    public void clear() throws IOException
+    {
+        for (Path file : entries())
+            Files.deleteIfExists(file);
+    }
+
+    private static String key(BooleanFunction f, String version)
+    {
+        return version + "\0" + f.getName() + "\0" + f.getNumInputs() + "\0" + f.getNumOutputs();
+    }
+
+    /* The key's SHA-256, which is safe in any file system.  The key itself is
+     * stored in the file, so a collision is only a miss. */
+    private static String fileName(String key)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest)
+                name.append(String.format("%02x", b));
+            return name.append(SUFFIX).toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        { // Every JVM is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MultiBDD load(Path file, String key)
+    {
+        if (!Files.isRegularFile(file))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(key))
+                return null;
+            return read(in);
+        }
+        catch (IOException | RuntimeException e)
+        { // Truncated or corrupt, e.g. by a crash: drop it and rebuild
+            try
+            {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException e2) { }
+            return null;
+        }
+    }
+
+    private void store(Path file, String key, MultiBDD f)
+    {
+        Path temp = null;
+        try
+        {
+            temp = Files.createTempFile(directory, TEMP_PREFIX, TEMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(key);
+                write(f, out);
+            }
+            if (Files.size(temp) > maxBytes)
+            {
+                Files.delete(temp);
+                return;
+            }
+            try
+            {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            touch(file);
+            evict();
+        }
+        catch (IOException e)
+        { // Not cached this time
+            try
+            {
+                if (temp != null)
+                    Files.deleteIfExists(temp);
+            }
+            catch (IOException e2) { }
+        }
+    }
+
+    /* Mark the entry as just used.  Stamps from one instance are strictly
+     * increasing, so its own entries are ordered even within a millisecond. */
+    private void touch(Path file)
+    {
+        lastStamp = Math.max(System.currentTimeMillis(), lastStamp + 1);
+        try
+        {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(lastStamp));
+        }
+        catch (IOException e) { }
+    }
+
+    /* Delete stale temporary files, then least recently used entries until
+     * the rest fit. */
+    private void evict() throws IOException
+    {
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, TEMP_PREFIX + "*" + TEMP_SUFFIX))
+        {
+            for (Path temp : stream)
+            {
+                try
+                {
+                    if (Files.getLastModifiedTime(temp).toMillis() < staleBefore)
+                        Files.deleteIfExists(temp);
+                }
+                catch (IOException e)
+                { // Moved into place or deleted by another process meanwhile
+                }
+            }
+        }
+        ArrayList<Path> files = entries();
+        final long[] stamps = new long[files.size()];
+        long[] sizes = new long[files.size()];
+        Integer[] order = new Integer[files.size()];
+        long total = 0;
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+            try
+            {
+                stamps[i] = Files.getLastModifiedTime(files.get(i)).toMillis();
+                sizes[i] = Files.size(files.get(i));
+            }
+            catch (IOException e)
+            { // Evicted by another process meanwhile
+            }
+            total += sizes[i];
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer i, Integer j)
+            {
+                return Long.compare(stamps[i], stamps[j]);
+            }
+        });
+        for (int k = 0; k < order.length && total > maxBytes; k++)
+        {
+            Files.deleteIfExists(files.get(order[k]));
+            total -= sizes[order[k]];
+        }
+    }
+
+    private ArrayList<Path> entries() throws IOException
+    {
+        ArrayList<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX))
+        {
+            for (Path file : stream)
+                files.add(file);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Write f in the cache's binary form: the number of inputs and outputs,
+     * then each output as its node count, its nodes and its root.  Nodes are
+     * numbered from 2 (0 and 1 are the terminals) in depth-first post-order,
+     * which is also the order they're read back in.
+     */
+    static void write(MultiBDD f, OutputStream out) throws IOException
+    {
+        writeVarint(out, f.getNumInputs());
+        writeVarint(out, f.getNumOutputs());
+        for (BDD output : f.bdds)
+        {
+            BDDTree tree = output.getTree();
+            int[] ids = new int[tree.getNumNodes()];
+            ArrayList<Integer> postOrder = new ArrayList<Integer>();
+            for (int i : tree.postOrder(tree.getRootIndex()))
+            {
+                Node u = tree.getNode(i);
+                if (u.isTerminal())
+                    ids[i] = (u.terminalValue ? 1 : 0);
+                else
+                {
+                    ids[i] = 2 + postOrder.size();
+                    postOrder.add(i);
+                }
+            }
+            writeVarint(out, postOrder.size());
+            for (int i : postOrder)
+            {
+                Node u = tree.getNode(i);
+                writeVarint(out, tree.getInputIndex(i));
+                writeVarint(out, ids[i] - ids[u.low]);
+                writeVarint(out, ids[i] - ids[u.high]);
+            }
+            writeVarint(out, ids[tree.getRootIndex()]);
+        }
+    }
+
+    /**
+     * Read back what write() wrote.
+     */
+    static MultiBDD read(InputStream in) throws IOException
+    {
+        int numInputs = readVarint(in);
+        int numOutputs = readVarint(in);
+        if (numInputs < 0 || numOutputs < 0)
+            throw new IOException("Malformed header");
+        ArrayList<BDD> bdds = new ArrayList<BDD>();
+        for (int k = 0; k < numOutputs; k++)
+        {
+            BDDTree tree = new BDDTree(numInputs);
+            int numNodes = readVarint(in);
+            if (numNodes < 0)
+                throw new IOException("Malformed node count " + numNodes);
+            for (int id = 2; id < numNodes + 2; id++)
+            {
+                int input = readVarint(in);
+                int low = id - readVarint(in);
+                int high = id - readVarint(in);
+                // Children come strictly before their parent and test later
+                // inputs, or the diagram could have a cycle.
+                if (input < 0 || input >= numInputs || low < 0 || low >= id || high < 0 || high >= id || low == high
+                        || tree.getInputIndex(low) <= input || tree.getInputIndex(high) <= input)
+                    throw new IOException("Malformed node " + id);
+                Node node = new Node(low, high, input);
+                if (tree.contains(node))
+                    throw new IOException("Node " + id + " repeats node " + tree.getNodeIndex(node));
+                tree.addNode(node);
+            }
+            int root = readVarint(in);
+            if (root < 0 || root >= numNodes + 2)
+                throw new IOException("Malformed root " + root);
+            tree.setRootIndex(root);
+            bdds.add(new BDD(tree));
+        }
+        return new MultiBDD(bdds);
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException
+    {
+        int value = 0;
+        int shift = 0;
+        int c;
+        do
+        {
+            if (shift > 28)
+                throw new IOException("Varint is longer than 5 bytes");
+            c = in.read();
+            if (c < 0)
+                throw new EOFException();
+            value |= (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return value;
+    }
+}
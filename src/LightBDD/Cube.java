@@ -0,0 +1,96 @@
+package LightBDD;
+
+import java.util.Arrays;
+
+/**
+ * A product term: each input is fixed to true, fixed to false, or free.
+ * A sum-of-products cover of a function is a list of cubes.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public final class Cube
+{
+    /* values[i] is 0 or 1 if input i is fixed, or -1 if it's free. */
+    private final byte[] values;
+    
+    /**
+     * @param values values[i] is 0 or 1 if input i is fixed to false or true,
+     *          or -1 if it's free.
+     */
+    public Cube(byte[] values)
+    {
+        this.values = values.clone();
+    }
+    
+    public int getNumInputs()
+    {
+        return values.length;
+    }
+    
+    public boolean isFree(int input)
+    {
+        return (values[input] < 0);
+    }
+    
+    /**
+     * The value input is fixed to.  Only meaningful if it isn't free.
+     */
+    public boolean getValue(int input)
+    {
+        return (values[input] == 1);
+    }
+    
+    /**
+     * Number of inputs that aren't free.
+     */
+    public int getNumLiterals()
+    {
+        int count = 0;
+        for (byte v : values)
+        {
+            if (v >= 0)
+                count++;
+        }
+        return count;
+    }
+    
+    /**
+     * True iff the cube is true for this input string.
+     */
+    public boolean covers(boolean[] input)
+    {
+        assert(input.length == values.length);
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] >= 0 && input[i] != (values[i] == 1))
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * The cube in PLA notation, e.g. "1-0" for x0 & !x2 over three inputs.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder(values.length);
+        for (byte v : values)
+            s.append(v < 0 ? '-' : (char)('0' + v));
+        return s.toString();
+    }
+    
+    @Override
+    public boolean equals(Object reference)
+    {
+        if (! (reference instanceof Cube))
+            return false;
+        return Arrays.equals(values, ((Cube)reference).values);
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(values);
+    }
+}
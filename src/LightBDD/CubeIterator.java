@@ -0,0 +1,93 @@
+package LightBDD;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a ZDD of cubes one cube at a time.  ZDD input 2i is the literal
+ * "input i is true" and 2i+1 is "input i is false"; each set in the family
+ * is one cube.  Only the current path is kept, so a cover with more cubes
+ * than fit in memory can still be streamed.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+class CubeIterator implements Iterator<Cube>
+{
+    private final BDDTree tree;
+    private final byte[] values;
+    /* DFS frames (node, state): 0 is unvisited, 1 has done the low branch, 2 both. */
+    private final IntStack work = new IntStack();
+    private Cube next;
+    
+    CubeIterator(ZDD cover)
+    {
+        this.tree = cover.getTree();
+        assert(tree.getNumInputs() % 2 == 0);
+        this.values = new byte[tree.getNumInputs() / 2];
+        Arrays.fill(values, (byte)-1);
+        work.push(tree.getRootIndex());
+        work.push(0);
+        advance();
+    }
+    
+    private void advance()
+    {
+        next = null;
+        while (!work.isEmpty())
+        {
+            int state = work.pop();
+            int z = work.pop();
+            Node node = tree.getNode(z);
+            if (node.isTerminal())
+            {
+                if (node.terminalValue)
+                {
+                    next = new Cube(values);
+                    return;
+                }
+                continue;
+            }
+            int literal = tree.getInputIndex(z);
+            if (state == 0)
+            {
+                work.push(z);
+                work.push(1);
+                work.push(node.low);
+                work.push(0);
+            }
+            else if (state == 1)
+            {
+                values[literal >> 1] = (byte)((literal & 1) == 0 ? 1 : 0);
+                work.push(z);
+                work.push(2);
+                work.push(node.high);
+                work.push(0);
+            }
+            else
+                values[literal >> 1] = -1;
+        }
+    }
+    
+    @Override
+    public boolean hasNext()
+    {
+        return (next != null);
+    }
+    
+    @Override
+    public Cube next()
+    {
+        if (next == null)
+            throw new NoSuchElementException();
+        Cube cube = next;
+        advance();
+        return cube;
+    }
+    
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,236 @@
+package LightBDD;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds BDDs from infix boolean expressions such as "a & !(b | c) -> d",
+ * applying one operator at a time rather than enumerating a truth table.
+ * 
+ * From tightest- to loosest-binding, the operators are:
+ * 
+ *   !  ~      negation
+ *   &         and
+ *   ^         exclusive or
+ *   |         or
+ *   ->        implication (right-associative)
+ *   <->  =    equivalence
+ * 
+ * Identifiers are runs of letters, digits, '_', '.', '[' and ']'; 0, 1, false
+ * and true are constants.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class ExpressionParser
+{
+    private static final BooleanOperator AND = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+    private static final BooleanOperator OR = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x|y); }};
+    private static final BooleanOperator XOR = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x^y); }};
+    private static final BooleanOperator IMPLIES = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (!x|y); }};
+    private static final BooleanOperator EQUIVALENT = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x==y); }};
+    
+    private final HashMap<String, Integer> inputs;
+    private final String text;
+    private int position;
+    
+    private ExpressionParser(HashMap<String, Integer> inputs, String text)
+    {
+        this.inputs = inputs;
+        this.text = text;
+    }
+    
+    /**
+     * @param inputNames The function's inputs, in order.  Every identifier in
+     *          the expression must be one of these.
+     */
+    public static BDD parse(List<String> inputNames, String expression) throws ParseException
+    {
+        return new ExpressionParser(index(inputNames), expression).parse();
+    }
+    
+    /**
+     * Build a multiple-output function, one output per expression.
+     * 
+     * @param inputNames The function's inputs, in order.  Every identifier in
+     *          the expressions must be one of these.
+     */
+    public static MultiBDD parseAll(List<String> inputNames, String... expressions) throws ParseException
+    {
+        HashMap<String, Integer> inputs = index(inputNames);
+        ArrayList<BDD> bdds = new ArrayList<BDD>(expressions.length);
+        for (String expression : expressions)
+            bdds.add(new ExpressionParser(inputs, expression).parse());
+        return new MultiBDD(bdds);
+    }
+    
+    /**
+     * The identifiers used in the expressions, in order of first appearance.
+     * Handy as the inputNames argument when the order doesn't matter.
+     */
+    public static ArrayList<String> inputsOf(String... expressions)
+    {
+        ArrayList<String> inputNames = new ArrayList<String>();
+        for (String expression : expressions)
+        {
+            ExpressionParser scanner = new ExpressionParser(null, expression);
+            String token;
+            while ((token = scanner.next()) != null)
+            {
+                if (isIdentifierChar(token.charAt(0)) && !isConstant(token) && !inputNames.contains(token))
+                    inputNames.add(token);
+            }
+        }
+        return inputNames;
+    }
+    
+    private static HashMap<String, Integer> index(List<String> inputNames)
+    {
+        HashMap<String, Integer> inputs = new HashMap<String, Integer>();
+        for (int i = 0; i < inputNames.size(); i++)
+            inputs.put(inputNames.get(i), i);
+        return inputs;
+    }
+    
+    private BDD parse() throws ParseException
+    {
+        BDD result = equivalence();
+        if (peek() != null)
+            throw error("Unexpected '" + peek() + "'");
+        return result;
+    }
+    
+    private BDD equivalence() throws ParseException
+    {
+        BDD left = implication();
+        while ("<->".equals(peek()) || "=".equals(peek()))
+        {
+            next();
+            left = new BDD(EQUIVALENT, left, implication());
+        }
+        return left;
+    }
+    
+    private BDD implication() throws ParseException
+    {
+        BDD left = disjunction();
+        if ("->".equals(peek()))
+        {
+            next();
+            return new BDD(IMPLIES, left, implication());
+        }
+        return left;
+    }
+    
+    private BDD disjunction() throws ParseException
+    {
+        BDD left = exclusiveDisjunction();
+        while ("|".equals(peek()))
+        {
+            next();
+            left = new BDD(OR, left, exclusiveDisjunction());
+        }
+        return left;
+    }
+    
+    private BDD exclusiveDisjunction() throws ParseException
+    {
+        BDD left = conjunction();
+        while ("^".equals(peek()))
+        {
+            next();
+            left = new BDD(XOR, left, conjunction());
+        }
+        return left;
+    }
+    
+    private BDD conjunction() throws ParseException
+    {
+        BDD left = negation();
+        while ("&".equals(peek()))
+        {
+            next();
+            left = new BDD(AND, left, negation());
+        }
+        return left;
+    }
+    
+    private BDD negation() throws ParseException
+    {
+        if ("!".equals(peek()) || "~".equals(peek()))
+        {
+            next();
+            return new BDD(negation(), true);
+        }
+        return primary();
+    }
+    
+    private BDD primary() throws ParseException
+    {
+        String token = next();
+        if (token == null)
+            throw error("Unexpected end of expression");
+        if (token.equals("("))
+        {
+            BDD inner = equivalence();
+            if (!")".equals(next()))
+                throw error("Expected ')'");
+            return inner;
+        }
+        if (token.equals("0") || token.equals("false"))
+            return BDD.constant(inputs.size(), false);
+        if (token.equals("1") || token.equals("true"))
+            return BDD.constant(inputs.size(), true);
+        if (!isIdentifierChar(token.charAt(0)))
+            throw error("Unexpected '" + token + "'");
+        Integer input = inputs.get(token);
+        if (input == null)
+            throw error("Unknown input '" + token + "'");
+        return BDD.variable(inputs.size(), input);
+    }
+    
+    private static boolean isConstant(String token)
+    {
+        return (token.equals("0") || token.equals("1") || token.equals("false") || token.equals("true"));
+    }
+    
+    private static boolean isIdentifierChar(char c)
+    {
+        return (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '[' || c == ']');
+    }
+    
+    private String peek()
+    {
+        int saved = position;
+        String token = next();
+        position = saved;
+        return token;
+    }
+    
+    private String next()
+    {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+            position++;
+        if (position == text.length())
+            return null;
+        int start = position;
+        if (isIdentifierChar(text.charAt(position)))
+        {
+            while (position < text.length() && isIdentifierChar(text.charAt(position)))
+                position++;
+        }
+        else if (text.startsWith("<->", position))
+            position += 3;
+        else if (text.startsWith("->", position))
+            position += 2;
+        else
+            position++;
+        return text.substring(start, position);
+    }
+    
+    private ParseException error(String message)
+    {
+        return new ParseException(message + " at position " + position + " of \"" + text + "\"", position);
+    }
+}
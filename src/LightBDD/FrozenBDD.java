@@ -0,0 +1,212 @@
+package LightBDD;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * An immutable, read-only snapshot of a BDD.  The nodes are stored in final
+ * int arrays numbered in a canonical order (depth-first post-order from the
+ * root, low child first), so two snapshots of the same function have
+ * identical arrays.  Nothing is written after construction, so a FrozenBDD
+ * can be shared between any number of threads without copying or locking.
+ *
+ * Index 0 is the false terminal and index 1 the true terminal; both have
+ * the input index numInputs.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class FrozenBDD extends Executable
+{
+    private final int numInputs;
+    private final int[] var;
+    private final int[] low;
+    private final int[] high;
+    private final int root;
+    private final int hash;
+    /* Cached by whichever thread gets there first.  BigInteger is immutable,
+     * so a racing thread at worst computes the same value again. */
+    private volatile BigInteger satCount;
+
+    /**
+     * Take a snapshot of x.  Later changes to x don't affect the snapshot.
+     */
+    public FrozenBDD(BDD x)
+    {
+        BDDTree tree = x.getTree();
+        this.numInputs = tree.getNumInputs();
+        int treeRoot = tree.getRootIndex();
+        int[] number = new int[tree.getNumNodes()];
+        Arrays.fill(number, -1);
+
+        int size = 2;
+        int[] v = new int[Math.max(2, tree.getNumNodes())];
+        int[] l = new int[v.length];
+        int[] h = new int[v.length];
+        v[0] = v[1] = numInputs;
+
+        // Work items are (treeIndex, childrenNumbered) pairs.
+        IntStack work = new IntStack();
+        work.push(treeRoot);
+        work.push(0);
+        while (!work.isEmpty())
+        {
+            boolean childrenNumbered = (work.pop() != 0);
+            int i = work.pop();
+            if (number[i] >= 0)
+                continue;
+            Node n = tree.getNode(i);
+            if (n.isTerminal())
+            {
+                number[i] = (n.terminalValue ? 1 : 0);
+                continue;
+            }
+            if (childrenNumbered)
+            {
+                v[size] = tree.getInputIndex(i);
+                l[size] = number[n.low];
+                h[size] = number[n.high];
+                number[i] = size++;
+                continue;
+            }
+            work.push(i);
+            work.push(1);
+            work.push(n.high);
+            work.push(0);
+            work.push(n.low);
+            work.push(0);
+        }
+        this.var = Arrays.copyOf(v, size);
+        this.low = Arrays.copyOf(l, size);
+        this.high = Arrays.copyOf(h, size);
+        this.root = number[treeRoot];
+        this.hash = 31 * (31 * (31 * numInputs + Arrays.hashCode(var)) + Arrays.hashCode(low)) + Arrays.hashCode(high);
+    }
+
+    /**
+     * Rebuild a mutable BDD from this snapshot.
+     */
+    public BDD thaw()
+    {
+        BDDTree tree = new BDDTree(numInputs);
+        if (root == 0)
+            tree.setRootIndex(0);
+        for (int i = 2; i < var.length; i++)
+            tree.addNode(new Node(low[i], high[i], var[i]));
+        return new BDD(tree);
+    }
+
+    @Override
+    public boolean[] execute(boolean[] input)
+    {
+        assert(input.length == numInputs);
+        int u = root;
+        while (u > 1)
+            u = (input[var[u]] ? high[u] : low[u]);
+        return new boolean[] { u == 1 };
+    }
+
+    @Override
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    @Override
+    public int getNumOutputs()
+    {
+        return 1;
+    }
+
+    /**
+     * Number of nodes, including the two terminals.
+     */
+    public int getNumNodes()
+    {
+        return var.length;
+    }
+
+    public boolean isConstant()
+    {
+        return (root <= 1);
+    }
+
+    public boolean isSatisfiable()
+    {
+        return (root != 0);
+    }
+
+    public boolean isTautology()
+    {
+        return (root == 1);
+    }
+
+    /**
+     * Number of input strings for which the function is true.
+     */
+    public BigInteger satCount()
+    {
+        BigInteger count = satCount;
+        if (count == null)
+        {
+            // Children come before their parents, so one forward pass suffices.
+            BigInteger[] c = new BigInteger[var.length];
+            c[0] = BigInteger.ZERO;
+            c[1] = BigInteger.ONE;
+            for (int u = 2; u < var.length; u++)
+                c[u] = c[low[u]].shiftLeft(var[low[u]] - var[u] - 1).add(c[high[u]].shiftLeft(var[high[u]] - var[u] - 1));
+            count = c[root].shiftLeft(var[root] == numInputs ? numInputs : var[root]);
+            satCount = count;
+        }
+        return count;
+    }
+
+    /**
+     * One input string for which the function is true, or null if there is
+     * none.  Inputs the path doesn't test are false.
+     */
+    public boolean[] anySat()
+    {
+        if (root == 0)
+            return null;
+        boolean[] input = new boolean[numInputs];
+        int u = root;
+        while (u > 1)
+        {
+            if (low[u] != 0)
+                u = low[u];
+            else
+            {
+                input[var[u]] = true;
+                u = high[u];
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Snapshots are equal iff they represent the same function of the same
+     * number of inputs.  The canonical numbering reduces this to comparing
+     * arrays.
+     */
+    @Override
+    public boolean equals(Object reference)
+    {
+        if (this == reference)
+            return true;
+        if (! (reference instanceof FrozenBDD))
+            return false;
+        FrozenBDD ref = (FrozenBDD)reference;
+        return (this.hash == ref.hash
+                && this.numInputs == ref.numInputs
+                && this.root == ref.root
+                && Arrays.equals(this.var, ref.var)
+                && Arrays.equals(this.low, ref.low)
+                && Arrays.equals(this.high, ref.high));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+package LightBDD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An immutable, read-only snapshot of a MultiBDD: one FrozenBDD per output.
+ * Like FrozenBDD, it's safe to share between threads without copying.
+ * 
+ * Snapshots of functions with few enough inputs are also compiled to a
+ * LookupTable the first time they're executed, and execute() uses it in
+ * place of walking the diagrams.  Snapshots that are only shared or thawed
+ * never pay for the table.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public final class FrozenMultiBDD extends Executable
+{
+    /** Most inputs for which a snapshot compiles itself to a table (64K entries). */
+    public static final int TABLE_INPUTS = 16;
+    
+    private final FrozenBDD[] outputs;
+    private final int numInputs;
+    /* Null until the first execute(), and always if there are too many
+     * inputs.  Two threads may both build it; either copy will do. */
+    private volatile LookupTable table;
+    
+    /**
+     * Take a snapshot of every output of f.
+     */
+    public FrozenMultiBDD(MultiBDD f)
+    {
+        this.outputs = new FrozenBDD[f.getNumOutputs()];
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = f.bdds.get(i).freeze();
+        this.numInputs = f.getNumInputs();
+    }
+    
+    /**
+     * Rebuild a mutable MultiBDD from this snapshot.
+     */
+    public MultiBDD thaw()
+    {
+        ArrayList<BDD> bdds = new ArrayList<BDD>(outputs.length);
+        for (FrozenBDD b : outputs)
+            bdds.add(b.thaw());
+        return new MultiBDD(bdds);
+    }
+    
+    public FrozenBDD getOutput(int i)
+    {
+        return outputs[i];
+    }
+    
+    @Override
+    public boolean[] execute(boolean[] input)
+    {
+        assert(input.length == numInputs);
+        LookupTable t = table;
+        if (t == null && numInputs <= TABLE_INPUTS)
+        { // Built from the snapshot, since f may have changed since
+            t = thaw().toLookupTable();
+            table = t;
+        }
+        if (t != null)
+            return t.execute(input);
+        boolean[] output = new boolean[outputs.length];
+        for (int i = 0; i < outputs.length; i++)
+            output[i] = outputs[i].execute(input)[0];
+        return output;
+    }
+    
+    /**
+     * Whether execute() has compiled the snapshot to a table yet.
+     */
+    boolean hasTable()
+    {
+        return (table != null);
+    }
+    
+    @Override
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+    
+    @Override
+    public int getNumOutputs()
+    {
+        return outputs.length;
+    }
+    
+    @Override
+    public boolean equals(Object reference)
+    {
+        if (! (reference instanceof FrozenMultiBDD))
+            return false;
+        return Arrays.equals(this.outputs, ((FrozenMultiBDD)reference).outputs);
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(outputs);
+    }
+}
@@ -0,0 +1,59 @@
+package LightBDD;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An IntTable on the heap, in pages small enough to be Java arrays.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+final class HeapIntTable implements IntTable
+{
+    private static final int PAGE_SHIFT = 30;
+    private static final long PAGE_MASK = (1L << PAGE_SHIFT) - 1;
+    
+    private final long size;
+    private final AtomicIntegerArray[] pages;
+    
+    HeapIntTable(long size)
+    {
+        this.size = size;
+        this.pages = new AtomicIntegerArray[(int)((size + PAGE_MASK) >>> PAGE_SHIFT)];
+        for (int p = 0; p < pages.length; p++)
+            pages[p] = new AtomicIntegerArray((int)Math.min(PAGE_MASK + 1, size - ((long)p << PAGE_SHIFT)));
+    }
+    
+    @Override
+    public long size()
+    {
+        return size;
+    }
+    
+    @Override
+    public int get(long i)
+    {
+        return pages[(int)(i >>> PAGE_SHIFT)].get((int)(i & PAGE_MASK));
+    }
+    
+    @Override
+    public void set(long i, int value)
+    {
+        pages[(int)(i >>> PAGE_SHIFT)].set((int)(i & PAGE_MASK), value);
+    }
+    
+    @Override
+    public boolean compareAndSet(long i, int expect, int update)
+    {
+        return pages[(int)(i >>> PAGE_SHIFT)].compareAndSet((int)(i & PAGE_MASK), expect, update);
+    }
+    
+    @Override
+    public void clear()
+    {
+        for (AtomicIntegerArray page : pages)
+        {
+            for (int i = 0; i < page.length(); i++)
+                page.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package LightBDD;
+
+/**
+ * A NodeStore in three int arrays on the heap.  This is the default, and the
+ * fastest while the nodes fit in memory.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class HeapNodeStore implements NodeStore
+{
+    private final int[] var;
+    private final int[] low;
+    private final int[] high;
+    
+    public HeapNodeStore(int capacity)
+    {
+        this.var = new int[capacity];
+        this.low = new int[capacity];
+        this.high = new int[capacity];
+    }
+    
+    @Override
+    public int capacity()
+    {
+        return var.length;
+    }
+    
+    @Override
+    public int var(int u)
+    {
+        return var[u];
+    }
+    
+    @Override
+    public int low(int u)
+    {
+        return low[u];
+    }
+    
+    @Override
+    public int high(int u)
+    {
+        return high[u];
+    }
+    
+    @Override
+    public void set(int u, int var, int low, int high)
+    {
+        this.var[u] = var;
+        this.low[u] = low;
+        this.high[u] = high;
+    }
+}
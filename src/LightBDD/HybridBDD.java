@@ -0,0 +1,373 @@
+package LightBDD;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A BDD whose bottom six inputs are stored as truth tables.  Any
+ * sub-diagram that depends only on the last six inputs is a single leaf
+ * holding its 64-bit truth table, so the widest levels of a dense function
+ * collapse into one word per distinct subfunction.  apply() and restrict()
+ * work on leaves with word-level bit operations, and execute() finishes
+ * with one shift and mask.
+ *
+ * Bit b of a leaf's table is the function's value when input cut + j is bit
+ * j of b, where cut is numInputs - 6.  With fewer than six inputs the whole
+ * function is one leaf, and the bits for inputs that don't exist repeat.
+ *
+ * HybridBDDs are immutable, with their nodes in canonical order like
+ * MTBDD's, so equal functions have equal arrays.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class HybridBDD extends Executable
+{
+    /** Number of inputs a leaf covers. */
+    public static final int LEAF_INPUTS = 6;
+
+    /* MASKS[j] has bit b set iff bit j of b is set. */
+    private static final long[] MASKS = {
+        0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+        0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L };
+
+    private final int numInputs;
+    /* First input covered by the leaves. */
+    private final int cut;
+    /* var[u] is numInputs for a leaf, whose table is table[u]. */
+    private final int[] var;
+    private final int[] low;
+    private final int[] high;
+    private final long[] table;
+    private final int root;
+
+    /**
+     * Convert f, folding everything below the cut into leaves.
+     */
+    public HybridBDD(BDD f)
+    {
+        BDDTree fTree = f.getTree();
+        Store store = new Store(fTree.getNumInputs());
+        int[] copies = new int[fTree.getNumNodes()];
+        for (int i : fTree.postOrder(fTree.getRootIndex()))
+        {
+            Node u = fTree.getNode(i);
+            int v = fTree.getInputIndex(i);
+            if (u.isTerminal())
+                copies[i] = store.mkLeaf(u.terminalValue ? -1L : 0L);
+            else if (v >= store.cut)
+            { // Both children are leaves already
+                long mask = MASKS[v - store.cut];
+                copies[i] = store.mkLeaf((store.data[copies[u.low]] & ~mask) | (store.data[copies[u.high]] & mask));
+            }
+            else
+                copies[i] = store.mk(v, copies[u.low], copies[u.high]);
+        }
+        this.numInputs = store.numInputs;
+        this.cut = store.cut;
+        int[][] arrays = store.canonical(copies[fTree.getRootIndex()]);
+        this.var = arrays[0];
+        this.low = arrays[1];
+        this.high = arrays[2];
+        this.table = store.canonicalData;
+        this.root = var.length - 1;
+    }
+
+    /**
+     * Apply a boolean operator to two HybridBDDs with the same inputs.  Like
+     * BDD's apply above the cut; a pair of leaves is combined a word at a
+     * time.
+     */
+    public HybridBDD(BooleanOperator op, HybridBDD x, HybridBDD y)
+    {
+        assert(x.numInputs == y.numInputs);
+        int truthTable = Operator.truthTable(op);
+        Store store = new Store(x.numInputs);
+        LongIntMap memo = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(x.root, y.root, 0);
+        while (!work.isEmpty())
+        {
+            boolean expanded = (work.pop() != 0);
+            int yi = work.pop();
+            int xi = work.pop();
+            int v = Math.min(x.var[xi], y.var[yi]);
+            if (expanded)
+            {
+                int h = results.pop();
+                int l = results.pop();
+                int output = store.mk(v, l, h);
+                memo.put(LongIntMap.pack(xi, yi), output);
+                results.push(output);
+                continue;
+            }
+            if (v == x.numInputs)
+            { // Both leaves
+                results.push(store.mkLeaf(combine(truthTable, x.table[xi], y.table[yi])));
+                continue;
+            }
+            int cached = memo.get(LongIntMap.pack(xi, yi));
+            if (cached >= 0)
+            {
+                results.push(cached);
+                continue;
+            }
+            work.push(xi, yi, 1);
+            work.push((x.var[xi] == v ? x.high[xi] : xi), (y.var[yi] == v ? y.high[yi] : yi), 0);
+            work.push((x.var[xi] == v ? x.low[xi] : xi), (y.var[yi] == v ? y.low[yi] : yi), 0);
+        }
+        this.numInputs = x.numInputs;
+        this.cut = store.cut;
+        int[][] arrays = store.canonical(results.pop());
+        this.var = arrays[0];
+        this.low = arrays[1];
+        this.high = arrays[2];
+        this.table = store.canonicalData;
+        this.root = var.length - 1;
+    }
+
+    /**
+     * Restrict one input.  Children come before their parents, so this is
+     * one forward pass; below the cut, each leaf is cofactored in a word.
+     */
+    public HybridBDD(HybridBDD x, int inputToFix, boolean value)
+    {
+        assert(inputToFix < x.numInputs);
+        Store store = new Store(x.numInputs);
+        int[] copies = new int[x.var.length];
+        for (int u = 0; u < x.var.length; u++)
+        {
+            if (x.var[u] == x.numInputs)
+            {
+                long t = x.table[u];
+                copies[u] = store.mkLeaf(inputToFix >= x.cut ? cofactor(t, inputToFix - x.cut, value) : t);
+            }
+            else if (x.var[u] == inputToFix)
+                copies[u] = copies[value ? x.high[u] : x.low[u]];
+            else
+                copies[u] = store.mk(x.var[u], copies[x.low[u]], copies[x.high[u]]);
+        }
+        this.numInputs = x.numInputs;
+        this.cut = store.cut;
+        int[][] arrays = store.canonical(copies[x.root]);
+        this.var = arrays[0];
+        this.low = arrays[1];
+        this.high = arrays[2];
+        this.table = store.canonicalData;
+        this.root = var.length - 1;
+    }
+
+    /**
+     * op(x, y) on every bit of two truth tables at once.  Bit 2x+y of the
+     * operator's truth table says which of the four minterms it's true on.
+     */
+    private static long combine(int truthTable, long x, long y)
+    {
+        long result = 0;
+        if ((truthTable & 1) != 0)
+            result |= ~x & ~y;
+        if ((truthTable & 2) != 0)
+            result |= ~x & y;
+        if ((truthTable & 4) != 0)
+            result |= x & ~y;
+        if ((truthTable & 8) != 0)
+            result |= x & y;
+        return result;
+    }
+
+    /**
+     * The table with bit j of the index fixed to value, so the result no
+     * longer depends on it.
+     */
+    private static long cofactor(long t, int j, boolean value)
+    {
+        int shift = 1 << j;
+        if (value)
+        {
+            t &= MASKS[j];
+            return t | (t >>> shift);
+        }
+        t &= ~MASKS[j];
+        return t | (t << shift);
+    }
+
+    /**
+     * Expand the leaves back into nodes.
+     */
+    public BDD toBDD()
+    {
+        BDDTree tree = new BDDTree(numInputs);
+        HashMap<Long, Integer> leaves = new HashMap<Long, Integer>();
+        int[] copies = new int[var.length];
+        for (int u = 0; u < var.length; u++)
+        {
+            if (var[u] == numInputs)
+                copies[u] = expand(tree, table[u], leaves);
+            else
+                copies[u] = mkNode(tree, copies[low[u]], copies[high[u]], var[u]);
+        }
+        tree.setRootIndex(copies[root]);
+        return new BDD(tree);
+    }
+
+    /* Shannon-expand a table on the first index bit it depends on.  A table
+     * that doesn't depend on bit j is the same function however it's reached,
+     * so the table alone is the memo key.  Recursion is at most six deep. */
+    private int expand(BDDTree tree, long t, HashMap<Long, Integer> memo)
+    {
+        if (t == 0L)
+            return 0;
+        if (t == -1L)
+            return 1;
+        Integer cached = memo.get(t);
+        if (cached != null)
+            return cached;
+        int j = 0;
+        while (cofactor(t, j, false) == cofactor(t, j, true))
+            j++;
+        int result = mkNode(tree, expand(tree, cofactor(t, j, false), memo), expand(tree, cofactor(t, j, true), memo), cut + j);
+        memo.put(t, result);
+        return result;
+    }
+
+    private static int mkNode(BDDTree tree, int low, int high, int var)
+    {
+        if (low == high)
+            return low;
+        Node node = new Node(low, high, var);
+        return (tree.contains(node) ? tree.getNodeIndex(node) : tree.addNode(node));
+    }
+
+    @Override
+    public boolean[] execute(boolean[] input)
+    {
+        assert(input.length == numInputs);
+        int u = root;
+        while (var[u] != numInputs)
+            u = (input[var[u]] ? high[u] : low[u]);
+        int index = 0;
+        for (int j = 0; cut + j < numInputs; j++)
+        {
+            if (input[cut + j])
+                index |= 1 << j;
+        }
+        return new boolean[] { ((table[u] >>> index) & 1) != 0 };
+    }
+
+    @Override
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    @Override
+    public int getNumOutputs()
+    {
+        return 1;
+    }
+
+    /**
+     * Number of nodes, leaves included.
+     */
+    public int getNumNodes()
+    {
+        return var.length;
+    }
+
+    /**
+     * Number of distinct truth-table leaves, constants included.
+     */
+    public int getNumLeaves()
+    {
+        int count = 0;
+        for (int v : var)
+        {
+            if (v == numInputs)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Number of input strings for which the function is true.
+     */
+    public BigInteger satCount()
+    {
+        // A leaf counts over the inputs from the cut down, a node over those from its own.
+        int leafInputs = numInputs - cut;
+        BigInteger[] c = new BigInteger[var.length];
+        for (int u = 0; u < var.length; u++)
+        {
+            if (var[u] == numInputs)
+                c[u] = BigInteger.valueOf(Long.bitCount(table[u]) >> (LEAF_INPUTS - leafInputs));
+            else
+                c[u] = c[low[u]].shiftLeft(level(low[u]) - var[u] - 1).add(c[high[u]].shiftLeft(level(high[u]) - var[u] - 1));
+        }
+        return c[root].shiftLeft(level(root));
+    }
+
+    private int level(int u)
+    {
+        return (var[u] == numInputs ? cut : var[u]);
+    }
+
+    @Override
+    public boolean equals(Object reference)
+    {
+        if (! (reference instanceof HybridBDD))
+            return false;
+        HybridBDD ref = (HybridBDD)reference;
+        return (this.numInputs == ref.numInputs
+                && Arrays.equals(this.var, ref.var)
+                && Arrays.equals(this.low, ref.low)
+                && Arrays.equals(this.high, ref.high)
+                && Arrays.equals(this.table, ref.table));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 7;
+        hash = 31 * hash + numInputs;
+        hash = 31 * hash + Arrays.hashCode(var);
+        hash = 31 * hash + Arrays.hashCode(low);
+        return 31 * hash + Arrays.hashCode(table);
+    }
+
+    /**
+     * Scratch node store for building a HybridBDD.  Leaves are unique by
+     * table, and only inputs above the cut have nodes.
+     */
+    private static final class Store extends NodeArena
+    {
+        final int cut;
+        final LongIntMap leaves = new LongIntMap();
+        int trueLeaf = -1;
+
+        Store(int numInputs)
+        {
+            this(numInputs, Math.max(0, numInputs - LEAF_INPUTS));
+        }
+
+        private Store(int numInputs, int cut)
+        {
+            super(numInputs, cut);
+            this.cut = cut;
+        }
+
+        int mkLeaf(long t)
+        {
+            // -1 is LongIntMap's empty key, so the true leaf is kept apart.
+            int u = (t == -1L ? trueLeaf : leaves.get(t));
+            if (u >= 0)
+                return u;
+            u = addTerminal(t);
+            if (t == -1L)
+                trueLeaf = u;
+            else
+                leaves.put(t, u);
+            return u;
+        }
+    }
+}
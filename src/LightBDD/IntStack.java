@@ -0,0 +1,67 @@
+package LightBDD;
+
+import java.util.Arrays;
+
+/**
+ * Growable stack of ints.  The BDD kernels keep their work lists in these
+ * rather than on the Java call stack, so their depth is bounded by the heap
+ * instead of the thread's stack size.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+final class IntStack
+{
+    private int[] elements;
+    private int size;
+    
+    IntStack()
+    {
+        this(64);
+    }
+    
+    IntStack(int initialCapacity)
+    {
+        this.elements = new int[Math.max(initialCapacity, 4)];
+    }
+    
+    void push(int x)
+    {
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements, size * 2);
+        elements[size++] = x;
+    }
+    
+    void push(int x, int y, int z)
+    {
+        if (size + 3 > elements.length)
+            elements = Arrays.copyOf(elements, Math.max(size * 2, size + 3));
+        elements[size++] = x;
+        elements[size++] = y;
+        elements[size++] = z;
+    }
+    
+    int pop()
+    {
+        return elements[--size];
+    }
+    
+    int peek()
+    {
+        return elements[size - 1];
+    }
+    
+    boolean isEmpty()
+    {
+        return (size == 0);
+    }
+    
+    int size()
+    {
+        return size;
+    }
+    
+    void clear()
+    {
+        size = 0;
+    }
+}
@@ -0,0 +1,28 @@
+package LightBDD;
+
+/**
+ * A fixed-size table of ints, indexed by long, that any number of threads
+ * can read and compare-and-set at once.  ConcurrentBDDEngine keeps its unique
+ * table in one, made by its NodeStore, so that a store off the heap can keep
+ * the table (which gc() also uses as scratch space) off the heap as well.
+ * 
+ * Reads and writes are volatile, like those of an AtomicIntegerArray.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public interface IntTable
+{
+    public long size();
+    
+    public int get(long i);
+    
+    public void set(long i, int value);
+    
+    public boolean compareAndSet(long i, int expect, int update);
+    
+    /**
+     * Set every entry to 0.  Not atomic: only for when the table isn't
+     * shared.
+     */
+    public void clear();
+}
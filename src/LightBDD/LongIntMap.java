@@ -0,0 +1,123 @@
+package LightBDD;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to non-negative int values, used as
+ * the computed table ("dynamic programming memory") of the BDD kernels.  Keys
+ * are typically two node indices packed with pack(), which avoids boxing a key
+ * object for every lookup.
+ * 
+ * The key -1 is reserved to mark empty slots.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+final class LongIntMap
+{
+    private static final long EMPTY = -1L;
+    
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    
+    LongIntMap()
+    {
+        this(64);
+    }
+    
+    LongIntMap(int expectedSize)
+    {
+        int capacity = 16;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+    
+    static long pack(int x, int y)
+    {
+        return ((long)x << 32) | (y & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * @return The value stored for key, or -1 if there is none.
+     */
+    int get(long key)
+    {
+        int i = slot(key);
+        while (true)
+        {
+            long k = keys[i];
+            if (k == key)
+                return values[i];
+            if (k == EMPTY)
+                return -1;
+            i = (i + 1) & mask;
+        }
+    }
+    
+    void put(long key, int value)
+    {
+        assert(key != EMPTY);
+        int i = slot(key);
+        while (true)
+        {
+            long k = keys[i];
+            if (k == key)
+            {
+                values[i] = value;
+                return;
+            }
+            if (k == EMPTY)
+            {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length)
+                    rehash();
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+    
+    int size()
+    {
+        return size;
+    }
+    
+    void clear()
+    {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+    
+    private int slot(long key)
+    {
+        // Finalizer from MurmurHash3; node indices are far from random.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int)key & mask;
+    }
+    
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+    
+    private void rehash()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != EMPTY)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
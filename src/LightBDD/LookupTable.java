@@ -0,0 +1,213 @@
+package LightBDD;
+
+import java.util.Arrays;
+
+/**
+ * A MultiBDD compiled to a dense truth table, so evaluating it is one array
+ * index.  Only worth it for small numbers of inputs: the table has 2^n
+ * entries.
+ *
+ * Input 0 is the most significant bit of the index, so every node of a
+ * diagram owns one contiguous block of the table.  The table is filled
+ * block by block from the diagrams: a terminal fills its block in word-sized
+ * strides, and a block whose node skips some inputs is filled once and then
+ * doubled into place, so the diagram is never executed per entry.
+ *
+ * With at most 16 outputs, each entry is a byte or short holding all the
+ * outputs, bit k being output k.  With more, each output has its own packed
+ * bit table.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class LookupTable extends Executable
+{
+    /** Most inputs a table can be built for (16M entries). */
+    public static final int MAX_INPUTS = 24;
+
+    private final int numInputs;
+    private final int numOutputs;
+    /* Exactly one of these is set, depending on numOutputs. */
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final long[][] bits;
+
+    public LookupTable(MultiBDD f)
+    {
+        this.numInputs = f.getNumInputs();
+        this.numOutputs = f.getNumOutputs();
+        if (numInputs > MAX_INPUTS)
+            throw new IllegalArgumentException("A lookup table for " + numInputs + " inputs would have 2^" + numInputs + " entries; the limit is " + MAX_INPUTS + " inputs");
+        long[][] outputBits = new long[numOutputs][];
+        for (int k = 0; k < numOutputs; k++)
+            outputBits[k] = fill(f.bdds.get(k).getTree(), numInputs);
+
+        int size = 1 << numInputs;
+        if (numOutputs <= 8)
+        {
+            this.bytes = new byte[size];
+            for (int k = 0; k < numOutputs; k++)
+            {
+                for (int i = 0; i < size; i++)
+                    bytes[i] |= (byte)(((outputBits[k][i >>> 6] >>> (i & 63)) & 1) << k);
+            }
+            this.shorts = null;
+            this.bits = null;
+        }
+        else if (numOutputs <= 16)
+        {
+            this.shorts = new short[size];
+            for (int k = 0; k < numOutputs; k++)
+            {
+                for (int i = 0; i < size; i++)
+                    shorts[i] |= (short)(((outputBits[k][i >>> 6] >>> (i & 63)) & 1) << k);
+            }
+            this.bytes = null;
+            this.bits = null;
+        }
+        else
+        {
+            this.bits = outputBits;
+            this.bytes = null;
+            this.shorts = null;
+        }
+    }
+
+    /**
+     * The packed truth table of one diagram: bit i is its value on the input
+     * string whose bits, input 0 first, spell i.
+     */
+    static long[] fill(BDDTree tree, int n)
+    {
+        long size = 1L << n;
+        long[] words = new long[(int)((size + 63) >>> 6)];
+        // Frames are (node, level, offset) to fill, or (-1, level, offset) to
+        // double the filled block at offset from level until it covers its
+        // parent's block.
+        IntStack work = new IntStack();
+        work.push(tree.getRootIndex(), 0, 0);
+        while (!work.isEmpty())
+        {
+            int offset = work.pop();
+            int level = work.pop();
+            int u = work.pop();
+            if (u < 0)
+            { // level packs (from << 8) | to
+                int from = level >>> 8;
+                int to = level & 0xFF;
+                for (int l = from; l > to; l--)
+                    copyBits(words, offset, offset + (1 << (n - l)), 1 << (n - l));
+                continue;
+            }
+            Node node = tree.getNode(u);
+            if (node.isTerminal())
+            {
+                if (node.terminalValue)
+                    setBits(words, offset, 1 << (n - level));
+                continue;
+            }
+            int v = tree.getInputIndex(u);
+            if (v > level)
+            {
+                work.push(-1, (v << 8) | level, offset);
+                work.push(u, v, offset);
+                continue;
+            }
+            int half = 1 << (n - level - 1);
+            work.push(node.high, level + 1, offset + half);
+            work.push(node.low, level + 1, offset);
+        }
+        return words;
+    }
+
+    /* Set length bits from offset.  Blocks are powers of two, aligned to their size. */
+    private static void setBits(long[] words, int offset, int length)
+    {
+        if (length >= 64)
+        {
+            Arrays.fill(words, offset >>> 6, (offset + length) >>> 6, -1L);
+            return;
+        }
+        words[offset >>> 6] |= ((1L << length) - 1) << (offset & 63);
+    }
+
+    /* Copy length bits from src to dest.  Same alignment as setBits(). */
+    private static void copyBits(long[] words, int src, int dest, int length)
+    {
+        if (length >= 64)
+        {
+            System.arraycopy(words, src >>> 6, words, dest >>> 6, length >>> 6);
+            return;
+        }
+        long mask = (1L << length) - 1;
+        long block = (words[src >>> 6] >>> (src & 63)) & mask;
+        words[dest >>> 6] |= block << (dest & 63);
+    }
+
+    /**
+     * The table index of an input string.
+     */
+    public int index(boolean[] input)
+    {
+        assert(input.length == numInputs);
+        int index = 0;
+        for (boolean b : input)
+            index = (index << 1) | (b ? 1 : 0);
+        return index;
+    }
+
+    /**
+     * Output k's value at a table index.
+     */
+    public boolean get(int index, int output)
+    {
+        if (bytes != null)
+            return ((bytes[index] >>> output) & 1) != 0;
+        if (shorts != null)
+            return ((shorts[index] >>> output) & 1) != 0;
+        return ((bits[output][index >>> 6] >>> (index & 63)) & 1) != 0;
+    }
+
+    /**
+     * All outputs at a table index, bit k being output k.  Only for up to 16
+     * outputs, where this is a single array read.
+     */
+    public int getOutputs(int index)
+    {
+        if (bytes != null)
+            return bytes[index] & 0xFF;
+        if (shorts != null)
+            return shorts[index] & 0xFFFF;
+        throw new IllegalStateException("Tables with more than 16 outputs are stored per output");
+    }
+
+    @Override
+    public boolean[] execute(boolean[] input)
+    {
+        int index = index(input);
+        boolean[] output = new boolean[numOutputs];
+        if (bits == null)
+        {
+            int word = getOutputs(index);
+            for (int k = 0; k < numOutputs; k++)
+                output[k] = ((word >>> k) & 1) != 0;
+        }
+        else
+        {
+            for (int k = 0; k < numOutputs; k++)
+                output[k] = get(index, k);
+        }
+        return output;
+    }
+
+    @Override
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    @Override
+    public int getNumOutputs()
+    {
+        return numOutputs;
+    }
+}
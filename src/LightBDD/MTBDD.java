@@ -0,0 +1,294 @@
+package LightBDD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Multi-terminal BDD (also called an algebraic decision diagram): a function
+ * from input strings to numbers.  Where a MultiBDD spends one diagram on each
+ * bit of a numeric output, an MTBDD has one terminal per distinct output
+ * value, so evaluating it is one walk from the root, and the bits share
+ * their decision nodes.  See Bahar et al., "Algebraic Decision Diagrams and
+ * their Applications," ICCAD 1993.
+ *
+ * MTBDDs are immutable.  The nodes are kept in canonical order (depth-first
+ * post-order from the root, low child first), so equal functions have equal
+ * arrays.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public final class MTBDD
+{
+    /**
+     * The common arithmetic operators.
+     */
+    public enum Arithmetic implements ArithmeticOperator
+    {
+        PLUS { @Override public double operate(double x, double y) { return x + y; } },
+        MINUS { @Override public double operate(double x, double y) { return x - y; } },
+        TIMES { @Override public double operate(double x, double y) { return x * y; } },
+        DIVIDE { @Override public double operate(double x, double y) { return x / y; } },
+        MIN { @Override public double operate(double x, double y) { return Math.min(x, y); } },
+        MAX { @Override public double operate(double x, double y) { return Math.max(x, y); } };
+    }
+
+    private final int numInputs;
+    /* var[u] is numInputs for a terminal, whose value is value[u]. */
+    private final int[] var;
+    private final int[] low;
+    private final int[] high;
+    private final double[] value;
+    private final int root;
+
+    /**
+     * The function that is whenTrue where f is true and whenFalse elsewhere.
+     */
+    public MTBDD(BDD f, double whenFalse, double whenTrue)
+    {
+        BDDTree fTree = f.getTree();
+        Store store = new Store(fTree.getNumInputs());
+        int[] copies = new int[fTree.getNumNodes()];
+        for (int i : fTree.postOrder(fTree.getRootIndex()))
+        {
+            Node u = fTree.getNode(i);
+            if (u.isTerminal())
+                copies[i] = store.mkTerminal(u.terminalValue ? whenTrue : whenFalse);
+            else
+                copies[i] = store.mk(fTree.getInputIndex(i), copies[u.low], copies[u.high]);
+        }
+        this.numInputs = store.numInputs;
+        int[][] arrays = store.canonical(copies[fTree.getRootIndex()]);
+        this.var = arrays[0];
+        this.low = arrays[1];
+        this.high = arrays[2];
+        this.value = store.canonicalValues();
+        this.root = var.length - 1;
+    }
+
+    /**
+     * The function that is 1 where f is true and 0 elsewhere.
+     */
+    public MTBDD(BDD f)
+    {
+        this(f, 0.0, 1.0);
+    }
+
+    /**
+     * The unsigned integer whose bit i is output i of f.
+     */
+    public MTBDD(MultiBDD f)
+    {
+        this(sumOfBits(f));
+    }
+
+    private static MTBDD sumOfBits(MultiBDD f)
+    {
+        MTBDD sum = new MTBDD(f.bdds.get(0));
+        for (int i = 1; i < f.getNumOutputs(); i++)
+            sum = new MTBDD(Arithmetic.PLUS, sum, new MTBDD(f.bdds.get(i), 0.0, (double)(1L << i)));
+        return sum;
+    }
+
+    private MTBDD(MTBDD x)
+    {
+        this.numInputs = x.numInputs;
+        this.var = x.var;
+        this.low = x.low;
+        this.high = x.high;
+        this.value = x.value;
+        this.root = x.root;
+    }
+
+    /**
+     * Apply an arithmetic operator to two MTBDDs with the same inputs.  Like
+     * BDD's apply, from Anderson (1997), run off an explicit stack.
+     */
+    public MTBDD(ArithmeticOperator op, MTBDD x, MTBDD y)
+    {
+        assert(x.numInputs == y.numInputs);
+        Store store = new Store(x.numInputs);
+        LongIntMap memo = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(x.root, y.root, 0);
+        while (!work.isEmpty())
+        {
+            boolean expanded = (work.pop() != 0);
+            int yi = work.pop();
+            int xi = work.pop();
+            int v = Math.min(x.var[xi], y.var[yi]);
+            if (expanded)
+            {
+                int h = results.pop();
+                int l = results.pop();
+                int output = store.mk(v, l, h);
+                memo.put(LongIntMap.pack(xi, yi), output);
+                results.push(output);
+                continue;
+            }
+            if (v == x.numInputs)
+            { // Both terminal
+                results.push(store.mkTerminal(op.operate(x.value[xi], y.value[yi])));
+                continue;
+            }
+            int cached = memo.get(LongIntMap.pack(xi, yi));
+            if (cached >= 0)
+            {
+                results.push(cached);
+                continue;
+            }
+            work.push(xi, yi, 1);
+            work.push((x.var[xi] == v ? x.high[xi] : xi), (y.var[yi] == v ? y.high[yi] : yi), 0);
+            work.push((x.var[xi] == v ? x.low[xi] : xi), (y.var[yi] == v ? y.low[yi] : yi), 0);
+        }
+        this.numInputs = x.numInputs;
+        int[][] arrays = store.canonical(results.pop());
+        this.var = arrays[0];
+        this.low = arrays[1];
+        this.high = arrays[2];
+        this.value = store.canonicalValues();
+        this.root = var.length - 1;
+    }
+
+    /**
+     * The constant function.
+     */
+    public static MTBDD constant(int numInputs, double value)
+    {
+        return new MTBDD(BDD.constant(numInputs, false), value, value);
+    }
+
+    /**
+     * The function's value on one input string.
+     */
+    public double evaluate(boolean[] input)
+    {
+        assert(input.length == numInputs);
+        int u = root;
+        while (var[u] != numInputs)
+            u = (input[var[u]] ? high[u] : low[u]);
+        return value[u];
+    }
+
+    /**
+     * One BDD per output bit, output 0 being the least significant.  Every
+     * value must be a non-negative integer below 2^numOutputs.
+     */
+    public MultiBDD toMultiBDD(int numOutputs)
+    {
+        ArrayList<BDD> bdds = new ArrayList<BDD>(numOutputs);
+        for (int bit = 0; bit < numOutputs; bit++)
+        {
+            BDDTree tree = new BDDTree(numInputs);
+            int[] copies = new int[var.length];
+            // Children come before their parents, so one forward pass suffices.
+            for (int u = 0; u < var.length; u++)
+            {
+                if (var[u] == numInputs)
+                {
+                    long n = (long)value[u];
+                    assert(n == value[u] && n >= 0 && n < (1L << numOutputs));
+                    copies[u] = (int)((n >>> bit) & 1);
+                }
+                else if (copies[low[u]] == copies[high[u]])
+                    copies[u] = copies[low[u]];
+                else
+                {
+                    Node node = new Node(copies[low[u]], copies[high[u]], var[u]);
+                    copies[u] = (tree.contains(node) ? tree.getNodeIndex(node) : tree.addNode(node));
+                }
+            }
+            tree.setRootIndex(copies[root]);
+            bdds.add(new BDD(tree));
+        }
+        return new MultiBDD(bdds);
+    }
+
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * Number of nodes, terminals included.
+     */
+    public int getNumNodes()
+    {
+        return var.length;
+    }
+
+    /**
+     * Number of distinct values the function takes.
+     */
+    public int getNumTerminals()
+    {
+        int count = 0;
+        for (int v : var)
+        {
+            if (v == numInputs)
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object reference)
+    {
+        if (! (reference instanceof MTBDD))
+            return false;
+        MTBDD ref = (MTBDD)reference;
+        return (this.numInputs == ref.numInputs
+                && Arrays.equals(this.var, ref.var)
+                && Arrays.equals(this.low, ref.low)
+                && Arrays.equals(this.high, ref.high)
+                && Arrays.equals(this.value, ref.value));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 7;
+        hash = 31 * hash + numInputs;
+        hash = 31 * hash + Arrays.hashCode(var);
+        hash = 31 * hash + Arrays.hashCode(low);
+        return 31 * hash + Arrays.hashCode(value);
+    }
+
+    /**
+     * Scratch node store for building an MTBDD.  Terminals are unique by
+     * value.
+     */
+    private static final class Store extends NodeArena
+    {
+        final LongIntMap terminals = new LongIntMap();
+
+        Store(int numInputs)
+        {
+            super(numInputs, numInputs);
+        }
+
+        int mkTerminal(double v)
+        {
+            if (v == 0.0)
+                v = 0.0; // -0.0 == 0.0, so they're one terminal
+            long key = Double.doubleToLongBits(v);
+            int u = terminals.get(key);
+            if (u >= 0)
+                return u;
+            u = addTerminal(key);
+            terminals.put(key, u);
+            return u;
+        }
+
+        /**
+         * The terminal values of the last canonical() diagram.
+         */
+        double[] canonicalValues()
+        {
+            double[] values = new double[canonicalData.length];
+            for (int i = 0; i < values.length; i++)
+                values[i] = Double.longBitsToDouble(canonicalData[i]);
+            return values;
+        }
+    }
+}
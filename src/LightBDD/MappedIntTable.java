@@ -0,0 +1,84 @@
+package LightBDD;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An IntTable in a region of a memory-mapped file, mapped in 1GB blocks.
+ * Atomic access goes through a VarHandle view of each block, which supports
+ * compare-and-set on direct buffers.  The heap only holds the block table.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+final class MappedIntTable implements IntTable
+{
+    private static final int BLOCK_SHIFT = 28; // 2^28 ints, 1GB per block
+    private static final long BLOCK_MASK = (1L << BLOCK_SHIFT) - 1;
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    
+    private final long size;
+    private final MappedByteBuffer[] blocks;
+    
+    /**
+     * Map size ints of channel's file from offset, which must be a multiple
+     * of 4, and zero them.
+     */
+    MappedIntTable(FileChannel channel, long offset, long size) throws IOException
+    {
+        this.size = size;
+        this.blocks = new MappedByteBuffer[(int)((size + BLOCK_MASK) >>> BLOCK_SHIFT)];
+        for (int b = 0; b < blocks.length; b++)
+        {
+            long start = (long)b << BLOCK_SHIFT;
+            long ints = Math.min(BLOCK_MASK + 1, size - start);
+            blocks[b] = channel.map(FileChannel.MapMode.READ_WRITE, offset + 4 * start, 4 * ints);
+        }
+        clear();
+    }
+    
+    @Override
+    public long size()
+    {
+        return size;
+    }
+    
+    @Override
+    public int get(long i)
+    {
+        return (int)INTS.getVolatile((ByteBuffer)blocks[(int)(i >>> BLOCK_SHIFT)], (int)(i & BLOCK_MASK) << 2);
+    }
+    
+    @Override
+    public void set(long i, int value)
+    {
+        INTS.setVolatile((ByteBuffer)blocks[(int)(i >>> BLOCK_SHIFT)], (int)(i & BLOCK_MASK) << 2, value);
+    }
+    
+    @Override
+    public boolean compareAndSet(long i, int expect, int update)
+    {
+        return INTS.compareAndSet((ByteBuffer)blocks[(int)(i >>> BLOCK_SHIFT)], (int)(i & BLOCK_MASK) << 2, expect, update);
+    }
+    
+    @Override
+    public void clear()
+    {
+        byte[] zeroes = new byte[1 << 16];
+        for (MappedByteBuffer block : blocks)
+        {
+            for (int i = 0; i < block.capacity(); i += zeroes.length)
+                block.put(i, zeroes, 0, Math.min(zeroes.length, block.capacity() - i));
+        }
+    }
+    
+    void force()
+    {
+        for (MappedByteBuffer block : blocks)
+            block.force();
+    }
+}
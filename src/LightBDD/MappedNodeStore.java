@@ -0,0 +1,130 @@
+package LightBDD;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A NodeStore in a memory-mapped file, for diagrams with more nodes than fit
+ * on the heap.  Each node takes 12 bytes of file.  The file is mapped in
+ * fixed-size blocks (a single mapping can't exceed 2GB), and the operating
+ * system's page cache keeps the hot blocks in memory and writes the cold
+ * ones back, so the heap only holds the block table.  The engine's unique
+ * table goes in the same file, after the nodes (see newTable()).
+ * 
+ * Access is much faster when it's sequential, so compact with
+ * ConcurrentBDDEngine.gc(true) now and then: it lays the surviving nodes out
+ * level by level, in the order apply visits them.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class MappedNodeStore implements NodeStore, Closeable
+{
+    private static final int INTS_PER_NODE = 3;
+    private static final int BLOCK_SHIFT = 26; // 2^26 nodes, 768MB per block
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+    
+    private final int capacity;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] mappings;
+    private final IntBuffer[] blocks;
+    private final ArrayList<MappedIntTable> tables = new ArrayList<MappedIntTable>();
+    private long tableOffset;
+    
+    /**
+     * Map capacity nodes' worth of file, creating or growing it if need be.
+     * Nothing in the file is kept: the engine starts from empty.
+     */
+    public MappedNodeStore(Path file, int capacity) throws IOException
+    {
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int numBlocks = (int)(((long)capacity + BLOCK_MASK) >>> BLOCK_SHIFT);
+        this.mappings = new MappedByteBuffer[numBlocks];
+        this.blocks = new IntBuffer[numBlocks];
+        long blockBytes = (long)INTS_PER_NODE * 4 << BLOCK_SHIFT;
+        for (int b = 0; b < numBlocks; b++)
+        {
+            long start = b * blockBytes;
+            long size = Math.min(blockBytes, (long)capacity * INTS_PER_NODE * 4 - start);
+            mappings[b] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            blocks[b] = mappings[b].asIntBuffer();
+        }
+        this.tableOffset = (long)capacity * INTS_PER_NODE * 4;
+    }
+    
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+    
+    @Override
+    public int var(int u)
+    {
+        return blocks[u >>> BLOCK_SHIFT].get((u & BLOCK_MASK) * INTS_PER_NODE);
+    }
+    
+    @Override
+    public int low(int u)
+    {
+        return blocks[u >>> BLOCK_SHIFT].get((u & BLOCK_MASK) * INTS_PER_NODE + 1);
+    }
+    
+    @Override
+    public int high(int u)
+    {
+        return blocks[u >>> BLOCK_SHIFT].get((u & BLOCK_MASK) * INTS_PER_NODE + 2);
+    }
+    
+    @Override
+    public void set(int u, int var, int low, int high)
+    {
+        IntBuffer block = blocks[u >>> BLOCK_SHIFT];
+        int i = (u & BLOCK_MASK) * INTS_PER_NODE;
+        block.put(i, var);
+        block.put(i + 1, low);
+        block.put(i + 2, high);
+    }
+    
+    /**
+     * Map a table of size ints into the file, after the nodes and any
+     * tables made before it.
+     */
+    @Override
+    public synchronized IntTable newTable(long size)
+    {
+        try
+        {
+            MappedIntTable table = new MappedIntTable(channel, tableOffset, size);
+            tableOffset += 4 * size;
+            tables.add(table);
+            return table;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Flush the mapped blocks and close the file.  The store can't be used
+     * afterwards.  The mappings themselves are released when they're garbage
+     * collected.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        for (MappedByteBuffer m : mappings)
+            m.force();
+        for (MappedIntTable t : tables)
+            t.force();
+        channel.close();
+    }
+}
@@ -42,6 +42,11 @@ public class MultiBDD extends Executable
      *          the list, the ith output of f2 also becomes a new output of the composition.
      */
     public MultiBDD(MultiBDD f1, MultiBDD f2, CompositionMap inputMapping)
+    {
+        this(f1, f2, inputMapping, null);
+    }
+    
+    private MultiBDD(MultiBDD f1, MultiBDD f2, CompositionMap inputMapping, Budget budget)
     {
         bdds = new ArrayList<BDD>(10);
         ArrayList<BDD> newOutputs = new ArrayList(5);
@@ -50,7 +55,7 @@ public class MultiBDD extends Executable
         for (int i = 0; i < f1.getNumOutputs(); i++)
         {
             newOutputs.clear();
-            BDD f1NewOutput = compose(f1.bdds.get(i), f2, inputMapping, newOutputs);
+            BDD f1NewOutput = compose(f1.bdds.get(i), f2, inputMapping, newOutputs, budget);
             oldOutputs.add(f1NewOutput);
         }
         for (BDD b : newOutputs)
@@ -59,6 +64,26 @@ public class MultiBDD extends Executable
             this.bdds.add(b);
     }
     
+    /**
+     * Composition, giving up if the operation exceeds the given limits.  One
+     * node budget and one deadline cover the whole composition, across all
+     * outputs.
+     * 
+     * @throws BDDLimitExceededException The operands are unchanged and no
+     *          partial result is kept.
+     */
+    public static MultiBDD compose(MultiBDD f1, MultiBDD f2, CompositionMap inputMapping, BDDLimits limits) throws BDDLimitExceededException
+    {
+        try
+        {
+            return new MultiBDD(f1, f2, inputMapping, limits.begin());
+        }
+        catch (Budget.Exceeded e)
+        {
+            throw e.toChecked(limits);
+        }
+    }
+    
     /**
      * Builds a MultiBDD out of the specified function.
      */
@@ -72,7 +97,7 @@ public class MultiBDD extends Executable
     /**
      * Create one output of a composed function and add it to bdds.
      */
-    private BDD compose(BDD f1Output, MultiBDD f2, CompositionMap inputMapping, ArrayList<BDD> newOutputs)
+    private BDD compose(BDD f1Output, MultiBDD f2, CompositionMap inputMapping, ArrayList<BDD> newOutputs, Budget budget)
     {
         BDD f1NewOutput = new BDD(f1Output); // Deep copy to avoid side effects
         f1NewOutput.preConcatonateInputs(f2.getNumInputs());
@@ -97,7 +122,7 @@ public class MultiBDD extends Executable
                 else
                 {
                     target += f2.getNumInputs(); // The preConcatonateInputs() at the top of this function moves the target
-                    f1NewOutput = new BDD(target, f1NewOutput, f2Output, false); // Compose this output's contribution into f1Output
+                    f1NewOutput = new BDD(target, f1NewOutput, f2Output, false, budget); // Compose this output's contribution into f1Output
                     inputsNoLongerUsed.add(target);
                 }
             }
@@ -127,6 +152,32 @@ public class MultiBDD extends Executable
         return true;
     }
     
+    /**
+     * An immutable snapshot of every output, safe to share between threads.
+     */
+    public FrozenMultiBDD freeze()
+    {
+        return new FrozenMultiBDD(this);
+    }
+    
+    /**
+     * A dense truth table of this function, for O(1) evaluation.  At most
+     * LookupTable.MAX_INPUTS inputs.
+     */
+    public LookupTable toLookupTable()
+    {
+        return new LookupTable(this);
+    }
+    
+    /**
+     * Structural figures for all outputs together, counting the nodes they
+     * have in common once.
+     */
+    public BDDProfile profile()
+    {
+        return new BDDProfile(bdds);
+    }
+    
     /**
      * Execute the boolean function represented by this MultiBDD. 
      */
@@ -0,0 +1,276 @@
+package LightBDD;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A combinational circuit read from a netlist file: primary inputs, gates and
+ * primary outputs, with every signal identified by a dense number.  The
+ * readers (BlifReader, AigerReader) fill one in, and build() turns it into a
+ * MultiBDD one gate at a time with apply(), never enumerating a truth table.
+ * 
+ * Gates are built in a topological order of the outputs' fan-in cones, and a
+ * gate's BDD is dropped as soon as the last gate reading it has been built, so
+ * at any moment only the BDDs on the "frontier" of the circuit are live.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+class Netlist
+{
+    /**
+     * A gate drives one signal from the signals in fanins.
+     */
+    static abstract class Gate
+    {
+        final int[] fanins;
+        
+        Gate(int[] fanins)
+        {
+            this.fanins = fanins;
+        }
+        
+        /**
+         * @param faninValues faninValues[i] is the BDD of signal fanins[i].
+         */
+        abstract BDD build(BDD[] faninValues, int numInputs);
+    }
+    
+    /**
+     * Two-input AND with optionally inverted inputs, as in an and-inverter
+     * graph.
+     */
+    static final class AndGate extends Gate
+    {
+        private final boolean[] inverted;
+        
+        AndGate(int fanin0, boolean inverted0, int fanin1, boolean inverted1)
+        {
+            super(new int[] { fanin0, fanin1 });
+            this.inverted = new boolean[] { inverted0, inverted1 };
+        }
+        
+        @Override
+        BDD build(BDD[] faninValues, int numInputs)
+        {
+            final boolean inv0 = inverted[0];
+            final boolean inv1 = inverted[1];
+            BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return ((x^inv0) & (y^inv1)); }};
+            return new BDD(and, faninValues[0], faninValues[1]);
+        }
+    }
+    
+    /**
+     * Sum-of-products cover, as in a BLIF ".names" block.  Each cube is a
+     * string over {0, 1, -} with one character per fanin.  If onSet is false
+     * the cubes describe where the gate's output is false.
+     */
+    static final class CoverGate extends Gate
+    {
+        private final ArrayList<String> cubes;
+        private final boolean onSet;
+        
+        CoverGate(int[] fanins, ArrayList<String> cubes, boolean onSet)
+        {
+            super(fanins);
+            this.cubes = cubes;
+            this.onSet = onSet;
+        }
+        
+        @Override
+        BDD build(BDD[] faninValues, int numInputs)
+        {
+            final BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+            final BooleanOperator andNot = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&!y); }};
+            final BooleanOperator or = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x|y); }};
+            BDD cover = BDD.constant(numInputs, false);
+            for (String cube : cubes)
+            {
+                BDD product = BDD.constant(numInputs, true);
+                for (int i = 0; i < fanins.length; i++)
+                {
+                    char c = cube.charAt(i);
+                    if (c == '1')
+                        product = new BDD(and, product, faninValues[i]);
+                    else if (c == '0')
+                        product = new BDD(andNot, product, faninValues[i]);
+                }
+                cover = new BDD(or, cover, product);
+            }
+            return (onSet ? cover : new BDD(cover, true));
+        }
+    }
+    
+    /**
+     * Drives a signal with a constant.
+     */
+    static final class ConstantGate extends Gate
+    {
+        private final boolean value;
+        
+        ConstantGate(boolean value)
+        {
+            super(new int[0]);
+            this.value = value;
+        }
+        
+        @Override
+        BDD build(BDD[] faninValues, int numInputs)
+        {
+            return BDD.constant(numInputs, value);
+        }
+    }
+    
+    private final ArrayList<String> names = new ArrayList<String>();
+    private final ArrayList<Gate> drivers = new ArrayList<Gate>();
+    private final ArrayList<Integer> inputs = new ArrayList<Integer>();
+    private final BitSet isInput = new BitSet();
+    private final ArrayList<Integer> outputs = new ArrayList<Integer>();
+    private final ArrayList<Boolean> outputInverted = new ArrayList<Boolean>();
+    
+    /**
+     * @return The number of a new signal, not yet driven by anything.
+     */
+    int addSignal(String name)
+    {
+        names.add(name);
+        drivers.add(null);
+        return names.size() - 1;
+    }
+    
+    int getNumSignals()
+    {
+        return names.size();
+    }
+    
+    String getName(int signal)
+    {
+        return names.get(signal);
+    }
+    
+    void addInput(int signal)
+    {
+        inputs.add(signal);
+        isInput.set(signal);
+    }
+    
+    void addOutput(int signal, boolean inverted)
+    {
+        outputs.add(signal);
+        outputInverted.add(inverted);
+    }
+    
+    boolean isDriven(int signal)
+    {
+        return (drivers.get(signal) != null || isInput.get(signal));
+    }
+    
+    void setDriver(int signal, Gate gate)
+    {
+        drivers.set(signal, gate);
+    }
+    
+    /**
+     * Build one BDD per primary output, over the primary inputs in the order
+     * they were added.
+     * 
+     * @throws ParseException If a signal in an output's fan-in cone has no
+     *          driver, or the circuit has a combinational loop.
+     */
+    MultiBDD build() throws ParseException
+    {
+        int numSignals = names.size();
+        int numInputs = inputs.size();
+        BDD[] values = new BDD[numSignals];
+        for (int i = 0; i < numInputs; i++)
+            values[inputs.get(i)] = BDD.variable(numInputs, i);
+        
+        int[] schedule = schedule();
+        
+        // Fan-out counts, so each BDD can be released after its last reader
+        int[] remainingReaders = new int[numSignals];
+        for (int signal : schedule)
+        {
+            for (int fanin : drivers.get(signal).fanins)
+                remainingReaders[fanin]++;
+        }
+        for (int signal : outputs)
+            remainingReaders[signal]++;
+        
+        for (int signal : schedule)
+        {
+            Gate gate = drivers.get(signal);
+            BDD[] faninValues = new BDD[gate.fanins.length];
+            for (int i = 0; i < gate.fanins.length; i++)
+                faninValues[i] = values[gate.fanins[i]];
+            values[signal] = gate.build(faninValues, numInputs);
+            for (int fanin : gate.fanins)
+            {
+                if (--remainingReaders[fanin] == 0)
+                    values[fanin] = null;
+            }
+        }
+        
+        ArrayList<BDD> bdds = new ArrayList<BDD>(outputs.size());
+        for (int i = 0; i < outputs.size(); i++)
+        {
+            BDD value = values[outputs.get(i)];
+            bdds.add(outputInverted.get(i) ? new BDD(value, true) : new BDD(value));
+        }
+        return new MultiBDD(bdds);
+    }
+    
+    /**
+     * Order the gates in the outputs' fan-in cones so that every gate comes
+     * after its fanins.  Iterative DFS, so deep circuits don't overflow the
+     * stack.
+     */
+    private int[] schedule() throws ParseException
+    {
+        final byte UNVISITED = 0, ON_PATH = 1, DONE = 2;
+        int numSignals = names.size();
+        byte[] state = new byte[numSignals];
+        for (int signal : inputs)
+            state[signal] = DONE;
+        IntStack order = new IntStack();
+        IntStack work = new IntStack(); // (signal, next fanin to visit) pairs
+        for (int output : outputs)
+        {
+            if (state[output] == DONE)
+                continue;
+            work.push(output);
+            work.push(0);
+            while (!work.isEmpty())
+            {
+                int nextFanin = work.pop();
+                int signal = work.pop();
+                Gate gate = drivers.get(signal);
+                if (gate == null)
+                    throw new ParseException("Signal '" + names.get(signal) + "' is used but never driven", 0);
+                state[signal] = ON_PATH;
+                if (nextFanin < gate.fanins.length)
+                {
+                    work.push(signal);
+                    work.push(nextFanin + 1);
+                    int fanin = gate.fanins[nextFanin];
+                    if (state[fanin] == ON_PATH)
+                        throw new ParseException("Combinational loop through '" + names.get(fanin) + "'", 0);
+                    if (state[fanin] == UNVISITED)
+                    {
+                        work.push(fanin);
+                        work.push(0);
+                    }
+                }
+                else
+                {
+                    state[signal] = DONE;
+                    order.push(signal);
+                }
+            }
+        }
+        int[] schedule = new int[order.size()];
+        for (int i = schedule.length - 1; i >= 0; i--)
+            schedule[i] = order.pop();
+        return schedule;
+    }
+}
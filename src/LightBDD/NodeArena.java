@@ -0,0 +1,124 @@
+package LightBDD;
+
+import java.util.Arrays;
+
+/**
+ * Scratch node store for building a diagram whose terminals carry a value,
+ * like MTBDD's and HybridBDD's.  Nodes are unique by (var, low, high), so the
+ * diagram is reduced as it's built; terminals have var == numInputs and a
+ * 64-bit datum, and subclasses decide which terminals are the same.
+ *
+ * When the diagram is done, canonical() copies out the part that's reachable,
+ * in the order the diagrams keep their nodes in.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+class NodeArena
+{
+    final int numInputs;
+    int[] var = new int[16];
+    int[] low = new int[16];
+    int[] high = new int[16];
+    long[] data = new long[16];
+    int size = 0;
+    private final LongIntMap[] unique;
+    long[] canonicalData;
+
+    /**
+     * @param numLevels Number of inputs that can have nodes: mk() is only
+     *          called for inputs below it.
+     */
+    NodeArena(int numInputs, int numLevels)
+    {
+        this.numInputs = numInputs;
+        this.unique = new LongIntMap[numLevels];
+    }
+
+    int mk(int v, int l, int h)
+    {
+        if (l == h)
+            return l;
+        if (unique[v] == null)
+            unique[v] = new LongIntMap();
+        long key = LongIntMap.pack(l, h);
+        int u = unique[v].get(key);
+        if (u >= 0)
+            return u;
+        u = add(v, l, h);
+        unique[v].put(key, u);
+        return u;
+    }
+
+    /**
+     * A new terminal holding d, whether or not there's one already.
+     */
+    int addTerminal(long d)
+    {
+        int u = add(numInputs, -1, -1);
+        data[u] = d;
+        return u;
+    }
+
+    private int add(int v, int l, int h)
+    {
+        if (size == var.length)
+        {
+            var = Arrays.copyOf(var, 2 * size);
+            low = Arrays.copyOf(low, 2 * size);
+            high = Arrays.copyOf(high, 2 * size);
+            data = Arrays.copyOf(data, 2 * size);
+        }
+        var[size] = v;
+        low[size] = l;
+        high[size] = h;
+        return size++;
+    }
+
+    /**
+     * The nodes reachable from root, renumbered in canonical order (depth
+     * first, low before high, children before parents) with root last.  The
+     * terminals' data go in canonicalData.
+     */
+    int[][] canonical(int root)
+    {
+        int[] number = new int[size];
+        Arrays.fill(number, -1);
+        int[] v = new int[size];
+        int[] l = new int[size];
+        int[] h = new int[size];
+        long[] d = new long[size];
+        int next = 0;
+        IntStack work = new IntStack();
+        work.push(root);
+        while (!work.isEmpty())
+        {
+            int u = work.peek();
+            if (number[u] >= 0)
+            {
+                work.pop();
+                continue;
+            }
+            if (var[u] != numInputs)
+            {
+                if (number[low[u]] < 0)
+                {
+                    work.push(low[u]);
+                    continue;
+                }
+                if (number[high[u]] < 0)
+                {
+                    work.push(high[u]);
+                    continue;
+                }
+            }
+            work.pop();
+            v[next] = var[u];
+            l[next] = (var[u] == numInputs ? -1 : number[low[u]]);
+            h[next] = (var[u] == numInputs ? -1 : number[high[u]]);
+            d[next] = data[u];
+            number[u] = next++;
+        }
+        canonicalData = Arrays.copyOf(d, next);
+        return new int[][] { Arrays.copyOf(v, next), Arrays.copyOf(l, next), Arrays.copyOf(h, next) };
+    }
+}
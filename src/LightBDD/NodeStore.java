@@ -0,0 +1,38 @@
+package LightBDD;
+
+/**
+ * Where a ConcurrentBDDEngine keeps its nodes: a fixed number of slots,
+ * each holding an input index and the indices of the low and high children.
+ * 
+ * A slot is written once by the thread that allocated it, before the node is
+ * published in the unique table, and only read after that (except by gc(),
+ * which has the engine to itself).  Implementations need no locking of their
+ * own, only reads and writes of distinct slots that don't interfere.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public interface NodeStore
+{
+    /**
+     * Number of slots.
+     */
+    public int capacity();
+    
+    public int var(int u);
+    
+    public int low(int u);
+    
+    public int high(int u);
+    
+    public void set(int u, int var, int low, int high);
+    
+    /**
+     * A zeroed IntTable of the given size, for the engine's unique table.
+     * Stores that live off the heap should put it off the heap too: it's
+     * about as big as the store.  By default it's on the heap.
+     */
+    public default IntTable newTable(long size)
+    {
+        return new HeapIntTable(size);
+    }
+}
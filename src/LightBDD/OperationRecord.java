@@ -0,0 +1,91 @@
+package LightBDD;
+
+/**
+ * Counters for one running operation.  A BDD under construction holds one of
+ * these while its kernel runs, and hands it to BDDStats and the Flight
+ * Recorder when it finishes.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+final class OperationRecord
+{
+    final BDDStats.Operation operation;
+    private final long startTime;
+    private final BDDOperationEvent event;
+    long cacheLookups;
+    long cacheHits;
+    long uniqueLookups;
+    long uniqueHits;
+    
+    private OperationRecord(BDDStats.Operation operation, BDDOperationEvent event)
+    {
+        this.operation = operation;
+        this.event = event;
+        this.startTime = System.nanoTime();
+        event.begin();
+    }
+    
+    /**
+     * Returns null if neither BDDStats nor the Flight Recorder event is
+     * enabled, so that kernels only pay for a null check.
+     */
+    static OperationRecord start(BDDStats.Operation operation)
+    {
+        BDDOperationEvent event = new BDDOperationEvent();
+        if (!BDDStats.isEnabled() && !event.isEnabled())
+            return null;
+        return new OperationRecord(operation, event);
+    }
+    
+    void cacheLookup(boolean hit)
+    {
+        cacheLookups++;
+        if (hit)
+            cacheHits++;
+    }
+    
+    void uniqueLookup(boolean hit)
+    {
+        uniqueLookups++;
+        if (hit)
+            uniqueHits++;
+    }
+    
+    void finish(BDDTree result)
+    {
+        long elapsed = System.nanoTime() - startTime;
+        int resultNodes = result.getNumNodes();
+        if (BDDStats.isEnabled())
+            BDDStats.getGlobal().record(this, elapsed, resultNodes);
+        commit(result, resultNodes, false);
+    }
+    
+    /**
+     * For an operation whose kernel threw (e.g. Budget.Exceeded).  It's
+     * counted apart from the completed calls, and the event is committed with
+     * aborted set and no result.
+     */
+    void abort(BDDTree partial)
+    {
+        if (BDDStats.isEnabled())
+            BDDStats.getGlobal().recordAborted(this);
+        commit(partial, 0, true);
+    }
+    
+    private void commit(BDDTree tree, int resultNodes, boolean aborted)
+    {
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.operation = operation.name();
+            event.numInputs = (tree == null ? 0 : tree.getNumInputs());
+            event.resultNodes = resultNodes;
+            event.aborted = aborted;
+            event.cacheLookups = cacheLookups;
+            event.cacheHits = cacheHits;
+            event.uniqueLookups = uniqueLookups;
+            event.uniqueHits = uniqueHits;
+            event.commit();
+        }
+    }
+}
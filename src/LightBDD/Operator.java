@@ -0,0 +1,102 @@
+package LightBDD;
+
+/**
+ * The common two-input operators.  Any BooleanOperator can be passed to
+ * apply(), but these have names, and their truth tables are known without
+ * calling operate().
+ * 
+ * A truth table is a 4-bit int whose bit (2x + y) is operate(x, y).  apply()
+ * derives it for every operator, built-in or not, and uses it to stop
+ * recursing as soon as one operand decides the result.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public enum Operator implements BooleanOperator
+{
+    AND(8),     // 1000
+    OR(14),     // 1110
+    XOR(6),     // 0110
+    NAND(7),    // 0111
+    NOR(1),     // 0001
+    IMPLIES(11),// 1011: x -> y
+    XNOR(9),    // 1001
+    DIFF(4);    // 0100: x & !y
+    
+    private final int table;
+    
+    private Operator(int table)
+    {
+        this.table = table;
+    }
+    
+    @Override
+    public boolean operate(boolean x, boolean y)
+    {
+        return ((table >> ((x ? 2 : 0) + (y ? 1 : 0))) & 1) != 0;
+    }
+    
+    public int truthTable()
+    {
+        return table;
+    }
+    
+    /**
+     * True if swapping the operands never changes the result.
+     */
+    public boolean isCommutative()
+    {
+        return isCommutative(table);
+    }
+    
+    /**
+     * The truth table of any operator, found by calling it on all four
+     * input pairs if it isn't one of ours.
+     */
+    public static int truthTable(BooleanOperator op)
+    {
+        if (op instanceof Operator)
+            return ((Operator)op).table;
+        int table = 0;
+        for (int x = 0; x < 2; x++)
+        {
+            for (int y = 0; y < 2; y++)
+            {
+                if (op.operate(x == 1, y == 1))
+                    table |= 1 << (2 * x + y);
+            }
+        }
+        return table;
+    }
+    
+    static boolean isCommutative(int table)
+    {
+        return (((table >> 1) ^ (table >> 2)) & 1) == 0;
+    }
+    
+    /**
+     * The result, as a function of y, of op(x, y) with x fixed to value.
+     * Bit 0 is the result for y false, bit 1 for y true, so 0 and 3 are the
+     * constants false and true, 2 is y itself and 1 is !y.
+     */
+    static int fixFirst(int table, boolean value)
+    {
+        return (table >> (value ? 2 : 0)) & 3;
+    }
+    
+    /**
+     * Like fixFirst(), but with y fixed to value, as a function of x.
+     */
+    static int fixSecond(int table, boolean value)
+    {
+        int shifted = table >> (value ? 1 : 0);
+        return (shifted & 1) | ((shifted >> 1) & 2);
+    }
+    
+    /**
+     * Like fixFirst(), but for op(x, x).
+     */
+    static int diagonal(int table)
+    {
+        return (table & 1) | ((table >> 2) & 2);
+    }
+}
@@ -0,0 +1,335 @@
+package LightBDD;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Symbolic reachability over a conjunctively partitioned transition
+ * relation.  State bit i is the pair of inputs 2i (current state) and 2i+1
+ * (next state), interleaved so that renaming between the two only moves
+ * each node one level.  Any free inputs (e.g. the primary inputs of a
+ * circuit) come after the state bits, and are quantified away by image and
+ * preimage along with the state bits being left.
+ *
+ * The relation is kept as a list of partitions whose conjunction is never
+ * built.  Before the first image, the partitions are ordered so that inputs
+ * can be quantified as early as possible, and neighbours are conjoined into
+ * clusters while they stay under a node budget (Ranjan et al., "Efficient
+ * BDD Algorithms for FSM Synthesis and Verification," IWLS 1995).  Each
+ * image step is then one relational product per cluster, quantifying the
+ * inputs no later cluster mentions.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public class ReachabilityEngine
+{
+    private final int numStateBits;
+    private final int numInputs;
+    private final ArrayList<BDD> partitions = new ArrayList<BDD>();
+    private int clusterThreshold = 1000;
+    private Schedule imageSchedule;
+    private Schedule preimageSchedule;
+    private int iterations;
+
+    /**
+     * @param numStateBits Number of state bits, each with a current and a
+     *          next state input.
+     * @param numFreeInputs Number of inputs after the state bits that are
+     *          neither, and are quantified by every image and preimage.
+     */
+    public ReachabilityEngine(int numStateBits, int numFreeInputs)
+    {
+        this.numStateBits = numStateBits;
+        this.numInputs = 2 * numStateBits + numFreeInputs;
+    }
+
+    public ReachabilityEngine(int numStateBits)
+    {
+        this(numStateBits, 0);
+    }
+
+    /**
+     * The input for state bit i in the current state.
+     */
+    public int current(int i)
+    {
+        assert(i < numStateBits);
+        return 2 * i;
+    }
+
+    /**
+     * The input for state bit i in the next state.
+     */
+    public int next(int i)
+    {
+        assert(i < numStateBits);
+        return 2 * i + 1;
+    }
+
+    /**
+     * The input for free input i.
+     */
+    public int free(int i)
+    {
+        assert(2 * numStateBits + i < numInputs);
+        return 2 * numStateBits + i;
+    }
+
+    /**
+     * Number of inputs every BDD given to or returned by the engine has.
+     */
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * Add one conjunct of the transition relation, a function of current
+     * state, next state and free inputs.
+     */
+    public void addPartition(BDD t)
+    {
+        assert(t.getNumInputs() == numInputs);
+        partitions.add(t);
+        imageSchedule = null;
+        preimageSchedule = null;
+    }
+
+    /**
+     * Largest cluster (in nodes) that neighbouring partitions are conjoined
+     * into.  0 keeps every partition separate.
+     */
+    public void setClusterThreshold(int nodes)
+    {
+        this.clusterThreshold = nodes;
+        imageSchedule = null;
+        preimageSchedule = null;
+    }
+
+    /**
+     * The states reachable in one step from states, a function of the
+     * current state inputs.  The result is over the current state inputs
+     * too.
+     */
+    public BDD image(BDD states)
+    {
+        if (imageSchedule == null)
+            imageSchedule = new Schedule(true);
+        return toCurrent(imageSchedule.apply(states));
+    }
+
+    /**
+     * The states that reach some state in states in one step.  Both are
+     * over the current state inputs.
+     */
+    public BDD preimage(BDD states)
+    {
+        if (preimageSchedule == null)
+            preimageSchedule = new Schedule(false);
+        return preimageSchedule.apply(toNext(states));
+    }
+
+    /**
+     * All states reachable from init, by breadth-first fixpoint.  Each step
+     * takes the image of a frontier rather than of everything reached so
+     * far: any set between the new states and the reached set will do, so
+     * the new states are restricted to the unreached region, and whichever
+     * of the two is smaller is used.
+     */
+    public BDD reachable(BDD init)
+    {
+        return fixpoint(init, true);
+    }
+
+    /**
+     * All states from which some state in target can be reached.
+     */
+    public BDD backwardReachable(BDD target)
+    {
+        return fixpoint(target, false);
+    }
+
+    private BDD fixpoint(BDD start, boolean forward)
+    {
+        BDD reached = start;
+        BDD frontier = start;
+        iterations = 0;
+        while (true)
+        {
+            BDD step = (forward ? image(frontier) : preimage(frontier));
+            BDD fresh = new BDD(Operator.DIFF, step, reached);
+            if (fresh.isConstant() && !fresh.execute(new boolean[numInputs])[0])
+                return reached;
+            iterations++;
+            BDD unreached = new BDD(reached, true);
+            reached = new BDD(Operator.OR, reached, fresh);
+            BDD simplified = fresh.restrict(unreached);
+            frontier = (simplified.profile().getNumNodes() < fresh.profile().getNumNodes() ? simplified : fresh);
+        }
+    }
+
+    /**
+     * Number of steps the last reachable() or backwardReachable() took to
+     * reach its fixpoint.
+     */
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    /**
+     * Rename next state inputs to current state inputs.  f must not depend
+     * on current state inputs.
+     */
+    public BDD toCurrent(BDD f)
+    {
+        return f.replace(swap());
+    }
+
+    /**
+     * Rename current state inputs to next state inputs.  f must not depend
+     * on next state inputs.
+     */
+    public BDD toNext(BDD f)
+    {
+        return f.replace(swap());
+    }
+
+    /* Exchanges each current state input with its next state input.  On a
+     * function of only one of the two, this keeps the order of its inputs. */
+    private int[] swap()
+    {
+        int[] permutation = new int[numInputs];
+        for (int i = 0; i < numInputs; i++)
+            permutation[i] = i;
+        for (int i = 0; i < numStateBits; i++)
+        {
+            permutation[2 * i] = 2 * i + 1;
+            permutation[2 * i + 1] = 2 * i;
+        }
+        return permutation;
+    }
+
+    /**
+     * The clusters in the order they're applied, and which inputs each
+     * one's relational product quantifies.
+     */
+    private class Schedule
+    {
+        final ArrayList<BDD> clusters = new ArrayList<BDD>();
+        final ArrayList<int[]> quantify = new ArrayList<int[]>();
+        final BitSet toQuantify = new BitSet();
+        /* Quantified inputs no cluster mentions, for the first product. */
+        final int[] argumentOnly;
+
+        Schedule(boolean forward)
+        {
+            // Image leaves the current state, preimage the next state.
+            for (int i = 0; i < numStateBits; i++)
+                toQuantify.set(forward ? current(i) : next(i));
+            toQuantify.set(2 * numStateBits, numInputs);
+
+            List<BDD> ordered = order(partitions);
+            for (BDD t : ordered)
+            {
+                int last = clusters.size() - 1;
+                if (last >= 0)
+                {
+                    BDD merged = new BDD(Operator.AND, clusters.get(last), t);
+                    if (merged.profile().getNumNodes() <= clusterThreshold)
+                    {
+                        clusters.set(last, merged);
+                        continue;
+                    }
+                }
+                clusters.add(t);
+            }
+
+            // An input is quantified by the last cluster that mentions it.
+            BitSet later = new BitSet();
+            int[][] q = new int[clusters.size()][];
+            for (int c = clusters.size() - 1; c >= 0; c--)
+            {
+                BitSet support = clusters.get(c).profile().getSupport();
+                support.and(toQuantify);
+                support.andNot(later);
+                q[c] = support.stream().toArray();
+                later.or(clusters.get(c).profile().getSupport());
+            }
+            for (int[] inputs : q)
+                quantify.add(inputs);
+            // Inputs only the argument mentions go with the first product.
+            BitSet onlyArgument = (BitSet)toQuantify.clone();
+            onlyArgument.andNot(later);
+            this.argumentOnly = onlyArgument.stream().toArray();
+        }
+
+        /**
+         * Greedy early quantification order: repeatedly take the partition
+         * that lets the most quantified inputs go (those no other remaining
+         * partition mentions) for the fewest new inputs brought in.
+         */
+        private List<BDD> order(List<BDD> remaining)
+        {
+            ArrayList<BDD> left = new ArrayList<BDD>(remaining);
+            ArrayList<BitSet> supports = new ArrayList<BitSet>();
+            for (BDD t : left)
+                supports.add(t.profile().getSupport());
+            ArrayList<BDD> ordered = new ArrayList<BDD>();
+            BitSet introduced = new BitSet();
+            while (!left.isEmpty())
+            {
+                int best = -1;
+                int bestScore = Integer.MIN_VALUE;
+                for (int j = 0; j < left.size(); j++)
+                {
+                    BitSet mentionedElsewhere = new BitSet();
+                    for (int k = 0; k < left.size(); k++)
+                    {
+                        if (k != j)
+                            mentionedElsewhere.or(supports.get(k));
+                    }
+                    BitSet freed = (BitSet)supports.get(j).clone();
+                    freed.and(toQuantify);
+                    freed.andNot(mentionedElsewhere);
+                    BitSet added = (BitSet)supports.get(j).clone();
+                    added.andNot(introduced);
+                    int score = freed.cardinality() - added.cardinality();
+                    if (score > bestScore)
+                    {
+                        best = j;
+                        bestScore = score;
+                    }
+                }
+                introduced.or(supports.get(best));
+                ordered.add(left.remove(best));
+                supports.remove(best);
+            }
+            return ordered;
+        }
+
+        BDD apply(BDD states)
+        {
+            if (clusters.isEmpty())
+                return states.exists(toQuantify.stream().toArray());
+            BDD result = states;
+            for (int c = 0; c < clusters.size(); c++)
+            {
+                int[] inputs = quantify.get(c);
+                if (c == 0 && argumentOnly.length > 0)
+                    inputs = concat(inputs, argumentOnly);
+                result = BDD.andExists(result, clusters.get(c), inputs);
+            }
+            return result;
+        }
+    }
+
+    private static int[] concat(int[] x, int[] y)
+    {
+        int[] xy = new int[x.length + y.length];
+        System.arraycopy(x, 0, xy, 0, x.length);
+        System.arraycopy(y, 0, xy, x.length, y.length);
+        return xy;
+    }
+}
@@ -2,6 +2,7 @@ package LightBDD;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 import static org.junit.Assert.*;
 
 /**
@@ -40,6 +41,21 @@ public class Util
         }
     }
     
+    /**
+     * A random function of n inputs, built gate by gate: a random literal,
+     * then gates random operators each with another random literal.
+     */
+    public static BDD randomFunction(int n, int gates, Random random)
+    {
+        Operator[] ops = { Operator.AND, Operator.OR, Operator.XOR, Operator.NAND, Operator.DIFF };
+        BDD f = BDD.variable(n, random.nextInt(n));
+        for (int g = 0; g < gates; g++)
+        {
+            BDD literal = BDD.variable(n, random.nextInt(n));
+            f = new BDD(ops[random.nextInt(ops.length)], f, literal);
+        }
+        return f;
+    }
     
     /** Deep array comparison for booleans.
      *  
@@ -0,0 +1,536 @@
+package LightBDD;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Zero-suppressed Binary Decision Diagram: a family of subsets of the inputs
+ * {0, ..., numInputs-1}.  A set is in the family iff execute() is true for
+ * the input string that has exactly that set's elements true.
+ *
+ * ZDDs use the same node store as BDDs, but a different reduction rule: a
+ * node whose high child is the empty family is dropped, rather than one
+ * whose children are equal.  An input missing from a path therefore means
+ * "not in the set" instead of "don't care," so a family of sparse sets needs
+ * no nodes for the elements its sets leave out.  See Minato, "Zero-Suppressed
+ * BDDs for Set Manipulation in Combinatorial Problems," DAC 1993.
+ *
+ * Terminal 0 is the empty family and terminal 1 is the family holding only
+ * the empty set.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public class ZDD extends Executable
+{
+    /* If you add fields, don't forget to update the copy constructor! */
+    private BDDTree tree;
+
+    private static final int UNION = 0;
+    private static final int INTERSECT = 1;
+    private static final int DIFF = 2;
+    private static final int JOIN = 3;
+    /* Memos for the operations, only set while a constructor is running. */
+    private LongIntMap[] memos;
+
+    /**
+     * Manual constructor.  The tree must already be zero-suppressed: no node
+     * may have the false terminal as its high child.
+     */
+    public ZDD(BDDTree tree)
+    {
+        this.tree = tree;
+    }
+
+    /**
+     * Deep copy constructor
+     */
+    public ZDD(ZDD x)
+    {
+        this.tree = new BDDTree(x.tree);
+    }
+
+    /**
+     * The family of sets for which f is true.
+     */
+    public ZDD(BDD f)
+    {
+        BDDTree fTree = f.getTree();
+        int n = fTree.getNumInputs();
+        this.tree = new BDDTree(n);
+        /* conv(u, i) is the family for f's node u, over inputs i and up.  An
+         * input f skips is a don't care, so it becomes a node with two equal
+         * children.  Work items are (u, i, stage) triples. */
+        LongIntMap memo = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(fTree.getRootIndex(), 0, 0);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int i = work.pop();
+            int u = work.pop();
+            Node node = fTree.getNode(u);
+            int var = fTree.getInputIndex(u);
+            if (stage == 1)
+            {
+                int high = results.pop();
+                int low = (var == i ? results.pop() : high);
+                int output = mk(low, high, i);
+                memo.put(LongIntMap.pack(u, i), output);
+                results.push(output);
+                continue;
+            }
+            if (i == n)
+            {
+                results.push(node.terminalValue ? 1 : 0);
+                continue;
+            }
+            int cached = memo.get(LongIntMap.pack(u, i));
+            if (cached >= 0)
+            {
+                results.push(cached);
+                continue;
+            }
+            work.push(u, i, 1);
+            if (var == i)
+            {
+                work.push(node.high, i + 1, 0);
+                work.push(node.low, i + 1, 0);
+            }
+            else
+                work.push(u, i + 1, 0);
+        }
+        tree.setRootIndex(results.pop());
+    }
+
+    /**
+     * Build the union, intersection, difference or join of x and y in a
+     * scratch tree, then copy out the reachable part.
+     */
+    private ZDD(int op, ZDD x, ZDD y)
+    {
+        assert(x.getNumInputs() == y.getNumInputs());
+        this.tree = new BDDTree(x.getNumInputs());
+        this.memos = new LongIntMap[4];
+        int xRoot = importNode(x.tree, x.tree.getRootIndex());
+        int yRoot = importNode(y.tree, y.tree.getRootIndex());
+        int root = apply(op, xRoot, yRoot);
+        this.memos = null;
+        BDDTree scratch = this.tree;
+        this.tree = new BDDTree(scratch.getNumInputs());
+        tree.setRootIndex(importNode(scratch, root));
+    }
+
+    /**
+     * The empty family.
+     */
+    public static ZDD empty(int numInputs)
+    {
+        BDDTree tree = new BDDTree(numInputs);
+        tree.setRootIndex(0);
+        return new ZDD(tree);
+    }
+
+    /**
+     * The family holding only the empty set.
+     */
+    public static ZDD base(int numInputs)
+    {
+        return new ZDD(new BDDTree(numInputs));
+    }
+
+    /**
+     * The family holding only the given set.
+     */
+    public static ZDD singleton(int numInputs, int... elements)
+    {
+        int[] sorted = elements.clone();
+        Arrays.sort(sorted);
+        ZDD result = base(numInputs);
+        int z = 1;
+        for (int i = sorted.length - 1; i >= 0; i--)
+        {
+            assert(sorted[i] < numInputs);
+            if (i + 1 < sorted.length && sorted[i] == sorted[i + 1])
+                continue;
+            z = result.mk(0, z, sorted[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Sets in either family.
+     */
+    public ZDD union(ZDD y)
+    {
+        return new ZDD(UNION, this, y);
+    }
+
+    /**
+     * Sets in both families.
+     */
+    public ZDD intersect(ZDD y)
+    {
+        return new ZDD(INTERSECT, this, y);
+    }
+
+    /**
+     * Sets in this family but not in y.
+     */
+    public ZDD diff(ZDD y)
+    {
+        return new ZDD(DIFF, this, y);
+    }
+
+    /**
+     * Every union of a set in this family with a set in y.
+     */
+    public ZDD join(ZDD y)
+    {
+        return new ZDD(JOIN, this, y);
+    }
+
+    /**
+     * Number of sets in the family.
+     */
+    public BigInteger count()
+    {
+        BigInteger[] counts = new BigInteger[tree.getNumNodes()];
+        for (int i : tree.postOrder(tree.getRootIndex()))
+        {
+            Node u = tree.getNode(i);
+            if (u.isTerminal())
+                counts[i] = (u.terminalValue ? BigInteger.ONE : BigInteger.ZERO);
+            else
+                counts[i] = counts[u.low].add(counts[u.high]);
+        }
+        return counts[tree.getRootIndex()];
+    }
+
+    /**
+     * The characteristic function of the family.
+     */
+    public BDD toBDD()
+    {
+        int n = tree.getNumInputs();
+        BDDTree bddTree = new BDDTree(n);
+        /* conv(z, i) is the function for node z over inputs i and up.  An
+         * input z skips is absent from every set, so it must be false.  Work
+         * items are (z, i, stage) triples. */
+        LongIntMap memo = new LongIntMap();
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(tree.getRootIndex(), 0, 0);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int i = work.pop();
+            int z = work.pop();
+            Node node = tree.getNode(z);
+            int var = tree.getInputIndex(z);
+            if (stage == 1)
+            {
+                int high = (var == i ? results.pop() : 0);
+                int low = results.pop();
+                int output = bddMk(bddTree, low, high, i);
+                memo.put(LongIntMap.pack(z, i), output);
+                results.push(output);
+                continue;
+            }
+            if (i == n)
+            {
+                results.push(node.terminalValue ? 1 : 0);
+                continue;
+            }
+            int cached = memo.get(LongIntMap.pack(z, i));
+            if (cached >= 0)
+            {
+                results.push(cached);
+                continue;
+            }
+            work.push(z, i, 1);
+            if (var == i)
+            {
+                work.push(node.high, i + 1, 0);
+                work.push(node.low, i + 1, 0);
+            }
+            else
+                work.push(z, i + 1, 0);
+        }
+        bddTree.setRootIndex(results.pop());
+        return new BDD(bddTree);
+    }
+
+    /**
+     * True iff the set whose elements are the true inputs is in the family.
+     */
+    @Override
+    public boolean[] execute(boolean[] input)
+    {
+        assert(input.length == tree.getNumInputs());
+        int z = tree.getRootIndex();
+        for (int i = 0; i < input.length; i++)
+        {
+            Node u = tree.getNode(z);
+            if (u.isTerminal() || tree.getInputIndex(z) > i)
+            { // i isn't in any of the remaining sets
+                if (input[i])
+                    return new boolean[] { false };
+            }
+            else
+                z = (input[i] ? u.high : u.low);
+        }
+        return new boolean[] { tree.getNode(z).terminalValue };
+    }
+
+    @Override
+    public int getNumInputs()
+    {
+        return tree.getNumInputs();
+    }
+
+    @Override
+    public int getNumOutputs()
+    {
+        return 1;
+    }
+
+    public BDDTree getTree()
+    {
+        return tree;
+    }
+
+    @Override
+    public boolean equals(Object reference)
+    {
+        if (! (reference instanceof ZDD))
+            return false;
+        return this.tree.equals(((ZDD)reference).tree);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 5;
+        hash = 41 * hash + (this.tree != null ? this.tree.hashCode() : 0);
+        return hash;
+    }
+
+    /* Stages of the work items in apply() */
+    private static final int EXPAND = 0;  // Not looked at yet
+    private static final int MK = 1;      // Waiting on low and high results
+    private static final int PASS = 2;    // Waiting on the one result that is ours
+    private static final int LITERAL = 3; // x is already the result
+    private static final int JOIN_MK = 4; // Waiting on the four sub-joins
+
+    /**
+     * The set operations, Minato (1993), run off an explicit stack of
+     * (x, y, stage) frames like BDD.applyLoop().  Both operands are in
+     * this.tree.  A join of two nodes on the same input needs unions of its
+     * sub-joins, which run as nested calls with their own stacks.
+     */
+    private int apply(int op, int xRoot, int yRoot)
+    {
+        if (memos[op] == null)
+            memos[op] = new LongIntMap();
+        LongIntMap memo = memos[op];
+        boolean commutative = (op != DIFF);
+        IntStack work = new IntStack();
+        IntStack results = new IntStack();
+        work.push(xRoot, yRoot, EXPAND);
+        while (!work.isEmpty())
+        {
+            int stage = work.pop();
+            int y = work.pop();
+            int x = work.pop();
+            if (stage == LITERAL)
+            {
+                results.push(x);
+                continue;
+            }
+            if (commutative && x > y)
+            { // So (x, y) and (y, x) share a memo entry
+                int t = x;
+                x = y;
+                y = t;
+            }
+            int xVar = top(x);
+            int yVar = top(y);
+            int var = Math.min(xVar, yVar);
+
+            if (stage != EXPAND)
+            {
+                int output;
+                if (stage == JOIN_MK)
+                {
+                    int lowHigh = results.pop();
+                    int highLow = results.pop();
+                    int highHigh = results.pop();
+                    int low = results.pop();
+                    output = mk(low, apply(UNION, highHigh, apply(UNION, highLow, lowHigh)), var);
+                }
+                else if (stage == PASS)
+                    output = results.pop();
+                else
+                {
+                    int high = results.pop();
+                    int low = results.pop();
+                    output = mk(low, high, var);
+                }
+                memo.put(LongIntMap.pack(x, y), output);
+                results.push(output);
+                continue;
+            }
+
+            int result = terminalCase(op, x, y);
+            if (result < 0)
+                result = memo.get(LongIntMap.pack(x, y));
+            if (result >= 0)
+            {
+                results.push(result);
+                continue;
+            }
+
+            Node xNode = tree.getNode(x);
+            Node yNode = tree.getNode(y);
+            if (xVar == yVar)
+            {
+                if (op == JOIN)
+                {
+                    work.push(x, y, JOIN_MK);
+                    work.push(xNode.low, yNode.high, EXPAND);
+                    work.push(xNode.high, yNode.low, EXPAND);
+                    work.push(xNode.high, yNode.high, EXPAND);
+                }
+                else
+                {
+                    work.push(x, y, MK);
+                    work.push(xNode.high, yNode.high, EXPAND);
+                }
+                work.push(xNode.low, yNode.low, EXPAND);
+            }
+            else if (xVar < yVar)
+            { // var isn't in any of y's sets
+                if (op == INTERSECT)
+                {
+                    work.push(x, y, PASS);
+                    work.push(xNode.low, y, EXPAND);
+                    continue;
+                }
+                work.push(x, y, MK);
+                if (op == JOIN)
+                    work.push(xNode.high, y, EXPAND);
+                else // Union and difference keep x's sets with var as they are
+                    work.push(xNode.high, 0, LITERAL);
+                work.push(xNode.low, y, EXPAND);
+            }
+            else
+            { // var isn't in any of x's sets
+                if (op == INTERSECT || op == DIFF)
+                {
+                    work.push(x, y, PASS);
+                    work.push(x, yNode.low, EXPAND);
+                    continue;
+                }
+                work.push(x, y, MK);
+                if (op == JOIN)
+                    work.push(x, yNode.high, EXPAND);
+                else
+                    work.push(yNode.high, 0, LITERAL);
+                work.push(x, yNode.low, EXPAND);
+            }
+        }
+        return results.pop();
+    }
+
+    private int top(int z)
+    {
+        return (tree.getNode(z).isTerminal() ? Integer.MAX_VALUE : tree.getInputIndex(z));
+    }
+
+    /**
+     * The result of op on x and y if it's known without expanding them, or -1.
+     */
+    private static int terminalCase(int op, int x, int y)
+    {
+        switch (op)
+        {
+            case UNION:
+                if (x == 0 || x == y)
+                    return y;
+                if (y == 0)
+                    return x;
+                break;
+            case INTERSECT:
+                if (x == 0 || y == 0)
+                    return 0;
+                if (x == y)
+                    return x;
+                break;
+            case DIFF:
+                if (x == 0 || x == y)
+                    return 0;
+                if (y == 0)
+                    return x;
+                break;
+            case JOIN:
+                if (x == 0 || y == 0)
+                    return 0;
+                if (x == 1)
+                    return y;
+                if (y == 1)
+                    return x;
+                break;
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the subgraph of src rooted at srcRoot into this.tree.
+     */
+    private int importNode(BDDTree src, int srcRoot)
+    {
+        int[] copies = new int[src.getNumNodes()];
+        for (int i : src.postOrder(srcRoot))
+        {
+            Node u = src.getNode(i);
+            if (u.isTerminal())
+                copies[i] = (u.terminalValue ? 1 : 0);
+            else
+                copies[i] = mk(copies[u.low], copies[u.high], src.getInputIndex(i));
+        }
+        return copies[srcRoot];
+    }
+
+    /**
+     * Zero-suppressed node combination: a node whose high child is the empty
+     * family is just its low child.
+     */
+    private int mk(int low, int high, int var)
+    {
+        return mk(tree, low, high, var);
+    }
+
+    /**
+     * mk() for building a ZDD's tree from outside, e.g. BDD.isopCover().
+     */
+    static int mk(BDDTree tree, int low, int high, int var)
+    {
+        if (high == 0)
+            return low;
+        Node node = new Node(low, high, var);
+        if (tree.contains(node))
+            return tree.getNodeIndex(node);
+        return tree.addNode(node);
+    }
+
+    private static int bddMk(BDDTree tree, int low, int high, int var)
+    {
+        if (low == high)
+            return low;
+        Node node = new Node(low, high, var);
+        if (tree.contains(node))
+            return tree.getNodeIndex(node);
+        return tree.addNode(node);
+    }
+}
@@ -0,0 +1,101 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Unit test suite for BDD.underApprox() and BDD.overApprox().
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class ApproximationTest
+{
+    /* x0 & x8 | x1 & x9 | ... | x7 & x15, whose BDD is exponential in this order. */
+    private static BDD pairs(int n)
+    {
+        BDD f = BDD.constant(n, false);
+        for (int i = 0; i < n / 2; i++)
+            f = new BDD(Operator.OR, f, new BDD(Operator.AND, BDD.variable(n, i), BDD.variable(n, i + n / 2)));
+        return f;
+    }
+    
+    private static void assertApproximates(BDD f, Approximation a, int threshold, Random random)
+    {
+        BDD g = a.getResult();
+        assertTrue(g.profile().getNumNodes() <= threshold);
+        for (int trial = 0; trial < 2000; trial++)
+        {
+            boolean[] in = new boolean[f.getNumInputs()];
+            for (int i = 0; i < in.length; i++)
+                in[i] = random.nextBoolean();
+            if (a.isOverApproximation())
+                assertTrue(!f.execute(in)[0] || g.execute(in)[0]);
+            else
+                assertTrue(!g.execute(in)[0] || f.execute(in)[0]);
+        }
+        assertEquals(g.freeze().satCount(), a.getMinterms());
+        assertEquals(f.freeze().satCount(), a.getOriginalMinterms());
+        assertTrue(a.getAccuracy() >= 0.0 && a.getAccuracy() <= 1.0);
+    }
+    
+    /**
+     * Test of underApprox method, of class BDD.
+     */
+    @Test
+    public void testUnderApprox()
+    {
+        System.out.println("underApprox");
+        Random random = new Random(42);
+        BDD f = pairs(16);
+        assertTrue(f.profile().getNumNodes() > 100);
+        for (int threshold : new int[] { 1, 5, 20, 60, 100 })
+        {
+            for (Approximation.Method method : Approximation.Method.values())
+            {
+                Approximation a = f.underApprox(threshold, method);
+                assertEquals(method, a.getMethod());
+                assertFalse(a.isOverApproximation());
+                assertApproximates(f, a, threshold, random);
+            }
+            Approximation best = f.underApprox(threshold);
+            assertApproximates(f, best, threshold, random);
+            assertTrue(best.getMinterms().compareTo(f.underApprox(threshold, Approximation.Method.HEAVY_BRANCH).getMinterms()) >= 0);
+            assertTrue(best.getMinterms().compareTo(f.underApprox(threshold, Approximation.Method.SHORT_PATH).getMinterms()) >= 0);
+        }
+        // A bigger budget keeps a useful share of the function
+        assertTrue(f.underApprox(60).getAccuracy() > 0.5);
+        
+        // Something that already fits comes back exact
+        BDD test4 = new BDD(BDD.Function.TEST4);
+        for (Approximation.Method method : Approximation.Method.values())
+        {
+            Approximation a = test4.underApprox(100, method);
+            assertTrue(a.getResult().equals(test4));
+            assertEquals(1.0, a.getAccuracy(), 0.0);
+            assertEquals(BigInteger.ZERO, a.getError());
+        }
+    }
+    
+    /**
+     * Test of overApprox method, of class BDD.
+     */
+    @Test
+    public void testOverApprox()
+    {
+        System.out.println("overApprox");
+        Random random = new Random(7);
+        BDD f = pairs(16);
+        for (int threshold : new int[] { 1, 10, 50 })
+        {
+            Approximation a = f.overApprox(threshold);
+            assertTrue(a.isOverApproximation());
+            assertApproximates(f, a, threshold, random);
+            assertTrue(a.getMinterms().compareTo(a.getOriginalMinterms()) >= 0);
+        }
+        assertTrue(f.overApprox(1).getResult().equals(BDD.constant(16, true)));
+    }
+}
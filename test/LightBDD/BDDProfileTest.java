@@ -0,0 +1,115 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Unit test suite for the BDDProfile class.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class BDDProfileTest
+{
+    /**
+     * Test of a single BDD's profile.
+     */
+    @Test
+    public void testProfile()
+    {
+        System.out.println("profile");
+        BDDProfile p = new BDD(BDD.Function.TEST4).profile();
+        assertEquals(5, p.getNumInputs());
+        assertEquals(1, p.getNumOutputs());
+        assertEquals(9, p.getNumNodes());
+        assertArrayEquals(new int[] { 1, 2, 1, 2, 1 }, p.getNodesPerLevel());
+        assertEquals(5, p.getLongestPath());
+        assertEquals(0, p.getNumSharedNodes());
+        BitSet all = new BitSet();
+        all.set(0, 5);
+        assertEquals(all, p.getSupport());
+        
+        p = new BDD(BDD.Function.TEST5).profile();
+        BitSet support = new BitSet();
+        support.set(0);
+        support.set(2);
+        support.set(4);
+        assertEquals(support, p.getSupport());
+        assertEquals(3, p.getLongestPath());
+        
+        p = BDD.constant(4, true).profile();
+        assertEquals(1, p.getNumNodes());
+        assertEquals(0, p.getLongestPath());
+        assertTrue(p.getSupport().isEmpty());
+        
+        // Nodes the root doesn't reach aren't counted
+        BDDTree tree = new BDDTree(3);
+        tree.addNode(new Node(0, 1, 2));
+        tree.addNode(new Node(0, 1, 0));
+        assertEquals(4, tree.getNumNodes());
+        p = new BDD(tree).profile();
+        assertEquals(3, p.getNumNodes());
+        assertArrayEquals(new int[] { 1, 0, 0 }, p.getNodesPerLevel());
+    }
+    
+    /**
+     * Test of a MultiBDD's profile, with nodes shared between outputs.
+     */
+    @Test
+    public void testMultiProfile()
+    {
+        System.out.println("multiProfile");
+        ArrayList<BDD> outputs = new ArrayList<BDD>();
+        outputs.add(new BDD(BDD.Function.AND));
+        outputs.add(new BDD(BDD.Function.OR));
+        BDDProfile p = new MultiBDD(outputs).profile();
+        assertEquals(2, p.getNumOutputs());
+        // Both reach the x1 node; the terminals don't count
+        assertEquals(1, p.getNumSharedNodes());
+        assertEquals(5, p.getNumNodes());
+        assertArrayEquals(new int[] { 2, 1 }, p.getNodesPerLevel());
+        
+        outputs.clear();
+        outputs.add(BDD.variable(2, 0));
+        outputs.add(BDD.variable(2, 1));
+        assertEquals(0, new MultiBDD(outputs).profile().getNumSharedNodes());
+    }
+    
+    /**
+     * Test of estimateApplySize method, of class BDDProfile.
+     */
+    @Test
+    public void testEstimateApplySize()
+    {
+        System.out.println("estimateApplySize");
+        int n = 5;
+        BDD[] functions = { new BDD(BDD.Function.TEST4), new BDD(BDD.Function.TEST5),
+                new BDD(Operator.XOR, BDD.variable(n, 1), BDD.variable(n, 3)),
+                new BDD(Operator.OR, BDD.variable(n, 0), BDD.variable(n, 4)), BDD.constant(n, true) };
+        Operator[] ops = { Operator.AND, Operator.OR, Operator.XOR, Operator.IMPLIES, Operator.DIFF };
+        for (BDD x : functions)
+        {
+            for (BDD y : functions)
+            {
+                for (Operator op : ops)
+                {
+                    long estimate = x.profile().estimateApplySize(op, y.profile());
+                    int actual = new BDD(op, x, y).profile().getNumNodes();
+                    assertTrue(actual <= estimate);
+                    assertTrue(estimate <= (long)x.profile().getNumNodes() * y.profile().getNumNodes());
+                }
+            }
+        }
+        BDDProfile p = new BDD(BDD.Function.TEST4).profile();
+        assertEquals(p.getNumNodes(), p.estimateApplySize(new BooleanOperator()
+        {
+            @Override
+            public boolean operate(boolean x, boolean y)
+            {
+                return !x;
+            }
+        }, new BDD(BDD.Function.TEST5).profile()));
+    }
+}
@@ -7,7 +7,11 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Unit test suite for the BDD class.
@@ -179,6 +183,78 @@ public class BDDTest
         assertArrayEquals(output.execute(input3), instance.execute(input3));
         // Check for side effects
         assertArrayEquals((new BDD(BDD.Function.TEST2)).execute(input3), x.execute(input3));
+        // Only the reachable nodes are built
+        assertEquals(4, instance.getTree().getNumNodes());
+    }
+    
+    /**
+     * Test multi-input restrict constructor, of class BDD.
+     */
+    @Test
+    public void testRestrictCube()
+    {
+        System.out.println("restrictCube");
+        
+        BDD x = new BDD(BDD.Function.TEST4);
+        BDD expected = new BDD(new BDD(new BDD(x, 3, true), 1, false), 4, true);
+        BDD instance = new BDD(x, new int[] { 4, 1, 3 }, new boolean[] { true, false, true });
+        assertTrue(instance.equals(expected));
+        ArrayList<boolean[]> input5 = Util.generateInputs(5);
+        assertArrayEquals(expected.execute(input5), instance.execute(input5));
+        // Check for side effects
+        assertTrue(x.equals(new BDD(BDD.Function.TEST4)));
+        
+        // Fixing every input leaves a constant
+        instance = new BDD(new BDD(BDD.Function.XOR), new int[] { 0, 1 }, new boolean[] { true, false });
+        assertTrue(instance.isConstant());
+        assertTrue(instance.execute(input2.get(0))[0]);
+        instance = new BDD(new BDD(BDD.Function.XOR), new int[] { 0, 1 }, new boolean[] { true, true });
+        assertTrue(instance.isConstant());
+        assertFalse(instance.execute(input2.get(0))[0]);
+        
+        // Fixing nothing is a copy
+        instance = new BDD(x, new int[0], new boolean[0]);
+        assertTrue(instance.equals(x));
+    }
+    
+    /**
+     * Test generalized cofactors, of class BDD.
+     */
+    @Test
+    public void testGeneralizedCofactors()
+    {
+        System.out.println("generalizedCofactors");
+        
+        ArrayList<boolean[]> input5 = Util.generateInputs(5);
+        BDD f = new BDD(BDD.Function.TEST4);
+        BDD care = new BDD(BDD.Function.TEST5);
+        BDD constrained = f.constrain(care);
+        BDD restricted = f.restrict(care);
+        for (boolean[] in : input5)
+        {
+            if (care.execute(in)[0])
+            {
+                assertEquals(f.execute(in)[0], constrained.execute(in)[0]);
+                assertEquals(f.execute(in)[0], restricted.execute(in)[0]);
+            }
+        }
+        // Check for side effects
+        assertTrue(f.equals(new BDD(BDD.Function.TEST4)));
+        assertTrue(care.equals(new BDD(BDD.Function.TEST5)));
+        
+        // Restrict never depends on an input f doesn't
+        BDD g = new BDD(BDD.Function.TEST5);
+        BDD careOnlyInput1 = new BDD(new BDD(BDD.Function.TEST4), new int[] { 0, 2, 3, 4 }, new boolean[] { true, true, true, false });
+        assertEquals(1, careOnlyInput1.getTree().getNodesPerLevel()[1]);
+        assertEquals(0, g.restrict(careOnlyInput1).getTree().getNodesPerLevel()[1]);
+        
+        // Special cases
+        BDD t = new BDD(BDD.Function.TRUE);
+        t.postConcatonateInputs(5);
+        assertTrue(f.constrain(t).equals(f));
+        assertTrue(f.restrict(t).equals(f));
+        assertTrue(f.constrain(f).equals(t));
+        assertTrue(f.restrict(f).equals(t));
     }
     
     /**
@@ -309,7 +385,614 @@ public class BDDTest
         assertFalse(f.equals(test4b));
         BDD t = new BDD(BDD.Function.TRUE);
         assertFalse(f.equals(t));
-    }       
+    }
     
+    @Test
+    public void testStats()
+    {
+        System.out.println("stats");
+        
+        final BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+        BDDStats stats = BDDStats.getGlobal();
+        BDDStats.setEnabled(true);
+        stats.reset();
+        BDD x = new BDD(and, new BDD(BDD.Function.TEST4), new BDD(BDD.Function.TEST5));
+        new BDD(x, 2, true);
+        new BDD(0, new BDD(BDD.Function.XOR), new BDD(BDD.Function.XOR));
+        BDDStats.setEnabled(false);
+        
+        assertTrue(stats.getCalls(BDDStats.Operation.APPLY) >= 1);
+        assertTrue(stats.getCalls(BDDStats.Operation.RESTRICT) >= 1);
+        assertEquals(1, stats.getCalls(BDDStats.Operation.COMPOSE));
+        assertTrue(stats.getCacheLookups(BDDStats.Operation.APPLY) > 0);
+        assertTrue(stats.getUniqueLookups() >= stats.getUniqueHits());
+        assertTrue(stats.getPeakNodes() >= x.getTree().getNumNodes());
+        
+        // Nothing is counted while disabled
+        long applies = stats.getCalls(BDDStats.Operation.APPLY);
+        new BDD(and, x, x);
+        assertEquals(applies, stats.getCalls(BDDStats.Operation.APPLY));
+        
+        // An apply stopped by its limits is counted as aborted, not as a call
+        BDDStats.setEnabled(true);
+        stats.reset();
+        try
+        {
+            BDD.apply(and, new BDD(BDD.Function.TEST4), new BDD(BDD.Function.TEST5), new BDDLimits(1, 0));
+            fail();
+        }
+        catch (BDDLimitExceededException e) { }
+        BDDStats.setEnabled(false);
+        assertEquals(0, stats.getCalls(BDDStats.Operation.APPLY));
+        assertEquals(1, stats.getAborted(BDDStats.Operation.APPLY));
+        
+        BDDTree test4 = new BDD(BDD.Function.TEST4).getTree();
+        assertArrayEquals(new int[] { 1, 2, 1, 2, 1 }, test4.getNodesPerLevel());
+        assertTrue(test4.getUniqueTableLoad() > 0.0 && test4.getUniqueTableLoad() <= 0.75);
+        assertTrue(test4.getMeanProbeLength() >= 1.0);
+    }
     
+    @Test
+    public void testLimits() throws BDDLimitExceededException
+    {
+        System.out.println("limits");
+        
+        final BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+        BDD x = new BDD(BDD.Function.TEST4);
+        BDD y = new BDD(BDD.Function.TEST5);
+        
+        try
+        {
+            BDD.apply(and, x, y, new BDDLimits(1, 0));
+            fail("Node budget was not enforced");
+        }
+        catch (BDDLimitExceededException e)
+        {
+            assertEquals(BDDLimitExceededException.Reason.NODE_BUDGET, e.getReason());
+            assertEquals(2, e.getNodesCreated());
+        }
+        // Check for side effects
+        assertTrue(x.equals(new BDD(BDD.Function.TEST4)));
+        assertTrue(y.equals(new BDD(BDD.Function.TEST5)));
+        
+        // Within the limits, the result is the same as without them
+        BDD limited = BDD.apply(and, x, y, new BDDLimits(1000, 10000));
+        assertTrue(limited.equals(new BDD(and, x, y)));
+        limited = BDD.restrict(new BDD(BDD.Function.TEST2), 1, false, BDDLimits.NONE);
+        assertArrayEquals(new BDD(BDD.Function.TEST3).execute(input3), limited.execute(input3));
+        
+        BDD f1 = new BDD(BDD.Function.TEST3);
+        BDD f2 = new BDD(BDD.Function.XOR);
+        try
+        {
+            BDD.compose(0, f1, f2, new BDDLimits(2, 0));
+            fail("Node budget was not enforced");
+        }
+        catch (BDDLimitExceededException e)
+        {
+            assertEquals(BDDLimitExceededException.Reason.NODE_BUDGET, e.getReason());
+        }
+        assertArrayEquals(new BDD(0, f1, f2).execute(input4), BDD.compose(0, f1, f2, BDDLimits.NONE).execute(input4));
+    }
+    
+    /**
+     * The kernels must not be limited by the thread's stack size.
+     */
+    @Test
+    public void testDeepDiagrams()
+    {
+        System.out.println("deepDiagrams");
+        
+        final BooleanOperator or = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x|y); }};
+        int n = 50000;
+        // Conjunction and disjunction of all inputs, as chains of n nodes
+        BDDTree andTree = new BDDTree(n);
+        BDDTree orTree = new BDDTree(n);
+        int andNode = 1;
+        int orNode = 0;
+        for (int i = n - 1; i >= 0; i--)
+        {
+            andNode = andTree.addNode(new Node(0, andNode, i));
+            orNode = orTree.addNode(new Node(orNode, 1, i));
+        }
+        BDD all = new BDD(andTree);
+        BDD any = new BDD(orTree);
+        
+        BDD instance = new BDD(or, all, any);
+        assertTrue(instance.equals(any));
+        assertFalse(instance.equals(all));
+        
+        boolean[] input = new boolean[n];
+        input[n - 1] = true;
+        assertFalse(all.execute(input)[0]);
+        assertTrue(any.execute(input)[0]);
+        
+        BDD restricted = new BDD(all, n - 1, false);
+        Arrays.fill(input, true);
+        assertTrue(all.execute(input)[0]);
+        assertFalse(restricted.execute(input)[0]);
+        restricted = new BDD(all, n - 1, true);
+        assertTrue(restricted.execute(input)[0]);
+        
+        assertTrue(all.toDot("G").contains("Node" + (n + 1) + "_Var0"));
+    }
+    
+    @Test
+    public void testFreeze() throws Exception
+    {
+        System.out.println("freeze");
+        
+        final BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+        final ArrayList<boolean[]> input5 = Util.generateInputs(5);
+        BDD test4 = new BDD(BDD.Function.TEST4);
+        final FrozenBDD frozen = test4.freeze();
+        for (boolean[] in : input5)
+            assertEquals(test4.execute(in)[0], frozen.execute(in)[0]);
+        assertTrue(frozen.thaw().equals(test4));
+        
+        // Same function built two ways gives identical snapshots
+        BDD built = new BDD(and, new BDD(BDD.Function.TEST4), new BDD(BDD.Function.TEST4));
+        assertEquals(frozen, built.freeze());
+        assertEquals(frozen.hashCode(), built.freeze().hashCode());
+        assertFalse(frozen.equals(new BDD(BDD.Function.TEST5).freeze()));
+        
+        int count = 0;
+        for (boolean[] in : input5)
+            count += (test4.execute(in)[0] ? 1 : 0);
+        assertEquals(count, frozen.satCount().intValue());
+        assertTrue(frozen.isSatisfiable());
+        assertTrue(frozen.execute(frozen.anySat())[0]);
+        
+        FrozenBDD falseConstant = BDD.constant(4, false).freeze();
+        assertFalse(falseConstant.isSatisfiable());
+        assertNull(falseConstant.anySat());
+        assertEquals(0, falseConstant.satCount().intValue());
+        assertEquals(16, BDD.constant(4, true).freeze().satCount().intValue());
+        assertEquals(8, BDD.variable(4, 2).freeze().satCount().intValue());
+        assertTrue(falseConstant.thaw().equals(BDD.constant(4, false)));
+        
+        // Mutating the original doesn't touch the snapshot
+        test4.postConcatonateInputs(1);
+        assertEquals(5, frozen.getNumInputs());
+        
+        // Many threads reading one snapshot
+        Thread[] readers = new Thread[4];
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < readers.length; t++)
+        {
+            readers[t] = new Thread() {
+                @Override public void run()
+                {
+                    for (int i = 0; i < 1000; i++)
+                    {
+                        for (boolean[] in : input5)
+                        {
+                            if (frozen.execute(in)[0] != new BDD(BDD.Function.TEST4).execute(in)[0])
+                                failed[0] = true;
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (Thread t : readers)
+            t.join();
+        assertFalse(failed[0]);
+        
+        MultiBDD multi = new MultiBDD(new ArrayList<BDD>(Arrays.asList(new BDD(BDD.Function.TEST4), new BDD(BDD.Function.TEST5))));
+        FrozenMultiBDD frozenMulti = multi.freeze();
+        for (boolean[] in : input5)
+            assertArrayEquals(multi.execute(in), frozenMulti.execute(in));
+        assertTrue(frozenMulti.thaw().equals(multi));
+        assertEquals(frozenMulti, multi.freeze());
+    }
+    
+    @Test
+    public void testOperators()
+    {
+        System.out.println("operators");
+        
+        final BooleanOperator customAnd = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+        final BooleanOperator customDiff = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&!y); }};
+        assertEquals(Operator.AND.truthTable(), Operator.truthTable(customAnd));
+        assertEquals(Operator.DIFF.truthTable(), Operator.truthTable(customDiff));
+        assertTrue(Operator.XNOR.isCommutative());
+        assertFalse(Operator.IMPLIES.isCommutative());
+        for (boolean x : new boolean[] { false, true })
+        {
+            for (boolean y : new boolean[] { false, true })
+            {
+                assertEquals(x & y, Operator.AND.operate(x, y));
+                assertEquals(x | y, Operator.OR.operate(x, y));
+                assertEquals(x ^ y, Operator.XOR.operate(x, y));
+                assertEquals(!(x & y), Operator.NAND.operate(x, y));
+                assertEquals(!(x | y), Operator.NOR.operate(x, y));
+                assertEquals(!x | y, Operator.IMPLIES.operate(x, y));
+                assertEquals(x == y, Operator.XNOR.operate(x, y));
+                assertEquals(x & !y, Operator.DIFF.operate(x, y));
+            }
+        }
+        
+        // The short circuits give the same diagrams as full recursion
+        BDD test4 = new BDD(BDD.Function.TEST4);
+        BDD test5 = new BDD(BDD.Function.TEST5);
+        BDD[] operands = { test4, test5, BDD.constant(5, false), BDD.constant(5, true) };
+        ArrayList<boolean[]> input5 = Util.generateInputs(5);
+        for (Operator op : Operator.values())
+        {
+            for (BDD x : operands)
+            {
+                for (BDD y : operands)
+                {
+                    BDD result = new BDD(op, x, y);
+                    for (boolean[] in : input5)
+                        assertEquals(op.operate(x.execute(in)[0], y.execute(in)[0]), result.execute(in)[0]);
+                }
+            }
+        }
+        assertTrue(new BDD(Operator.AND, test4, test5).equals(new BDD(customAnd, test4, test5)));
+        assertTrue(new BDD(Operator.IMPLIES, test4, test4).equals(BDD.constant(5, true)));
+        assertTrue(new BDD(Operator.OR, test4, BDD.constant(5, false)).equals(test4));
+        
+        // Anything and false is false, without looking at the other operand
+        BDDStats stats = BDDStats.getGlobal();
+        BDDStats.setEnabled(true);
+        stats.reset();
+        BDD none = new BDD(Operator.AND, test4, BDD.constant(5, false));
+        BDDStats.setEnabled(false);
+        assertTrue(none.equals(BDD.constant(5, false)));
+        assertEquals(0, stats.getCacheLookups(BDDStats.Operation.APPLY));
+    }
+    
+    @Test
+    public void testReplace()
+    {
+        System.out.println("replace");
+        
+        ArrayList<boolean[]> input5 = Util.generateInputs(5);
+        BDD test4 = new BDD(BDD.Function.TEST4);
+        
+        // Swap inputs 0 and 4, which changes their order
+        int[] swap = { 4, 1, 2, 3, 0 };
+        BDD swapped = test4.replace(swap);
+        for (boolean[] in : input5)
+        {
+            boolean[] renamed = { in[4], in[1], in[2], in[3], in[0] };
+            assertEquals(test4.execute(renamed)[0], swapped.execute(in)[0]);
+        }
+        assertTrue(swapped.replace(swap).equals(test4));
+        
+        // An order-preserving renaming: TEST5 only uses inputs 0, 2 and 4
+        BDD test5 = new BDD(BDD.Function.TEST5);
+        BDD shifted = test5.replace(new int[] { 1, 0, 2, 4, 3 });
+        assertEquals(test5.getTree().getNumNodes(), shifted.getTree().getNumNodes());
+        for (boolean[] in : input5)
+        {
+            boolean[] renamed = { in[1], in[0], in[2], in[4], in[3] };
+            assertEquals(test5.execute(renamed)[0], shifted.execute(in)[0]);
+        }
+        
+        // Shifted trees still build correctly, including at inputs that were shifted in
+        BDD x = new BDD(BDD.Function.XOR);
+        x.preConcatonateInputs(2);
+        x.postConcatonateInputs(1);
+        BDD y = BDD.variable(5, 0);
+        BDD both = new BDD(Operator.AND, x, y);
+        ArrayList<boolean[]> inputs = Util.generateInputs(5);
+        for (boolean[] in : inputs)
+            assertEquals(in[0] & (in[2] ^ in[3]), both.execute(in)[0]);
+        BDD reference = new BDD(Operator.AND, BDD.variable(5, 0), new BDD(Operator.XOR, BDD.variable(5, 2), BDD.variable(5, 3)));
+        assertTrue(both.equals(reference));
+        
+        both.collapseInput(1);
+        both.collapseInput(3);
+        assertEquals(3, both.getNumInputs());
+        assertArrayEquals(new int[] { 1, 1, 2 }, both.getTree().getNodesPerLevel());
+        assertTrue(both.equals(new BDD(Operator.AND, BDD.variable(3, 0), new BDD(Operator.XOR, BDD.variable(3, 1), BDD.variable(3, 2)))));
+        BDD more = new BDD(Operator.OR, both, BDD.variable(3, 1));
+        for (boolean[] in : input3)
+            assertEquals((in[0] & (in[1] ^ in[2])) | in[1], more.execute(in)[0]);
+    }
+    
+    /**
+     * Test of isop method, of class BDD.
+     */
+    @Test
+    public void testIsop()
+    {
+        System.out.println("isop");
+        
+        BDD[] functions = { new BDD(BDD.Function.TEST2), new BDD(BDD.Function.TEST4),
+                new BDD(BDD.Function.TEST5), new BDD(BDD.Function.XOR), new BDD(BDD.Function.NAND),
+                BDD.constant(3, true), BDD.constant(3, false) };
+        for (BDD f : functions)
+        {
+            List<Cube> cover = f.isop();
+            ArrayList<boolean[]> inputs = Util.generateInputs(f.getNumInputs());
+            assertEquals(cover, isopCover(f.isopIterator()));
+            assertEquals(BigInteger.valueOf(cover.size()), f.isopCover().count());
+            assertTrue(coverMatches(f, cover, inputs));
+            // Irredundant: no cube can be dropped and no literal freed
+            for (int i = 0; i < cover.size(); i++)
+            {
+                ArrayList<Cube> smaller = new ArrayList<Cube>(cover);
+                smaller.remove(i);
+                assertFalse(coverMatches(f, smaller, inputs));
+                for (int input = 0; input < f.getNumInputs(); input++)
+                {
+                    if (cover.get(i).isFree(input))
+                        continue;
+                    byte[] values = new byte[f.getNumInputs()];
+                    for (int j = 0; j < values.length; j++)
+                        values[j] = (byte)(cover.get(i).isFree(j) ? -1 : (cover.get(i).getValue(j) ? 1 : 0));
+                    values[input] = -1;
+                    smaller.add(i, new Cube(values));
+                    assertFalse(coverMatches(f, smaller, inputs));
+                    smaller.remove(i);
+                }
+            }
+        }
+        
+        assertEquals(0, BDD.constant(3, false).isop().size());
+        assertEquals("---", BDD.constant(3, true).isop().get(0).toString());
+        
+        // Parity has no smaller cover than its minterms
+        BDD parity = new BDD(Operator.XOR, new BDD(Operator.XOR, BDD.variable(3, 0), BDD.variable(3, 1)), BDD.variable(3, 2));
+        List<Cube> cubes = parity.isop();
+        assertEquals(4, cubes.size());
+        for (Cube c : cubes)
+            assertEquals(3, c.getNumLiterals());
+        
+        // A function of many inputs with a small cover
+        int n = 40;
+        BDD wide = BDD.constant(n, false);
+        for (int i = 0; i < n; i += 2)
+            wide = new BDD(Operator.OR, wide, new BDD(Operator.AND, BDD.variable(n, i), BDD.variable(n, i + 1)));
+        List<Cube> wideCover = wide.isop();
+        assertEquals(n / 2, wideCover.size());
+        for (Cube c : wideCover)
+            assertEquals(2, c.getNumLiterals());
+    }
+    
+    private static List<Cube> isopCover(Iterator<Cube> cubes)
+    {
+        ArrayList<Cube> list = new ArrayList<Cube>();
+        while (cubes.hasNext())
+            list.add(cubes.next());
+        return list;
+    }
+    
+    private static boolean coverMatches(BDD f, List<Cube> cover, List<boolean[]> inputs)
+    {
+        for (boolean[] in : inputs)
+        {
+            boolean covered = false;
+            for (Cube c : cover)
+                covered |= c.covers(in);
+            if (covered != f.execute(in)[0])
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Test of exists and andExists methods, of class BDD.
+     */
+    @Test
+    public void testExists()
+    {
+        System.out.println("exists");
+        ArrayList<boolean[]> inputs = Util.generateInputs(5);
+        BDD x = new BDD(BDD.Function.TEST4);
+        BDD y = new BDD(Operator.OR, BDD.variable(5, 1), new BDD(Operator.XOR, BDD.variable(5, 2), BDD.variable(5, 4)));
+        int[][] quantifieds = { {}, { 0 }, { 1, 3 }, { 4, 2 }, { 0, 1, 2, 3, 4 } };
+        for (int[] quantified : quantifieds)
+        {
+            BDD e = x.exists(quantified);
+            BDD ae = BDD.andExists(x, y, quantified);
+            for (boolean[] in : inputs)
+            {
+                boolean someX = false;
+                boolean someXY = false;
+                for (int mask = 0; mask < (1 << quantified.length); mask++)
+                {
+                    boolean[] assignment = in.clone();
+                    for (int j = 0; j < quantified.length; j++)
+                        assignment[quantified[j]] = ((mask >> j) & 1) == 1;
+                    someX |= x.execute(assignment)[0];
+                    someXY |= x.execute(assignment)[0] && y.execute(assignment)[0];
+                }
+                assertEquals(someX, e.execute(in)[0]);
+                assertEquals(someXY, ae.execute(in)[0]);
+            }
+        }
+        assertTrue(BDD.andExists(x, y, new int[0]).equals(new BDD(Operator.AND, x, y)));
+    }
+    
+    /**
+     * Test of relayout methods, of class BDD.
+     */
+    @Test
+    public void testRelayout()
+    {
+        System.out.println("relayout");
+        int n = 8;
+        BDD f = BDD.constant(n, false);
+        for (int i = 1; i < n / 2; i++)
+            f = new BDD(Operator.XOR, f, new BDD(Operator.AND, BDD.variable(n, i), BDD.variable(n, n - i)));
+        ArrayList<boolean[]> inputs = Util.generateInputs(n);
+        // f doesn't use input 0, so the tests can put a node on 0 above its root
+        BDD reference = new BDD(Operator.AND, BDD.variable(n, 0), f);
+        
+        for (BDD.Layout layout : BDD.Layout.values())
+        {
+            BDD g = scattered(f);
+            BDD expected = new BDD(g);
+            g.relayout(layout);
+            checkRelayout(expected, g, inputs);
+            BDDTree tree = g.getTree();
+            for (int u = 3; u < tree.getNumNodes() && layout == BDD.Layout.LEVEL; u++)
+                assertTrue(tree.getInputIndex(u - 1) >= tree.getInputIndex(u));
+        }
+        
+        ArrayList<boolean[]> allFalse = new ArrayList<boolean[]>();
+        allFalse.add(new boolean[n]);
+        BDD sampled = scattered(f);
+        BDD expected = new BDD(sampled);
+        sampled.relayout(allFalse);
+        checkRelayout(expected, sampled, inputs);
+        // The all-false path is one consecutive run down the table
+        BDDTree tree = sampled.getTree();
+        int u = tree.getRootIndex();
+        while (!tree.getNode(tree.getNode(u).low).isTerminal())
+        {
+            assertEquals(u - 1, tree.getNode(u).low);
+            u = tree.getNode(u).low;
+        }
+        
+        BDD g = new BDD(f);
+        int garbage = 1;
+        for (int i = 3 * g.getTree().getNumNodes(); i > 0; i--)
+            garbage = g.getTree().addNode(new Node(0, garbage, 1));
+        g.getTree().addNode(new Node(0, f.getTree().getRootIndex(), 0));
+        assertTrue(g.relayoutIfScattered());
+        assertFalse(g.relayoutIfScattered());
+        assertTrue(g.equals(reference));
+    }
+    
+    /* A copy of f with garbage below a new root on input 0. */
+    private static BDD scattered(BDD f)
+    {
+        BDD g = new BDD(f);
+        g.getTree().addNode(new Node(0, g.getTree().getRootIndex(), 3));
+        g.getTree().addNode(new Node(0, f.getTree().getRootIndex(), 0));
+        return g;
+    }
+    
+    /* g is the same function as expected, with only its reachable nodes, children first. */
+    private static void checkRelayout(BDD expected, BDD g, List<boolean[]> inputs)
+    {
+        assertTrue(g.equals(expected));
+        for (boolean[] in : inputs)
+            assertEquals(expected.execute(in)[0], g.execute(in)[0]);
+        BDDTree tree = g.getTree();
+        assertEquals(expected.profile().getNumNodes(), tree.getNumNodes());
+        for (int u = 2; u < tree.getNumNodes(); u++)
+        {
+            assertTrue(tree.getNode(u).low < u);
+            assertTrue(tree.getNode(u).high < u);
+        }
+    }
+    
+    /**
+     * Test of andAll and orAll methods, of class BDD.
+     */
+    @Test
+    public void testAndAll()
+    {
+        System.out.println("andAll");
+        int n = 6;
+        ArrayList<BDD> clauses = new ArrayList<BDD>();
+        for (int i = 0; i < n - 1; i++)
+            clauses.add(new BDD(Operator.OR, BDD.variable(n, i), new BDD(BDD.variable(n, i + 1), true)));
+        clauses.add(BDD.constant(n, true));
+        BDD expected = clauses.get(0);
+        for (BDD c : clauses)
+            expected = new BDD(Operator.AND, expected, c);
+        assertTrue(BDD.andAll(clauses).equals(expected));
+        assertTrue(BDD.andAll(clauses, true).equals(expected));
+        
+        BDD expectedOr = clauses.get(0);
+        for (BDD c : clauses.subList(0, n - 1))
+            expectedOr = new BDD(Operator.OR, expectedOr, c);
+        assertTrue(BDD.orAll(clauses.subList(0, n - 1)).equals(expectedOr));
+        assertTrue(BDD.orAll(clauses.subList(0, n - 1), true).equals(expectedOr));
+        assertTrue(BDD.orAll(clauses).isConstant());
+        
+        // x0 & !x0 is false, so the rest doesn't matter
+        clauses.add(BDD.variable(n, 0));
+        clauses.add(new BDD(BDD.variable(n, 0), true));
+        BDD none = BDD.andAll(clauses, true);
+        assertTrue(none.isConstant());
+        assertFalse(none.execute(new boolean[n])[0]);
+        assertEquals(n, none.getNumInputs());
+        
+        BDD all = BDD.andAll(Arrays.asList(BDD.constant(n, true), BDD.constant(n, true)));
+        assertTrue(all.isConstant());
+        assertTrue(all.execute(new boolean[n])[0]);
+        try
+        {
+            BDD.orAll(new ArrayList<BDD>());
+            fail();
+        }
+        catch (IllegalArgumentException e) { }
+    }
+    
+    @Test
+    public void testGenerators()
+    {
+        System.out.println("generators");
+        int n = 7;
+        int[] weights = { 3, -2, 5, 1, 0, -4, 2 };
+        for (int k = 0; k <= n + 1; k++)
+        {
+            BDD atMost = BDD.atMost(n, k);
+            BDD atLeast = BDD.atLeast(n, k);
+            BDD exactly = BDD.exactly(n, k);
+            BDD threshold = BDD.threshold(weights, k - 2);
+            for (int x = 0; x < (1 << n); x++)
+            {
+                boolean[] in = new boolean[n];
+                int count = 0;
+                int sum = 0;
+                for (int i = 0; i < n; i++)
+                {
+                    in[i] = ((x >>> i) & 1) != 0;
+                    count += (in[i] ? 1 : 0);
+                    sum += (in[i] ? weights[i] : 0);
+                }
+                assertEquals(count <= k, atMost.execute(in)[0]);
+                assertEquals(count >= k, atLeast.execute(in)[0]);
+                assertEquals(count == k, exactly.execute(in)[0]);
+                assertEquals(sum >= k - 2, threshold.execute(in)[0]);
+            }
+            // Already reduced, and with nothing below the root
+            for (BDD f : Arrays.asList(atMost, atLeast, exactly, threshold))
+            {
+                if (!f.isConstant())
+                    assertEquals(f.getTree().getNumNodes(), f.profile().getNumNodes());
+            }
+        }
+        
+        int width = 4;
+        BDD lessThan = BDD.lessThan(width);
+        BDD lessOrEqual = BDD.lessOrEqual(width);
+        assertEquals(2 * width, lessThan.getNumInputs());
+        for (int x = 0; x < (1 << width); x++)
+        {
+            for (int y = 0; y < (1 << width); y++)
+            {
+                boolean[] in = new boolean[2 * width];
+                for (int j = 0; j < width; j++)
+                {
+                    in[2 * j] = ((x >>> (width - 1 - j)) & 1) != 0;
+                    in[2 * j + 1] = ((y >>> (width - 1 - j)) & 1) != 0;
+                }
+                assertEquals(x < y, lessThan.execute(in)[0]);
+                assertEquals(x <= y, lessOrEqual.execute(in)[0]);
+            }
+        }
+        assertEquals(1 + 3 * width, lessThan.getTree().getNumNodes());
+        assertEquals(1 + 3 * width, lessOrEqual.getTree().getNumNodes());
+        
+        // Far too many inputs to enumerate
+        BDD big = BDD.atMost(80, 5);
+        assertTrue(big.getTree().getNumNodes() <= 2 + 80 * 6);
+        boolean[] in = new boolean[80];
+        for (int i = 0; i < 80; i += 16)
+            in[i] = true;
+        assertTrue(big.execute(in)[0]);
+        in[1] = true;
+        assertFalse(big.execute(in)[0]);
+    }
 }
@@ -0,0 +1,118 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test suite for the BitVector class.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public class BitVectorTest
+{
+    /**
+     * Test of the word-level operations, against plain arithmetic on every
+     * pair of values.
+     */
+    @Test
+    public void testArithmetic()
+    {
+        System.out.println("arithmetic");
+        int width = 4;
+        long mask = (1 << width) - 1;
+        for (BitVector.Order order : BitVector.Order.values())
+        {
+            BitVector[] xy = BitVector.variables(2, width, order);
+            BitVector x = xy[0];
+            BitVector y = xy[1];
+            BitVector sum = x.add(y);
+            BitVector difference = x.sub(y);
+            BitVector negation = x.negate();
+            BitVector product = x.multiply(5);
+            BitVector left = x.shiftLeft(1);
+            BitVector right = x.shiftRight(2);
+            BDD less = x.lessThan(y);
+            BDD lessOrEqual = x.lessOrEqual(y);
+            BDD equal = x.equal(y);
+            BitVector max = BitVector.ite(less, y, x);
+            BitVector plusThree = x.add(BitVector.constant(2 * width, width, 3));
+            for (boolean[] in : Util.generateInputs(2 * width))
+            {
+                long a = x.getValue(in);
+                long b = y.getValue(in);
+                assertEquals((a + b) & mask, sum.getValue(in));
+                assertEquals((a - b) & mask, difference.getValue(in));
+                assertEquals((-a) & mask, negation.getValue(in));
+                assertEquals((a * 5) & mask, product.getValue(in));
+                assertEquals((a << 1) & mask, left.getValue(in));
+                assertEquals(a >>> 2, right.getValue(in));
+                assertEquals(a < b, less.execute(in)[0]);
+                assertEquals(a <= b, lessOrEqual.execute(in)[0]);
+                assertEquals(a == b, equal.execute(in)[0]);
+                assertEquals(Math.max(a, b), max.getValue(in));
+                assertEquals((a + 3) & mask, plusThree.getValue(in));
+            }
+            if (order == BitVector.Order.INTERLEAVED)
+                assertTrue(less.equals(BDD.lessThan(width)));
+        }
+    }
+
+    /**
+     * Test of variables method, of class BitVector.
+     */
+    @Test
+    public void testVariables()
+    {
+        System.out.println("variables");
+        BitVector[] interleaved = BitVector.variables(3, 2, BitVector.Order.INTERLEAVED);
+        BitVector[] blocked = BitVector.variables(3, 2, BitVector.Order.BLOCKED);
+        for (int v = 0; v < 3; v++)
+        {
+            assertEquals(6, interleaved[v].getNumInputs());
+            assertEquals(2, interleaved[v].getWidth());
+            boolean[] in = new boolean[6];
+            in[v] = true; // Most significant bit of vector v
+            assertEquals(2, interleaved[v].getValue(in));
+            in = new boolean[6];
+            in[2 * v + 1] = true; // Least significant bit of vector v
+            assertEquals(1, blocked[v].getValue(in));
+        }
+        // The adder stays linear when interleaved
+        int width = 16;
+        BitVector[] xy = BitVector.variables(2, width, BitVector.Order.INTERLEAVED);
+        MultiBDD sum = xy[0].add(xy[1]).toMultiBDD();
+        assertEquals(width, sum.getNumOutputs());
+        assertTrue(sum.profile().getNumNodes() < 10 * width);
+    }
+
+    /**
+     * Changing what goes in or comes out of a BitVector doesn't change it.
+     */
+    @Test
+    public void testImmutable()
+    {
+        System.out.println("immutable");
+        BitVector[] xy = BitVector.variables(2, 3, BitVector.Order.INTERLEAVED);
+        MultiBDD f = xy[0].add(xy[1]).toMultiBDD();
+        BitVector sum = new BitVector(f);
+        BDD bit = sum.getBit(0);
+        BDD expected = new BDD(bit);
+        f.bdds.get(0).getTree().setRootIndex(0);
+        bit.getTree().setRootIndex(0);
+        sum.toMultiBDD().bdds.get(0).getTree().setRootIndex(0);
+        assertTrue(sum.getBit(0).equals(expected));
+        assertFalse(sum.getBit(0).isConstant());
+    }
+
+    @Test
+    public void testWidthMismatch()
+    {
+        System.out.println("widthMismatch");
+        try
+        {
+            BitVector.constant(4, 3, 1).add(BitVector.constant(4, 2, 1));
+            fail();
+        }
+        catch (IllegalArgumentException e) { }
+    }
+}
@@ -0,0 +1,250 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Unit test suite for the ConcurrentBDDEngine class.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class ConcurrentBDDEngineTest
+{
+    static final BooleanOperator and = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x&y); }};
+    static final BooleanOperator or = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x|y); }};
+    static final BooleanOperator xor = new BooleanOperator() {@Override public boolean operate(boolean x, boolean y) { return (x^y); }};
+    
+    @Test
+    public void testOperations()
+    {
+        System.out.println("operations");
+        
+        ConcurrentBDDEngine engine = new ConcurrentBDDEngine(5, 1000, 1024);
+        int test4 = engine.importBDD(new BDD(BDD.Function.TEST4));
+        int test5 = engine.importBDD(new BDD(BDD.Function.TEST5));
+        int conjunction = engine.apply(and, test4, test5);
+        assertTrue(engine.exportBDD(conjunction).equals(new BDD(and, new BDD(BDD.Function.TEST4), new BDD(BDD.Function.TEST5))));
+        assertEquals(conjunction, engine.apply(and, test4, test5)); // Canonical
+        
+        int restricted = engine.restrict(test4, 2, true);
+        assertTrue(engine.exportBDD(restricted).equals(new BDD(new BDD(BDD.Function.TEST4), 2, true)));
+        
+        // x0 ^ x1 with x1 := x2 & x3
+        int composed = engine.compose(engine.apply(xor, engine.variable(0), engine.variable(1)), 1, engine.apply(and, engine.variable(2), engine.variable(3)));
+        for (boolean[] in : Util.generateInputs(5))
+        {
+            assertEquals(in[0] ^ (in[2] & in[3]), engine.evaluate(composed, in));
+            assertEquals(!in[4], engine.evaluate(engine.not(engine.variable(4)), in));
+        }
+        assertEquals(0, engine.apply(and, engine.variable(3), engine.not(engine.variable(3))));
+        assertEquals(1, engine.apply(or, engine.variable(3), engine.not(engine.variable(3))));
+    }
+    
+    /**
+     * Threads building the same functions must all get the same handles.
+     */
+    @Test
+    public void testConcurrentCanonicity() throws Exception
+    {
+        System.out.println("concurrentCanonicity");
+        
+        final int n = 16;
+        final ConcurrentBDDEngine engine = new ConcurrentBDDEngine(n, 1 << 16, 1 << 10);
+        int numThreads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+        for (int t = 0; t < numThreads; t++)
+        {
+            final int offset = t;
+            futures.add(pool.submit(new Callable<int[]>() {
+                @Override public int[] call()
+                {
+                    // Pairwise equality of the two halves, built in a different order per thread
+                    int[] results = new int[n / 2];
+                    int equal = 1;
+                    for (int k = 0; k < n / 2; k++)
+                    {
+                        int i = (k + offset) % (n / 2);
+                        int bit = engine.apply(xor, engine.variable(i), engine.variable(n / 2 + i));
+                        results[i] = engine.not(bit);
+                        equal = engine.apply(and, equal, results[i]);
+                    }
+                    return new int[] { equal };
+                }
+            }));
+        }
+        int expected = futures.get(0).get()[0];
+        for (Future<int[]> f : futures)
+            assertEquals(expected, f.get()[0]);
+        pool.shutdown();
+        
+        BDD equal = engine.exportBDD(expected);
+        boolean[] in = new boolean[n];
+        assertTrue(equal.execute(in)[0]);
+        in[3] = true;
+        assertFalse(equal.execute(in)[0]);
+        in[n / 2 + 3] = true;
+        assertTrue(equal.execute(in)[0]);
+    }
+    
+    @Test
+    public void testGarbageCollection()
+    {
+        System.out.println("garbageCollection");
+        
+        int n = 12;
+        ConcurrentBDDEngine engine = new ConcurrentBDDEngine(n, 4000, 1 << 10);
+        ArrayList<boolean[]> inputs = Util.generateInputs(n);
+        
+        // Parity of all inputs, leaving the partial parities behind as garbage
+        ConcurrentBDDEngine.Handle kept = engine.protect(parity(engine, n));
+        ConcurrentBDDEngine.Handle dropped = engine.protect(engine.apply(and, engine.variable(0), engine.variable(1)));
+        assertEquals(2, engine.getNumHandles());
+        dropped.close();
+        assertEquals(1, engine.getNumHandles());
+        
+        int before = engine.getNumNodes();
+        int freed = engine.gc();
+        assertTrue(freed > 0);
+        assertEquals(before - freed, engine.getNumNodes());
+        assertEquals(2 + 2 * n - 1, engine.getNumNodes()); // Parity has 2 nodes per input but the first
+        for (boolean[] in : inputs)
+        {
+            boolean expected = false;
+            for (boolean b : in)
+                expected ^= b;
+            assertEquals(expected, engine.evaluate(kept.get(), in));
+        }
+        
+        // Freed slots get reused, and canonicity survives the rebuilt unique table
+        assertEquals(kept.get(), parity(engine, n));
+        assertTrue(engine.getNumNodes() <= before);
+        
+        // Compaction moves the survivors down; handles follow them
+        engine.apply(or, engine.variable(2), engine.variable(5));
+        engine.gc(true);
+        assertEquals(2 + 2 * n - 1, engine.getNumNodes());
+        assertTrue(kept.get() < engine.getNumNodes());
+        for (boolean[] in : inputs)
+        {
+            boolean expected = false;
+            for (boolean b : in)
+                expected ^= b;
+            assertEquals(expected, engine.evaluate(kept.get(), in));
+        }
+        assertTrue(engine.exportBDD(kept.get()).equals(engine.exportBDD(parity(engine, n))));
+        
+        kept.close();
+        engine.gc(true);
+        assertEquals(2, engine.getNumNodes());
+        
+        // A BDD can drop the nodes its root no longer reaches
+        BDDTree tree = new BDDTree(3);
+        tree.addNode(new Node(0, 1, 2)); // Unreachable
+        tree.addNode(new Node(0, 1, 1));
+        BDD x = new BDD(tree);
+        x.compact();
+        assertEquals(3, x.getTree().getNumNodes());
+        assertTrue(x.equals(BDD.variable(3, 1)));
+    }
+    
+    private static int parity(ConcurrentBDDEngine engine, int n)
+    {
+        int parity = 0;
+        for (int i = 0; i < n; i++)
+            parity = engine.apply(xor, parity, engine.variable(i));
+        return parity;
+    }
+    
+    @Test
+    public void testMappedNodeStore() throws Exception
+    {
+        System.out.println("mappedNodeStore");
+        
+        Path file = Files.createTempFile("nodes", ".bin");
+        MappedNodeStore store = new MappedNodeStore(file, 10000);
+        try
+        {
+            int n = 10;
+            ConcurrentBDDEngine engine = new ConcurrentBDDEngine(n, store, 1 << 10);
+            ConcurrentBDDEngine heapEngine = new ConcurrentBDDEngine(n, 10000, 1 << 10);
+            BDD test4 = new BDD(BDD.Function.TEST4);
+            test4.postConcatonateInputs(n - 5);
+            ConcurrentBDDEngine.Handle f = engine.protect(engine.apply(or, parity(engine, n), engine.importBDD(test4)));
+            int g = heapEngine.apply(or, parity(heapEngine, n), heapEngine.importBDD(test4));
+            assertTrue(engine.exportBDD(f.get()).equals(heapEngine.exportBDD(g)));
+            
+            // Compaction lays the survivors out top level first
+            engine.apply(and, engine.variable(7), engine.variable(1));
+            engine.gc(true);
+            for (int u = 3; u < engine.getNumNodes(); u++)
+                assertTrue(engine.var(u - 1) <= engine.var(u));
+            assertTrue(engine.exportBDD(f.get()).equals(heapEngine.exportBDD(g)));
+            for (boolean[] in : Util.generateInputs(n))
+                assertEquals(heapEngine.evaluate(g, in), engine.evaluate(f.get(), in));
+            
+            // Slots freed in place are chained through the store and reused
+            int live = engine.getNumNodes();
+            engine.apply(and, engine.variable(7), engine.variable(1));
+            int top = engine.getNumNodes();
+            assertEquals(top - live, engine.gc(false));
+            assertEquals(live, engine.getNumNodes());
+            int x2 = engine.variable(2);
+            assertTrue(x2 < top);
+            ConcurrentBDDEngine.Handle h = engine.protect(engine.apply(xor, x2, engine.variable(8)));
+            assertTrue(engine.exportBDD(f.get()).equals(heapEngine.exportBDD(g)));
+            assertTrue(engine.exportBDD(h.get()).equals(heapEngine.exportBDD(heapEngine.apply(xor, heapEngine.variable(2), heapEngine.variable(8)))));
+        }
+        finally
+        {
+            store.close();
+            Files.delete(file);
+        }
+    }
+    
+    /**
+     * Test of the heap and mapped IntTables the unique table lives in.
+     */
+    @Test
+    public void testIntTable() throws Exception
+    {
+        System.out.println("intTable");
+        Path file = Files.createTempFile("nodes", ".bin");
+        MappedNodeStore store = new MappedNodeStore(file, 100);
+        try
+        {
+            IntTable[] tables = { new HeapIntTable(1000), store.newTable(1000), store.newTable(1000) };
+            for (IntTable t : tables)
+            {
+                assertEquals(1000, t.size());
+                for (long i = 0; i < t.size(); i++)
+                    assertEquals(0, t.get(i));
+                t.set(999, 7);
+                assertTrue(t.compareAndSet(3, 0, 5));
+                assertFalse(t.compareAndSet(3, 0, 6));
+                assertEquals(5, t.get(3));
+                assertEquals(7, t.get(999));
+            }
+            // Tables in the same file don't overlap each other or the nodes
+            store.set(99, 1, 2, 3);
+            assertEquals(0, tables[2].get(0));
+            assertEquals(3, store.high(99));
+            tables[1].clear();
+            assertEquals(0, tables[1].get(3));
+            assertEquals(5, tables[2].get(3));
+        }
+        finally
+        {
+            store.close();
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+
+/**
+ * Unit test suite for the ConstructionCache class.
+ *
+ * @author Eric 'Siggy' Scott
+ */
+public class ConstructionCacheTest
+{
+    /* Majority and parity of n inputs, counting how often it's executed. */
+    private static class Counted extends BooleanFunction
+    {
+        int executions;
+
+        Counted(String name, int n)
+        {
+            super(name, n, 2);
+        }
+
+        @Override
+        public boolean[] execute(boolean[] input)
+        {
+            executions++;
+            int count = 0;
+            for (boolean b : input)
+                count += (b ? 1 : 0);
+            return new boolean[] { 2 * count > input.length, count % 2 == 1 };
+        }
+    }
+
+    private static void delete(Path directory) throws Exception
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+        {
+            for (Path file : stream)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Test of write and read methods, of class ConstructionCache.
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        System.out.println("roundTrip");
+        ArrayList<BDD> bdds = new ArrayList<BDD>();
+        bdds.add(new BDD(BDD.Function.TEST4));
+        bdds.add(BDD.constant(5, false));
+        bdds.add(BDD.constant(5, true));
+        bdds.add(new BDD(Operator.XOR, BDD.variable(5, 4), BDD.variable(5, 1)));
+        MultiBDD f = new MultiBDD(bdds);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConstructionCache.write(f, out);
+        MultiBDD g = ConstructionCache.read(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(g.equals(f));
+        for (boolean[] in : Util.generateInputs(5))
+            assertArrayEquals(f.execute(in), g.execute(in));
+    }
+
+    /**
+     * Test of read method, of class ConstructionCache, on entries that would
+     * make cyclic or unordered diagrams.
+     */
+    @Test
+    public void testReadMalformed() throws Exception
+    {
+        System.out.println("readMalformed");
+        // Two inputs, one output, then the nodes (input, low distance, high distance) and the root
+        byte[][] malformed = {
+            { 2, 1, 1, 0, 0, 1, 2 },                  // Node 2's low child is itself
+            { 2, 1, 1, 0, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 0x0f, 1, 2 }, // Negative distance
+            { 2, 1, 2, 0, 2, 1, 0, 3, 1, 3 },         // Node 3 on input 0 is below node 2 on input 0
+            { 2, 1, 2, 1, 2, 1, 1, 3, 2, 3 },         // Node 3 is a second copy of node 2
+            { (byte)0x82, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0, 1, 0, 0 }, // Six-byte varint
+            { 2, 1, 2, 1, 2, 1, 0, 1, 3, 3 },         // Well formed: !x0 & x1
+        };
+        for (int i = 0; i < malformed.length - 1; i++)
+        {
+            try
+            {
+                ConstructionCache.read(new ByteArrayInputStream(malformed[i]));
+                fail();
+            }
+            catch (IOException e) { }
+        }
+        MultiBDD ok = ConstructionCache.read(new ByteArrayInputStream(malformed[malformed.length - 1]));
+        assertEquals(4, ok.bdds.get(0).getTree().getNumNodes());
+    }
+    
+    /**
+     * Test of get method, of class ConstructionCache.
+     */
+    @Test
+    public void testGet() throws Exception
+    {
+        System.out.println("get");
+        Path directory = Files.createTempDirectory("cache");
+        try
+        {
+            Counted f = new Counted("majority", 10);
+            MultiBDD expected = new MultiBDD(f);
+            f.executions = 0;
+
+            ConstructionCache cache = new ConstructionCache(directory, 1 << 20);
+            assertTrue(cache.get(f, "v1").equals(expected));
+            assertEquals(1, cache.getMisses());
+            assertEquals(2 * 1024, f.executions);
+            assertTrue(cache.getSize() > 0);
+
+            // A new process would start with a new instance
+            f.executions = 0;
+            ConstructionCache other = new ConstructionCache(directory, 1 << 20);
+            assertTrue(other.get(f, "v1").equals(expected));
+            assertEquals(1, other.getHits());
+            assertEquals(0, f.executions);
+
+            // A new version is a new entry
+            other.get(f, "v2");
+            assertEquals(1, other.getMisses());
+            assertTrue(f.executions > 0);
+
+            // A corrupt entry is rebuilt
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+            {
+                for (Path file : stream)
+                    Files.write(file, new byte[] { 1, 2, 3 });
+            }
+            assertTrue(other.get(f, "v1").equals(expected));
+            assertEquals(2, other.getMisses());
+            assertTrue(other.get(f, "v1").equals(expected));
+            assertEquals(2, other.getHits());
+
+            other.clear();
+            assertEquals(0, other.getSize());
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Test of least recently used eviction, of class ConstructionCache.
+     */
+    @Test
+    public void testEviction() throws Exception
+    {
+        System.out.println("eviction");
+        Path directory = Files.createTempDirectory("cache");
+        try
+        {
+            ConstructionCache cache = new ConstructionCache(directory, 1 << 20);
+            Counted a = new Counted("a", 8);
+            Counted b = new Counted("b", 8);
+            Counted c = new Counted("c", 8);
+            cache.get(a, "v1");
+            long entrySize = cache.getSize();
+            cache = new ConstructionCache(directory, 2 * entrySize);
+            cache.get(b, "v1");
+            cache.get(a, "v1"); // a is now more recent than b
+            assertEquals(1, cache.getHits());
+            cache.get(c, "v1"); // Evicts b
+            assertTrue(cache.getSize() <= 2 * entrySize);
+
+            a.executions = 0;
+            b.executions = 0;
+            cache.get(a, "v1");
+            assertEquals(0, a.executions);
+            cache.get(b, "v1");
+            assertTrue(b.executions > 0);
+            
+            // Left behind by a crash mid-store, and by a store in progress
+            Path stale = Files.createTempFile(directory, "entry", ".tmp");
+            Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 60 * 60 * 1000));
+            Path fresh = Files.createTempFile(directory, "entry", ".tmp");
+            cache.get(new Counted("d", 8), "v1");
+            assertFalse(Files.exists(stale));
+            assertTrue(Files.exists(fresh));
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Unit test suite for the HybridBDD class.  Every operation is checked
+ * against the same operation on plain BDDs.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class HybridBDDTest
+{
+    private static boolean[] randomInput(int n, Random random)
+    {
+        boolean[] in = new boolean[n];
+        for (int i = 0; i < n; i++)
+            in[i] = random.nextBoolean();
+        return in;
+    }
+    
+    /**
+     * Test of conversion to and from BDD, execute and satCount.
+     */
+    @Test
+    public void testConversion()
+    {
+        System.out.println("conversion");
+        Random random = new Random(3);
+        for (int n : new int[] { 3, 6, 7, 12 })
+        {
+            for (int trial = 0; trial < 10; trial++)
+            {
+                BDD f = Util.randomFunction(n, 3 * n, random);
+                HybridBDD h = new HybridBDD(f);
+                assertTrue(h.toBDD().equals(f));
+                assertEquals(f.freeze().satCount(), h.satCount());
+                assertTrue(h.getNumNodes() <= f.profile().getNumNodes());
+                for (int i = 0; i < 100; i++)
+                {
+                    boolean[] in = randomInput(n, random);
+                    assertEquals(f.execute(in)[0], h.execute(in)[0]);
+                }
+            }
+        }
+        HybridBDD t = new HybridBDD(BDD.constant(8, true));
+        assertEquals(1, t.getNumNodes());
+        assertEquals(BigInteger.valueOf(256), t.satCount());
+        
+        // Parity is one node per input as a BDD, but its bottom six are one leaf
+        int n = 10;
+        BDD parity = BDD.variable(n, 0);
+        for (int i = 1; i < n; i++)
+            parity = new BDD(Operator.XOR, parity, BDD.variable(n, i));
+        HybridBDD h = new HybridBDD(parity);
+        assertEquals(2, h.getNumLeaves());
+        assertTrue(h.getNumNodes() < parity.profile().getNumNodes());
+    }
+    
+    /**
+     * Test of apply and restrict, of class HybridBDD.
+     */
+    @Test
+    public void testOperations()
+    {
+        System.out.println("operations");
+        Random random = new Random(11);
+        Operator[] ops = { Operator.AND, Operator.OR, Operator.XOR, Operator.IMPLIES, Operator.NOR };
+        for (int n : new int[] { 4, 9, 14 })
+        {
+            for (int trial = 0; trial < 6; trial++)
+            {
+                BDD x = Util.randomFunction(n, 3 * n, random);
+                BDD y = Util.randomFunction(n, 3 * n, random);
+                HybridBDD hx = new HybridBDD(x);
+                HybridBDD hy = new HybridBDD(y);
+                for (Operator op : ops)
+                {
+                    HybridBDD result = new HybridBDD(op, hx, hy);
+                    assertEquals(new HybridBDD(new BDD(op, x, y)), result);
+                }
+                for (int input = 0; input < n; input++)
+                {
+                    boolean value = random.nextBoolean();
+                    assertEquals(new HybridBDD(new BDD(x, input, value)), new HybridBDD(hx, input, value));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Unit test suite for the LookupTable class.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class LookupTableTest
+{
+    /* numOutputs random functions of n inputs, built gate by gate. */
+    private static MultiBDD random(int n, int numOutputs, Random random)
+    {
+        ArrayList<BDD> bdds = new ArrayList<BDD>();
+        for (int k = 0; k < numOutputs; k++)
+            bdds.add(Util.randomFunction(n, 2 * n, random));
+        return new MultiBDD(bdds);
+    }
+    
+    /**
+     * Test of toLookupTable method, of class MultiBDD.
+     */
+    @Test
+    public void testToLookupTable()
+    {
+        System.out.println("toLookupTable");
+        Random random = new Random(5);
+        for (int n : new int[] { 1, 4, 7, 11 })
+        {
+            for (int numOutputs : new int[] { 1, 8, 13, 20 })
+            {
+                MultiBDD f = random(n, numOutputs, random);
+                LookupTable table = f.toLookupTable();
+                FrozenMultiBDD frozen = f.freeze();
+                assertFalse(frozen.hasTable());
+                for (boolean[] in : Util.generateInputs(n))
+                {
+                    boolean[] expected = f.execute(in);
+                    Util.assertArrayEquals(expected, table.execute(in));
+                    Util.assertArrayEquals(expected, frozen.execute(in));
+                    int index = table.index(in);
+                    for (int k = 0; k < numOutputs; k++)
+                    {
+                        assertEquals(expected[k], table.get(index, k));
+                        if (numOutputs <= 16)
+                            assertEquals(expected[k], ((table.getOutputs(index) >>> k) & 1) == 1);
+                    }
+                }
+                assertTrue(frozen.hasTable());
+            }
+        }
+        
+        // Constants and functions that skip inputs fill whole blocks at once
+        ArrayList<BDD> bdds = new ArrayList<BDD>();
+        bdds.add(BDD.constant(10, true));
+        bdds.add(BDD.constant(10, false));
+        bdds.add(BDD.variable(10, 9));
+        bdds.add(new BDD(Operator.AND, BDD.variable(10, 2), BDD.variable(10, 8)));
+        MultiBDD f = new MultiBDD(bdds);
+        LookupTable table = f.toLookupTable();
+        for (boolean[] in : Util.generateInputs(10))
+            Util.assertArrayEquals(f.execute(in), table.execute(in));
+    }
+    
+    /**
+     * Too many inputs for a table.
+     */
+    @Test
+    public void testTooManyInputs()
+    {
+        System.out.println("tooManyInputs");
+        ArrayList<BDD> bdds = new ArrayList<BDD>();
+        bdds.add(BDD.variable(LookupTable.MAX_INPUTS + 1, 0));
+        try
+        {
+            new MultiBDD(bdds).toLookupTable();
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        // Snapshots that are too big for a table still work
+        FrozenMultiBDD frozen = new MultiBDD(bdds).freeze();
+        boolean[] in = new boolean[LookupTable.MAX_INPUTS + 1];
+        in[0] = true;
+        assertTrue(frozen.execute(in)[0]);
+        assertFalse(frozen.hasTable());
+        
+        // Just too many for a snapshot's table
+        bdds.clear();
+        bdds.add(BDD.variable(FrozenMultiBDD.TABLE_INPUTS + 1, 0));
+        frozen = new MultiBDD(bdds).freeze();
+        in = new boolean[FrozenMultiBDD.TABLE_INPUTS + 1];
+        assertFalse(frozen.execute(in)[0]);
+        assertFalse(frozen.hasTable());
+    }
+}
@@ -0,0 +1,70 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+/**
+ * Unit test suite for the MTBDD class.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class MTBDDTest
+{
+    /**
+     * A 3-bit adder's sum (with carry out as the top bit) as a 4-output function.
+     */
+    static final BooleanFunction adder = new BooleanFunction("adder", 6, 4) {
+        @Override public boolean[] execute(boolean[] in)
+        {
+            int a = (in[0] ? 1 : 0) | (in[1] ? 2 : 0) | (in[2] ? 4 : 0);
+            int b = (in[3] ? 1 : 0) | (in[4] ? 2 : 0) | (in[5] ? 4 : 0);
+            int sum = a + b;
+            return new boolean[] { (sum & 1) != 0, (sum & 2) != 0, (sum & 4) != 0, (sum & 8) != 0 };
+        }
+    };
+    
+    @Test
+    public void testMultiBDDConversion()
+    {
+        System.out.println("multiBDDConversion");
+        
+        MultiBDD sum = new MultiBDD(adder);
+        MTBDD numeric = new MTBDD(sum);
+        ArrayList<boolean[]> inputs = Util.generateInputs(6);
+        for (boolean[] in : inputs)
+        {
+            boolean[] bits = sum.execute(in);
+            int expected = 0;
+            for (int i = 0; i < bits.length; i++)
+                expected |= (bits[i] ? 1 << i : 0);
+            assertEquals(expected, numeric.evaluate(in), 0.0);
+        }
+        assertEquals(15, numeric.getNumTerminals()); // 0 through 14
+        assertTrue(numeric.toMultiBDD(4).equals(sum));
+        assertTrue(new MTBDD(numeric.toMultiBDD(4)).equals(numeric));
+    }
+    
+    @Test
+    public void testArithmetic()
+    {
+        System.out.println("arithmetic");
+        
+        MTBDD x = new MTBDD(new BDD(BDD.Function.TEST4), -1.0, 2.5);
+        MTBDD y = new MTBDD(new BDD(BDD.Function.TEST5));
+        MTBDD three = MTBDD.constant(5, 3.0);
+        for (MTBDD.Arithmetic op : MTBDD.Arithmetic.values())
+        {
+            MTBDD result = new MTBDD(op, x, y);
+            for (boolean[] in : Util.generateInputs(5))
+                assertEquals(op.operate(x.evaluate(in), y.evaluate(in)), result.evaluate(in), 0.0);
+        }
+        
+        // x * 0 + 3 is the constant 3
+        MTBDD collapsed = new MTBDD(MTBDD.Arithmetic.PLUS, new MTBDD(MTBDD.Arithmetic.TIMES, x, MTBDD.constant(5, 0.0)), three);
+        assertEquals(1, collapsed.getNumNodes());
+        assertTrue(collapsed.equals(three));
+        assertTrue(new MTBDD(MTBDD.Arithmetic.PLUS, x, y).equals(new MTBDD(MTBDD.Arithmetic.PLUS, y, x)));
+    }
+}
@@ -198,4 +198,27 @@ public class MultiBDDTest
         assertArrayEquals(expectedResult.execute(input3), result.execute(input3)); // Truth tables match
         assertTrue(result.equals(expectedResult)); // BDDs are isomorphic
     }
+    
+    @Test
+    public void testComposeWithLimits() throws BDDLimitExceededException
+    {
+        System.out.println("composeWithLimits");
+        MultiBDD f1 = new MultiBDD(BDD.Function.NAND);
+        MultiBDD f2 = new MultiBDD(BDD.Function.XOR);
+        CompositionMap inputMapping = new CompositionMap(1);
+        inputMapping.getMaleOutputTargets(0).add(0);
+        inputMapping.getMaleOutputTargets(0).add(-1);
+        try
+        {
+            MultiBDD.compose(f1, f2, inputMapping, new BDDLimits(1, 0));
+            fail("Node budget was not enforced");
+        }
+        catch (BDDLimitExceededException e)
+        {
+            assertEquals(BDDLimitExceededException.Reason.NODE_BUDGET, e.getReason());
+        }
+        MultiBDD limited = MultiBDD.compose(f1, f2, inputMapping, new BDDLimits(1000, 10000));
+        assertTrue(limited.equals(new MultiBDD(f1, f2, inputMapping)));
+    }
+    
 }
@@ -0,0 +1,177 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Unit test suite for the netlist and expression readers.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class NetlistTest
+{
+    static final ArrayList<boolean[]> input3 = Util.generateInputs(3);
+    
+    /**
+     * Truth table of a full adder over (a, b, cin): { sum, cout }.
+     */
+    static boolean[] fullAdder(boolean[] in)
+    {
+        int total = (in[0] ? 1 : 0) + (in[1] ? 1 : 0) + (in[2] ? 1 : 0);
+        return new boolean[] { (total & 1) != 0, total >= 2 };
+    }
+    
+    @Test
+    public void testExpressionParser() throws ParseException
+    {
+        System.out.println("expressionParser");
+        
+        ArrayList<String> inputs = ExpressionParser.inputsOf("a & !b | c");
+        assertEquals(Arrays.asList("a", "b", "c"), inputs);
+        BDD f = ExpressionParser.parse(inputs, "a & !b | c");
+        for (boolean[] in : input3)
+            assertEquals((in[0] && !in[1]) || in[2], f.execute(in)[0]);
+        
+        MultiBDD adder = ExpressionParser.parseAll(inputs, "a ^ b ^ c", "(a & b) | (c & (a ^ b))");
+        for (boolean[] in : input3)
+            Util.assertArrayEquals(fullAdder(in), adder.execute(in));
+        
+        // Precedence and associativity
+        f = ExpressionParser.parse(inputs, "a -> b -> c <-> ~a | 1 & (b -> c)");
+        for (boolean[] in : input3)
+            assertEquals((!in[0] || !in[1] || in[2]) == (!in[0] || (!in[1] || in[2])), f.execute(in)[0]);
+        assertTrue(ExpressionParser.parse(inputs, "a | !a").isConstant());
+        
+        try
+        {
+            ExpressionParser.parse(inputs, "a & d");
+            fail("Unknown input was accepted");
+        }
+        catch (ParseException e) { }
+        try
+        {
+            ExpressionParser.parse(inputs, "(a & b");
+            fail("Unbalanced parenthesis was accepted");
+        }
+        catch (ParseException e) { }
+    }
+    
+    @Test
+    public void testBlifReader() throws Exception
+    {
+        System.out.println("blifReader");
+        
+        // Gates out of order, an off-set cover, comments and a continuation
+        String blif = ".model adder\n"
+                + ".inputs a b \\\n  cin\n"
+                + ".outputs sum cout\n"
+                + ".names p cin sum # sum = p ^ cin\n"
+                + "10 1\n"
+                + "01 1\n"
+                + ".names a b p\n"
+                + "11 0\n"
+                + "00 0\n"
+                + ".names a b cin cout\n"
+                + "11- 1\n"
+                + "1-1 1\n"
+                + "-11 1\n"
+                + ".end\n";
+        MultiBDD adder = BlifReader.read(new StringReader(blif));
+        assertEquals(3, adder.getNumInputs());
+        assertEquals(2, adder.getNumOutputs());
+        for (boolean[] in : input3)
+            Util.assertArrayEquals(fullAdder(in), adder.execute(in));
+        
+        MultiBDD constants = BlifReader.read(new StringReader(".inputs a\n.outputs zero one\n.names zero\n.names one\n1\n.end\n"));
+        Util.assertArrayEquals(new boolean[] { false, true }, constants.execute(new boolean[] { true }));
+        
+        try
+        {
+            BlifReader.read(new StringReader(".inputs a\n.outputs x\n.names a y x\n11 1\n.end\n"));
+            fail("Undriven signal was accepted");
+        }
+        catch (ParseException e) { }
+        try
+        {
+            BlifReader.read(new StringReader(".inputs a\n.outputs x\n.names a y x\n11 1\n.names x y\n1 1\n.end\n"));
+            fail("Combinational loop was accepted");
+        }
+        catch (ParseException e) { }
+    }
+    
+    @Test
+    public void testAigerReader() throws Exception
+    {
+        System.out.println("aigerReader");
+        
+        // Half adder: sum = !(!(a & !b) & !(!a & b)), carry = a & b
+        String aag = "aag 7 2 0 2 5\n2\n4\n13\n6\n"
+                + "6 2 4\n8 2 5\n10 3 4\n12 9 11\n14 12 12\n"
+                + "i0 a\ni1 b\no0 sum\no1 carry\nc\nhalf adder\n";
+        MultiBDD halfAdder = AigerReader.read(new ByteArrayInputStream(aag.getBytes("US-ASCII")));
+        for (boolean[] in : Util.generateInputs(2))
+            Util.assertArrayEquals(new boolean[] { in[0] ^ in[1], in[0] & in[1] }, halfAdder.execute(in));
+        
+        // Binary: x = a & !b
+        ByteArrayOutputStream aig = new ByteArrayOutputStream();
+        aig.write("aig 3 2 0 1 1\n6\n".getBytes("US-ASCII"));
+        aig.write(new byte[] { 1, 3 }); // 6 = 5 & 2
+        MultiBDD andNot = AigerReader.read(new ByteArrayInputStream(aig.toByteArray()));
+        for (boolean[] in : Util.generateInputs(2))
+            assertEquals(in[0] & !in[1], andNot.execute(in)[0]);
+        
+        // Far too many inputs to enumerate
+        int n = 120;
+        StringBuilder chain = new StringBuilder("aag " + (2 * n - 1) + " " + n + " 0 1 " + (n - 1) + "\n");
+        for (int i = 1; i <= n; i++)
+            chain.append(2 * i).append("\n");
+        chain.append(2 * (2 * n - 1)).append("\n");
+        int previous = 2;
+        for (int i = 0; i < n - 1; i++)
+        {
+            int lhs = 2 * (n + 1 + i);
+            chain.append(lhs).append(" ").append(previous).append(" ").append(2 * (i + 2)).append("\n");
+            previous = lhs;
+        }
+        MultiBDD conjunction = AigerReader.read(new ByteArrayInputStream(chain.toString().getBytes("US-ASCII")));
+        boolean[] in = new boolean[n];
+        Arrays.fill(in, true);
+        assertTrue(conjunction.execute(in)[0]);
+        in[n / 2] = false;
+        assertFalse(conjunction.execute(in)[0]);
+        assertEquals(n + 2, conjunction.bdds.get(0).getTree().getNumNodes());
+    }
+    
+    /**
+     * Test of read method, of class AigerReader, on literals and deltas out
+     * of range.
+     */
+    @Test
+    public void testAigerMalformed() throws Exception
+    {
+        System.out.println("aigerMalformed");
+        byte[][] malformed = {
+            "aag 3 2 0 1 1\n2\n4\n-2\n6 2 4\n".getBytes("US-ASCII"),   // Negative output literal
+            "aag 3 2 0 1 1\n2\n4\n6\n6 -1 4\n".getBytes("US-ASCII"),   // Negative AND input
+            { 'a', 'i', 'g', ' ', '3', ' ', '2', ' ', '0', ' ', '1', ' ', '1', '\n', '6', '\n', 0, 3 },   // rhs0 == lhs
+            { 'a', 'i', 'g', ' ', '3', ' ', '2', ' ', '0', ' ', '1', ' ', '1', '\n', '6', '\n', 1, 9 },   // rhs1 < 0
+            { 'a', 'i', 'g', ' ', '3', ' ', '2', ' ', '0', ' ', '1', ' ', '1', '\n', '6', '\n', (byte)0x81, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0, 1 }, // Six-byte delta
+        };
+        for (byte[] file : malformed)
+        {
+            try
+            {
+                AigerReader.read(new ByteArrayInputStream(file));
+                fail();
+            }
+            catch (ParseException e) { }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test suite for the ReachabilityEngine class, on counters built bit
+ * by bit as partitioned transition relations.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class ReachabilityEngineTest
+{
+    static final int k = 4;
+    
+    /* A k-bit counter that counts up when its one free input is true, or
+     * every step if it has none.  Bit i's partition is
+     * next_i == cur_i ^ (enable & cur_0 & ... & cur_(i-1)). */
+    private static ReachabilityEngine counter(boolean withEnable)
+    {
+        ReachabilityEngine engine = new ReachabilityEngine(k, withEnable ? 1 : 0);
+        int n = engine.getNumInputs();
+        BDD carry = (withEnable ? BDD.variable(n, engine.free(0)) : BDD.constant(n, true));
+        for (int i = 0; i < k; i++)
+        {
+            BDD cur = BDD.variable(n, engine.current(i));
+            BDD next = BDD.variable(n, engine.next(i));
+            engine.addPartition(new BDD(Operator.XNOR, next, new BDD(Operator.XOR, cur, carry)));
+            carry = new BDD(Operator.AND, carry, cur);
+        }
+        return engine;
+    }
+    
+    /* The single state value, over the current state inputs. */
+    private static BDD state(ReachabilityEngine engine, int value)
+    {
+        int n = engine.getNumInputs();
+        BDD f = BDD.constant(n, true);
+        for (int i = 0; i < k; i++)
+        {
+            BDD bit = BDD.variable(n, engine.current(i));
+            f = new BDD(((value >> i) & 1) == 1 ? Operator.AND : Operator.DIFF, f, bit);
+        }
+        return f;
+    }
+    
+    /**
+     * Test of image and preimage methods, of class ReachabilityEngine.
+     */
+    @Test
+    public void testImage()
+    {
+        System.out.println("image");
+        for (int threshold : new int[] { 0, 1000 })
+        {
+            ReachabilityEngine engine = counter(false);
+            engine.setClusterThreshold(threshold);
+            for (int v = 0; v < (1 << k); v++)
+            {
+                int successor = (v + 1) % (1 << k);
+                assertTrue(engine.image(state(engine, v)).equals(state(engine, successor)));
+                assertTrue(engine.preimage(state(engine, successor)).equals(state(engine, v)));
+            }
+            BDD both = new BDD(Operator.OR, state(engine, 3), state(engine, 9));
+            BDD expected = new BDD(Operator.OR, state(engine, 4), state(engine, 10));
+            assertTrue(engine.image(both).equals(expected));
+        }
+        
+        // With the enable input quantified, a state steps to itself or its successor
+        ReachabilityEngine engine = counter(true);
+        BDD expected = new BDD(Operator.OR, state(engine, 5), state(engine, 6));
+        assertTrue(engine.image(state(engine, 5)).equals(expected));
+        expected = new BDD(Operator.OR, state(engine, 0), state(engine, (1 << k) - 1));
+        assertTrue(engine.preimage(state(engine, 0)).equals(expected));
+    }
+    
+    /**
+     * Test of reachable and backwardReachable methods, of class ReachabilityEngine.
+     */
+    @Test
+    public void testReachable()
+    {
+        System.out.println("reachable");
+        ReachabilityEngine engine = counter(false);
+        int n = engine.getNumInputs();
+        BDD all = BDD.constant(n, true);
+        assertTrue(engine.reachable(state(engine, 0)).equals(all));
+        assertEquals((1 << k) - 1, engine.getIterations());
+        assertTrue(engine.backwardReachable(state(engine, 7)).equals(all));
+        
+        // A relation that stops at 5: next = cur + 1 below 5, cur otherwise
+        ReachabilityEngine saturating = new ReachabilityEngine(k);
+        BDD below5 = BDD.constant(n, false);
+        for (int v = 0; v < 5; v++)
+            below5 = new BDD(Operator.OR, below5, state(saturating, v));
+        BDD carry = below5;
+        for (int i = 0; i < k; i++)
+        {
+            BDD cur = BDD.variable(n, saturating.current(i));
+            BDD next = BDD.variable(n, saturating.next(i));
+            saturating.addPartition(new BDD(Operator.XNOR, next, new BDD(Operator.XOR, cur, carry)));
+            carry = new BDD(Operator.AND, carry, cur);
+        }
+        BDD upTo5 = new BDD(Operator.OR, below5, state(saturating, 5));
+        assertTrue(saturating.reachable(state(saturating, 2)).equals(new BDD(Operator.DIFF, upTo5, new BDD(Operator.OR, state(saturating, 0), state(saturating, 1)))));
+        assertEquals(3, saturating.getIterations());
+        assertTrue(saturating.backwardReachable(state(saturating, 5)).equals(upTo5));
+        assertTrue(saturating.backwardReachable(state(saturating, 9)).equals(state(saturating, 9)));
+    }
+}
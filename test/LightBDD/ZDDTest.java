@@ -0,0 +1,131 @@
+package LightBDD;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Unit test suite for the ZDD class.  Families are checked against
+ * java.util sets of bitmasks.
+ * 
+ * @author Eric 'Siggy' Scott
+ */
+public class ZDDTest
+{
+    static final int n = 6;
+    
+    private static ZDD family(HashSet<Integer> sets)
+    {
+        ZDD result = ZDD.empty(n);
+        for (int mask : sets)
+        {
+            ArrayList<Integer> elements = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++)
+            {
+                if ((mask & (1 << i)) != 0)
+                    elements.add(i);
+            }
+            int[] e = new int[elements.size()];
+            for (int i = 0; i < e.length; i++)
+                e[i] = elements.get(i);
+            result = result.union(ZDD.singleton(n, e));
+        }
+        return result;
+    }
+    
+    private static void assertFamily(HashSet<Integer> expected, ZDD actual)
+    {
+        assertEquals(BigInteger.valueOf(expected.size()), actual.count());
+        for (int mask = 0; mask < (1 << n); mask++)
+        {
+            boolean[] in = new boolean[n];
+            for (int i = 0; i < n; i++)
+                in[i] = ((mask & (1 << i)) != 0);
+            assertEquals(expected.contains(mask), actual.execute(in)[0]);
+        }
+    }
+    
+    private static HashSet<Integer> randomSets(Random random)
+    {
+        HashSet<Integer> sets = new HashSet<Integer>();
+        int size = random.nextInt(12);
+        for (int i = 0; i < size; i++)
+            sets.add(random.nextInt(1 << n) & random.nextInt(1 << n)); // Sparse-ish
+        return sets;
+    }
+    
+    @Test
+    public void testSetOperations()
+    {
+        System.out.println("setOperations");
+        
+        Random random = new Random(37);
+        for (int trial = 0; trial < 50; trial++)
+        {
+            HashSet<Integer> a = randomSets(random);
+            HashSet<Integer> b = randomSets(random);
+            ZDD x = family(a);
+            ZDD y = family(b);
+            assertFamily(a, x);
+            
+            HashSet<Integer> union = new HashSet<Integer>(a);
+            union.addAll(b);
+            assertFamily(union, x.union(y));
+            
+            HashSet<Integer> intersection = new HashSet<Integer>(a);
+            intersection.retainAll(b);
+            assertFamily(intersection, x.intersect(y));
+            
+            HashSet<Integer> difference = new HashSet<Integer>(a);
+            difference.removeAll(b);
+            assertFamily(difference, x.diff(y));
+            
+            HashSet<Integer> join = new HashSet<Integer>();
+            for (int p : a)
+            {
+                for (int q : b)
+                    join.add(p | q);
+            }
+            assertFamily(join, x.join(y));
+            
+            // Canonical: the same family built in another order has the same diagram
+            assertTrue(x.union(y).equals(y.union(x)));
+        }
+        assertEquals(BigInteger.ZERO, ZDD.empty(n).count());
+        assertEquals(BigInteger.ONE, ZDD.base(n).count());
+    }
+    
+    @Test
+    public void testConversion()
+    {
+        System.out.println("conversion");
+        
+        BDD test4 = new BDD(BDD.Function.TEST4);
+        ZDD sets = new ZDD(test4);
+        int count = 0;
+        for (boolean[] in : Util.generateInputs(5))
+        {
+            assertEquals(test4.execute(in)[0], sets.execute(in)[0]);
+            count += (test4.execute(in)[0] ? 1 : 0);
+        }
+        assertEquals(BigInteger.valueOf(count), sets.count());
+        assertTrue(sets.toBDD().equals(test4));
+        assertTrue(new ZDD(BDD.constant(5, false)).equals(ZDD.empty(5)));
+        assertTrue(ZDD.base(5).toBDD().equals(new ZDD(ZDD.base(5)).toBDD()));
+        
+        // Singletons of a large universe: one node each as a ZDD, a chain of every input as a BDD
+        int universe = 200;
+        ZDD singletons = ZDD.empty(universe);
+        for (int i = 0; i < universe; i += 10)
+            singletons = singletons.union(ZDD.singleton(universe, i));
+        assertEquals(BigInteger.valueOf(universe / 10), singletons.count());
+        assertEquals(universe / 10 + 2, singletons.getTree().getNumNodes());
+        BDD characteristic = singletons.toBDD();
+        assertTrue(characteristic.getTree().getNumNodes() > universe);
+        assertTrue(new ZDD(characteristic).equals(singletons));
+    }
+}